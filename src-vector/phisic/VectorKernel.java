@@ -0,0 +1,106 @@
+package phisic;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * La classe <code>VectorKernel</code> implementa <code>BatchKernel</code> con le Vector API del JDK,
+ * elaborando per ogni istruzione tante sfere quante ne contiene il vettore preferito dal processore (4 con
+ * AVX2, 8 con AVX-512). Le diramazioni di <code>BallState.move</code> sono sostituite da maschere: per ogni
+ * sfera vengono calcolati entrambi i rami e viene conservato quello corretto. Le operazioni sono le stesse,
+ * nello stesso ordine, dell'implementazione scalare, per cui i risultati coincidono bit per bit. Le sfere
+ * che non riempiono un intero vettore vengono elaborate da <code>ScalarKernel</code>.
+ * <br><br>
+ * Richiede il modulo <code>jdk.incubator.vector</code> sia in compilazione sia in esecuzione; viene
+ * istanziata solo per riflessione da {@link BatchKernel#getInstance()}.
+ * @author Oneiros
+ */
+class VectorKernel extends BatchKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    /** La maschera di un vettore con tutte le sfere selezionate */
+    private static final long FULL = -1L >>> (64 - SPECIES.length());
+    private final ScalarKernel tail = new ScalarKernel();
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+
+    @Override
+    public void move(BallState pState, double pFriction, double pStep, int pFrom, int pTo) {
+        double decay = getDecay(pFriction, pStep);
+        double travel = getTravel(pFriction, pStep);
+        double threshold = pFriction * pFriction * 100;
+        double[] x = pState.x, y = pState.y, vx = pState.vx, vy = pState.vy;
+        int i = pFrom;
+        for (int upper = pFrom + SPECIES.loopBound(pTo - pFrom); i < upper; i += SPECIES.length()) {
+            DoubleVector speedX = DoubleVector.fromArray(SPECIES, vx, i);
+            DoubleVector speedY = DoubleVector.fromArray(SPECIES, vy, i);
+            DoubleVector squaredSpeed = speedX.mul(speedX).add(speedY.mul(speedY));
+            VectorMask<Double> moving = squaredSpeed.compare(VectorOperators.GE, threshold);
+            VectorMask<Double> stopping = squaredSpeed.compare(VectorOperators.GT, 0.0).andNot(moving);
+            DoubleVector.fromArray(SPECIES, x, i).add(speedX.mul(travel), moving).intoArray(x, i);
+            DoubleVector.fromArray(SPECIES, y, i).sub(speedY.mul(travel), moving).intoArray(y, i);
+            speedX.sub(speedX.mul(decay), moving).blend(0.0, stopping).intoArray(vx, i);
+            speedY.sub(speedY.mul(decay), moving).blend(0.0, stopping).intoArray(vy, i);
+        }
+        this.tail.move(pState, pFriction, pStep, i, pTo);
+    }
+
+    @Override
+    public long moving(BallState pState, int pFrom, int pTo) {
+        long mask = 0;
+        int i = pFrom;
+        for (int upper = pFrom + SPECIES.loopBound(pTo - pFrom); i < upper; i += SPECIES.length()) {
+            DoubleVector speedX = DoubleVector.fromArray(SPECIES, pState.vx, i);
+            DoubleVector speedY = DoubleVector.fromArray(SPECIES, pState.vy, i);
+            VectorMask<Double> moving = speedX.mul(speedX).add(speedY.mul(speedY)).compare(VectorOperators.GT, 0.0);
+            if (moving.allTrue()) {
+                mask |= FULL << (i - pFrom);
+            } else if (moving.anyTrue()) {
+                mask |= moving.toLong() << (i - pFrom);
+            }
+        }
+        return mask | this.tail.moving(pState, i, pTo) << (i - pFrom);
+    }
+
+    @Override
+    public long outside(BallState pState, double pMinX, double pMinY, double pMaxX, double pMaxY, int pFrom, int pTo) {
+        long mask = 0;
+        int i = pFrom;
+        for (int upper = pFrom + SPECIES.loopBound(pTo - pFrom); i < upper; i += SPECIES.length()) {
+            DoubleVector x = DoubleVector.fromArray(SPECIES, pState.x, i);
+            DoubleVector y = DoubleVector.fromArray(SPECIES, pState.y, i);
+            // a - b > 0 equivale ad a > b, per cui un solo confronto sostituisce i quattro di ScalarKernel
+            DoubleVector excess = x.neg().add(pMinX).max(x.sub(pMaxX)).max(y.neg().add(pMinY).max(y.sub(pMaxY)));
+            VectorMask<Double> outside = excess.compare(VectorOperators.GT, 0.0);
+            if (outside.anyTrue()) {
+                mask |= outside.toLong() << (i - pFrom);
+            }
+        }
+        return mask | this.tail.outside(pState, pMinX, pMinY, pMaxX, pMaxY, i, pTo) << (i - pFrom);
+    }
+
+    @Override
+    public long touching(BallState pState, int pFirst, int pSecond, int pCount) {
+        double limit = Sphere2D.BALL_SIZE * Sphere2D.BALL_SIZE;
+        long mask = 0;
+        int k = 0;
+        for (int upper = SPECIES.loopBound(pCount); k < upper; k += SPECIES.length()) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, pState.x, pSecond + k)
+                    .sub(DoubleVector.fromArray(SPECIES, pState.x, pFirst + k));
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, pState.y, pSecond + k)
+                    .sub(DoubleVector.fromArray(SPECIES, pState.y, pFirst + k));
+            VectorMask<Double> touching = dx.mul(dx).add(dy.mul(dy)).compare(VectorOperators.LT, limit);
+            // toLong() non viene tradotto in una singola istruzione da tutti i JDK: le sfere che si toccano
+            // sono rare, per cui conviene verificare prima se ce n'è almeno una
+            if (touching.anyTrue()) {
+                mask |= touching.toLong() << k;
+            }
+        }
+        return mask | this.tail.touching(pState, pFirst + k, pSecond + k, pCount - k) << k;
+    }
+}
@@ -0,0 +1,56 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import pool.TableEngine;
+
+/**
+ * La classe <code>AllocationBenchmark</code> misura la memoria allocata da <code>TableEngine</code> durante
+ * la simulazione di un tiro di apertura. Dopo una fase di riscaldamento del compilatore JIT, ogni step
+ * della simulazione non deve allocare alcun oggetto.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.AllocationBenchmark [tiri]</code>
+ * @author Oneiros
+ */
+public class AllocationBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Esegue il benchmark e stampa i byte allocati per ogni step.
+     * @param args Il numero di tiri da misurare (default: <code>100</code>)
+     */
+    public static void main(String[] args) {
+        int shots = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        TableEngine engine = new TableEngine();
+        for (int i = 0; i < 2000; i++) {
+            breakShot(engine);
+        }
+
+        long thread = Thread.currentThread().getId();
+        long overhead = THREADS.getThreadAllocatedBytes(thread);
+        overhead = THREADS.getThreadAllocatedBytes(thread) - overhead;
+        long steps = 0;
+        long bytes = 0;
+        for (int i = 0; i < shots; i++) {
+            engine.rack();
+            engine.strike(16, 0.02 * i / shots);
+            long before = THREADS.getThreadAllocatedBytes(thread);
+            while (engine.step(1)) {
+                steps++;
+            }
+            bytes += THREADS.getThreadAllocatedBytes(thread) - before - overhead;
+        }
+        System.out.println(shots + " break shots, " + steps + " steps");
+        System.out.println("Allocated bytes: " + bytes + " (" + (double) bytes / steps + " per step)");
+        if (bytes > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void breakShot(TableEngine pEngine) {
+        pEngine.rack();
+        pEngine.strike(16, 0.02);
+        pEngine.simulate();
+    }
+}
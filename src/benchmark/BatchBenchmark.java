@@ -0,0 +1,54 @@
+package benchmark;
+
+import phisic.BallState;
+import pool.BatchSimulator;
+import pool.TableEngine;
+import pool.TableGeometry;
+
+/**
+ * La classe <code>BatchBenchmark</code> misura il numero di tiri al secondo simulati da
+ * <code>BatchSimulator</code> al variare del numero di thread, da <code>1</code> fino al numero di
+ * processori disponibili. I tiri sono tiri di apertura con forza ed angolazione casuali.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.BatchBenchmark [tiri] [STEPPING|EVENT_DRIVEN]</code>
+ * @author Oneiros
+ */
+public class BatchBenchmark {
+
+    /**
+     * Esegue il benchmark e stampa throughput e accelerazione per ogni numero di thread.
+     * @param args Il numero di tiri per misura (default: <code>20000</code>) ed il motore di simulazione
+     *             (default: <code>STEPPING</code>)
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        TableEngine.Mode mode = args.length > 1 ? TableEngine.Mode.valueOf(args[1]) : TableEngine.Mode.STEPPING;
+        BallState rack = new TableEngine().getState();
+        java.util.Random random = new java.util.Random(42);
+        java.util.List<BatchSimulator.Shot> shots = new java.util.ArrayList<BatchSimulator.Shot>();
+        for (int i = 0; i < count; i++) {
+            shots.add(new BatchSimulator.Shot(rack, 8 + 10 * random.nextDouble(), 0.1 * (random.nextDouble() - 0.5)));
+        }
+
+        int processors = Runtime.getRuntime().availableProcessors();
+        double single = 0;
+        for (int threads = 1; threads <= processors; threads = threads == processors ? threads + 1 : Math.min(2 * threads, processors)) {
+            BatchSimulator simulator = new BatchSimulator(TableGeometry.STANDARD, mode, threads);
+            simulator.simulate(shots.subList(0, Math.min(count, 2000 * threads)));
+            long start = System.nanoTime();
+            BatchSimulator.Outcome[] outcomes = simulator.simulate(shots);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            simulator.shutdown();
+            int pocketed = 0;
+            for (BatchSimulator.Outcome o : outcomes) {
+                pocketed += o.pocketed;
+            }
+            double throughput = count / seconds;
+            if (threads == 1) {
+                single = throughput;
+            }
+            System.out.printf("%3d threads: %10.0f shots/s, speedup %5.2f, efficiency %3.0f%% (%d balls pocketed)%n",
+                    threads, throughput, throughput / single, 100 * throughput / single / threads, pocketed);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import phisic.BallState;
+import phisic.ContactSolver;
+import pool.TableEngine;
+
+/**
+ * La classe <code>ContactBenchmark</code> confronta la risoluzione degli urti una coppia alla volta con quella
+ * simultanea di <code>ContactSolver</code> sui tiri di apertura: tempo per step, passi dell'iterazione e
+ * dipendenza del risultato dalla numerazione delle palle. Per misurare quest'ultima ogni tiro viene
+ * ripetuto dopo aver scambiato tra loro le palle del triangolo, e viene riportata la massima distanza tra
+ * le posizioni corrispondenti dopo l'urto iniziale e al termine del tiro.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.ContactBenchmark [tiri]</code>
+ * @author Oneiros
+ */
+public class ContactBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    /** Il numero di step dopo i quali il primo confronto tra le posizioni viene eseguito */
+    private static final int IMPACT_STEPS = 40;
+
+    /**
+     * Esegue il benchmark e stampa i risultati delle due risoluzioni.
+     * @param args Il numero di tiri di apertura (default: <code>200</code>)
+     */
+    public static void main(String[] args) {
+        int shots = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        TableEngine engine = new TableEngine();
+        for (int warmup = 0; warmup < 3; warmup++) {
+            run(engine, false, shots / 4, false);
+            run(engine, true, shots / 4, false);
+        }
+        run(engine, false, shots, true);
+        run(engine, true, shots, true);
+    }
+
+    private static void run(TableEngine pEngine, boolean pSimultaneous, int pShots, boolean pPrint) {
+        pEngine.setSimultaneousContacts(pSimultaneous);
+        ContactSolver solver = pEngine.getContactSolver();
+        TableEngine permuted = new TableEngine();
+        permuted.setSimultaneousContacts(pSimultaneous);
+        int[] permutation = new int[TableEngine.BALLS];
+        java.util.Random random = new java.util.Random(8);
+        long thread = Thread.currentThread().getId();
+        long time = 0, steps = 0, bytes = 0, solves = 0, iterations = 0;
+        int maxIterations = 0;
+        double impactDeviation = 0, finalDeviation = 0;
+        for (int s = 0; s < pShots; s++) {
+            double angle = 0.02 * s / pShots;
+            pEngine.rack();
+            pEngine.strike(16, angle);
+            long before = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            while (pEngine.step(1)) {
+                steps++;
+                if (solver != null && solver.getCount() > 0) {
+                    solves++;
+                    iterations += solver.getIterations();
+                    maxIterations = Math.max(maxIterations, solver.getIterations());
+                }
+            }
+            time += System.nanoTime() - start;
+            bytes += THREADS.getThreadAllocatedBytes(thread) - before;
+            if (!pPrint) {
+                continue;
+            }
+
+            // Stesso tiro con le palle del triangolo rinumerate
+            shuffle(permutation, random);
+            pEngine.rack();
+            pEngine.strike(16, angle);
+            setUp(permuted, permutation, angle);
+            for (int k = 0; k < IMPACT_STEPS; k++) {
+                pEngine.step(1);
+                permuted.step(1);
+            }
+            impactDeviation = Math.max(impactDeviation, deviation(pEngine, permuted, permutation));
+            pEngine.simulate();
+            permuted.simulate();
+            finalDeviation = Math.max(finalDeviation, deviation(pEngine, permuted, permutation));
+        }
+        if (pPrint) {
+            System.out.printf("%s: %.0f ns/step (%d steps), allocated bytes: %d%n",
+                    pSimultaneous ? "simultaneous" : "pairwise", (double) time / steps, steps, bytes);
+            if (solver != null) {
+                System.out.printf("  %d solves, %.1f iterations on average, %d at most (limit %d)%n",
+                        solves, (double) iterations / solves, maxIterations, ContactSolver.MAX_ITERATIONS);
+            }
+            System.out.printf("  renumbered rack: max deviation %.3g after %d steps, %.3g at rest%n",
+                    impactDeviation, IMPACT_STEPS, finalDeviation);
+        }
+    }
+
+    /**
+     * Genera una permutazione casuale delle palle del triangolo; la palla bianca resta al suo posto.
+     */
+    private static void shuffle(int[] pPermutation, java.util.Random pRandom) {
+        for (int i = 0; i < pPermutation.length; i++) {
+            pPermutation[i] = i;
+        }
+        for (int i = pPermutation.length - 1; i > 1; i--) {
+            int j = 1 + pRandom.nextInt(i);
+            int aux = pPermutation[i];
+            pPermutation[i] = pPermutation[j];
+            pPermutation[j] = aux;
+        }
+    }
+
+    /**
+     * Dispone le palle come in <code>rack()</code>, ma con la palla <code>pPermutation[i]</code> al posto
+     * della palla <code>i</code>, e colpisce la palla bianca.
+     */
+    private static void setUp(TableEngine pEngine, int[] pPermutation, double pAngle) {
+        pEngine.rack();
+        BallState state = pEngine.getState();
+        BallState rack = new BallState(state.size());
+        state.copyTo(rack);
+        for (int i = 0; i < state.size(); i++) {
+            state.x[pPermutation[i]] = rack.x[i];
+            state.y[pPermutation[i]] = rack.y[i];
+        }
+        pEngine.stateChanged();
+        pEngine.strike(16, pAngle);
+    }
+
+    /**
+     * Restituisce la massima distanza tra la palla <code>i</code> del primo tavolo e la palla
+     * <code>pPermutation[i]</code> del secondo; le palle in buca in uno solo dei due tavoli contano come
+     * distanza infinita.
+     */
+    private static double deviation(TableEngine pFirst, TableEngine pSecond, int[] pPermutation) {
+        double max = 0;
+        for (int i = 0; i < TableEngine.BALLS; i++) {
+            int j = pPermutation[i];
+            if (pFirst.isPocketed(i) != pSecond.isPocketed(j)) {
+                return Double.POSITIVE_INFINITY;
+            }
+            if (!pFirst.isPocketed(i)) {
+                max = Math.max(max, Math.hypot(pFirst.getX(i) - pSecond.getX(j), pFirst.getY(i) - pSecond.getY(j)));
+            }
+        }
+        return max;
+    }
+}
@@ -0,0 +1,90 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import phisic.BallState;
+import pool.TableEngine;
+
+/**
+ * La classe <code>FastForwardBenchmark</code> misura il salto delle traiettorie di <code>TableEngine</code>
+ * su due insiemi di tiri simulati con <code>simulate()</code>: tiri lunghi della sola palla bianca, che non
+ * urtano altre palle, e tiri di apertura, nei quali il salto avviene solo quando le ultime palle in
+ * movimento non possono più urtare nulla. Per ogni insieme vengono riportati il tempo per tiro, gli step
+ * effettivamente eseguiti, i byte allocati e la massima distanza tra le posizioni finali ottenute con e
+ * senza salto.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.FastForwardBenchmark [tiri]</code>
+ * @author Oneiros
+ */
+public class FastForwardBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Esegue il benchmark e stampa i risultati.
+     * @param args Il numero di tiri per insieme (default: <code>500</code>)
+     */
+    public static void main(String[] args) {
+        int shots = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        TableEngine plain = new TableEngine();
+        TableEngine jumping = new TableEngine();
+        jumping.setFastForward(true);
+        for (int warmup = 0; warmup < 3; warmup++) {
+            run(plain, jumping, false, shots / 4, false);
+            run(plain, jumping, true, shots / 4, false);
+        }
+        run(plain, jumping, false, shots, true);
+        run(plain, jumping, true, shots, true);
+    }
+
+    private static void run(TableEngine pPlain, TableEngine pJumping, boolean pBreak, int pShots, boolean pPrint) {
+        long thread = Thread.currentThread().getId();
+        long[] plain = new long[3];
+        long[] jumping = new long[3];
+        double deviation = 0;
+        for (int s = 0; s < pShots; s++) {
+            shoot(pPlain, pBreak, s, pShots, plain, thread);
+            shoot(pJumping, pBreak, s, pShots, jumping, thread);
+            for (int i = 0; i < TableEngine.BALLS; i++) {
+                if (!pPlain.isPocketed(i)) {
+                    deviation = Math.max(deviation, Math.hypot(pPlain.getX(i) - pJumping.getX(i),
+                            pPlain.getY(i) - pJumping.getY(i)));
+                }
+            }
+        }
+        if (pPrint) {
+            System.out.printf("%s: %.1f us/shot (%d steps) -> %.1f us/shot (%d steps), allocated bytes: %d, "
+                    + "max deviation %.2g%n", pBreak ? "break" : "lag", plain[0] / 1000.0 / pShots, plain[1],
+                    jumping[0] / 1000.0 / pShots, jumping[1], jumping[2], deviation);
+        }
+    }
+
+    /**
+     * Simula un tiro e accumula in <code>pResult</code> i nanosecondi, gli step eseguiti ed i byte allocati.
+     * Senza apertura la palla bianca viene tirata da sola, con forza crescente, lungo il tavolo.
+     */
+    private static void shoot(TableEngine pEngine, boolean pBreak, int pShot, int pShots, long[] pResult,
+            long pThread) {
+        pEngine.rack();
+        if (!pBreak) {
+            BallState state = pEngine.getState();
+            for (int i = 1; i < TableEngine.BALLS; i++) {
+                state.status[i] = BallState.POCKETED;
+            }
+            pEngine.stateChanged();
+            pEngine.setBallLocation(0, 100, 200 + 40.0 * pShot / pShots);
+            pEngine.strike(2 + 3.0 * pShot / pShots, 0.05 * pShot / pShots);
+        } else {
+            pEngine.strike(16, 0.02 * pShot / pShots);
+        }
+        long bytes = THREADS.getThreadAllocatedBytes(pThread);
+        long start = System.nanoTime();
+        int steps = 1;
+        while (pEngine.step(1)) {
+            steps++;
+        }
+        pResult[0] += System.nanoTime() - start;
+        pResult[1] += steps;
+        pResult[2] += THREADS.getThreadAllocatedBytes(pThread) - bytes;
+    }
+}
@@ -0,0 +1,83 @@
+package benchmark;
+
+import phisic.BallState;
+import phisic.BatchKernel;
+import pool.BatchSimulator;
+import pool.TableEngine;
+import pool.TableGeometry;
+
+/**
+ * La classe <code>LockstepBenchmark</code> confronta, con un solo thread, i tre modi in cui
+ * <code>BatchSimulator</code> può simulare a step fissi gli stessi tiri di apertura: un tiro alla volta
+ * con <code>TableEngine</code>, in lockstep con l'implementazione scalare di <code>BatchKernel</code> ed in
+ * lockstep con quella restituita da <code>BatchKernel.getInstance()</code>. Per ogni modo stampa i tiri al
+ * secondo, alcune statistiche degli esiti ed il numero di esiti identici a quelli di un tiro alla volta.
+ * <br><br>
+ * Per utilizzare le Vector API la JVM va avviata con <code>--add-modules jdk.incubator.vector</code>.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.LockstepBenchmark [tiri]</code>
+ * @author Oneiros
+ */
+public class LockstepBenchmark {
+
+    /**
+     * Esegue il benchmark e stampa throughput, accelerazione e statistiche degli esiti di ogni modo.
+     * @param args Il numero di tiri per misura (default: <code>20000</code>)
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        BallState rack = new TableEngine().getState();
+        java.util.Random random = new java.util.Random(42);
+        java.util.List<BatchSimulator.Shot> shots = new java.util.ArrayList<BatchSimulator.Shot>();
+        for (int i = 0; i < count; i++) {
+            shots.add(new BatchSimulator.Shot(rack, 8 + 10 * random.nextDouble(), 0.1 * (random.nextDouble() - 0.5)));
+        }
+
+        BatchKernel[] kernels = {null, BatchKernel.getScalar(), BatchKernel.getInstance()};
+        double single = 0;
+        BatchSimulator.Outcome[] reference = null;
+        for (BatchKernel kernel : kernels) {
+            BatchSimulator simulator = new BatchSimulator(TableGeometry.STANDARD, TableEngine.Mode.STEPPING, 1);
+            simulator.setLockstep(kernel);
+            simulator.simulate(shots.subList(0, Math.min(count, 2000)));
+            long start = System.nanoTime();
+            BatchSimulator.Outcome[] outcomes = simulator.simulate(shots);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            simulator.shutdown();
+            long pocketed = 0, scratches = 0, collisions = 0, cushionHits = 0, duration = 0;
+            for (BatchSimulator.Outcome o : outcomes) {
+                pocketed += o.pocketed;
+                scratches += o.isScratch() ? 1 : 0;
+                collisions += o.collisions;
+                cushionHits += o.cushionHits;
+                duration += o.duration;
+            }
+            double throughput = count / seconds;
+            if (kernel == null) {
+                single = throughput;
+                reference = outcomes;
+            }
+            int identical = 0;
+            for (int i = 0; i < count; i++) {
+                identical += isSame(outcomes[i], reference[i]) ? 1 : 0;
+            }
+            System.out.printf("%-26s %8.0f shots/s, speedup %5.2f | per shot: %.3f pocketed, %.1f%% scratches, "
+                    + "%.1f collisions, %.1f cushion hits, %.0f steps | %d/%d identical%n",
+                    kernel == null ? "one shot at a time" : "lockstep " + kernel.getName(), throughput,
+                    throughput / single, (double) pocketed / count, 100.0 * scratches / count,
+                    (double) collisions / count, (double) cushionHits / count, (double) duration / count,
+                    identical, count);
+        }
+    }
+
+    private static boolean isSame(BatchSimulator.Outcome pFirst, BatchSimulator.Outcome pSecond) {
+        return java.util.Arrays.equals(pFirst.state.x, pSecond.state.x)
+                && java.util.Arrays.equals(pFirst.state.y, pSecond.state.y)
+                && java.util.Arrays.equals(pFirst.state.vx, pSecond.state.vx)
+                && java.util.Arrays.equals(pFirst.state.vy, pSecond.state.vy)
+                && java.util.Arrays.equals(pFirst.state.status, pSecond.state.status)
+                && java.util.Arrays.equals(pFirst.pocket, pSecond.pocket)
+                && pFirst.firstTouchedBall == pSecond.firstTouchedBall && pFirst.collisions == pSecond.collisions
+                && pFirst.cushionHits == pSecond.cushionHits && pFirst.duration == pSecond.duration;
+    }
+}
@@ -0,0 +1,53 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import pool.TableEngine;
+import pool.TableSnapshot;
+
+/**
+ * La classe <code>SnapshotBenchmark</code> misura il tempo medio ed i byte allocati da
+ * <code>TableSnapshot.save()</code> e <code>TableSnapshot.restore()</code> sul tavolo standard.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.SnapshotBenchmark [ripetizioni]</code>
+ * @author Oneiros
+ */
+public class SnapshotBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Esegue il benchmark e stampa i nanosecondi ed i byte per operazione.
+     * @param args Il numero di ripetizioni (default: <code>10000000</code>)
+     */
+    public static void main(String[] args) {
+        int repetitions = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        TableEngine engine = new TableEngine();
+        TableSnapshot snapshot = new TableSnapshot(engine, null);
+        engine.strike(16, 0.02);
+        engine.step(1);
+        for (int i = 0; i < repetitions; i++) {
+            snapshot.save();
+            snapshot.restore();
+        }
+
+        long thread = Thread.currentThread().getId();
+        long bytes = THREADS.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            snapshot.save();
+        }
+        long save = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < repetitions; i++) {
+            snapshot.restore();
+        }
+        long restore = System.nanoTime() - start;
+        bytes = THREADS.getThreadAllocatedBytes(thread) - bytes;
+        System.out.printf("save: %.1f ns, restore: %.1f ns, allocated bytes: %d%n",
+                (double) save / repetitions, (double) restore / repetitions, bytes);
+        if (bytes > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package benchmark;
+
+import java.lang.management.ManagementFactory;
+import phisic.BallState;
+import phisic.SpinState;
+import pool.PoolTable;
+import pool.TableEngine;
+
+/**
+ * La classe <code>SpinBenchmark</code> confronta il costo del modello della rotazione
+ * (<code>SpinState.move</code>) con quello del modello senza rotazione (<code>BallState.move</code>):
+ * prima sul solo spostamento di 16 palle, nelle fasi di strisciamento e di rotolamento, poi su tiri di
+ * apertura completi simulati da <code>TableEngine</code>. Il modello della rotazione non deve allocare
+ * alcun oggetto.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.SpinBenchmark [step] [tiri]</code>
+ * @author Oneiros
+ */
+public class SpinBenchmark {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static final int BALLS = TableEngine.BALLS;
+    /** Il numero di step dopo i quali le velocità vengono reimpostate, in modo che le palle non si fermino */
+    private static final int RESET = 50;
+
+    /**
+     * Esegue il benchmark e stampa i nanosecondi per spostamento e per step.
+     * @param args Il numero di step del confronto sullo spostamento (default: <code>2000000</code>) ed il
+     *             numero di tiri di apertura (default: <code>200</code>)
+     */
+    public static void main(String[] args) {
+        int steps = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int shots = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        BallState state = new BallState(BALLS);
+        SpinState spin = new SpinState(BALLS);
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            moveWithoutSpin(state, steps / 10);
+            moveWithSpin(state, spin, steps / 10, 0);
+            moveWithSpin(state, spin, steps / 10, 1);
+        }
+        long plain = moveWithoutSpin(state, steps);
+        long sliding = moveWithSpin(state, spin, steps, 0);
+        long rolling = moveWithSpin(state, spin, steps, 1);
+        double moves = (double) steps * BALLS;
+        System.out.printf("move: BallState %.2f ns, SpinState sliding %.2f ns (%+.0f%%), rolling %.2f ns (%+.0f%%)%n",
+                plain / moves, sliding / moves, 100.0 * (sliding - plain) / plain,
+                rolling / moves, 100.0 * (rolling - plain) / plain);
+
+        TableEngine engine = new TableEngine();
+        for (int warmup = 0; warmup < 3; warmup++) {
+            breakShots(engine, false, 0, shots / 4);
+            breakShots(engine, true, 0, shots / 4);
+        }
+        long[] plainShots = breakShots(engine, false, 0, shots);
+        long[] spinShots = breakShots(engine, true, 0, shots);
+        long[] drawShots = breakShots(engine, true, -1, shots);
+        System.out.printf("break: no spin %.0f ns/step (%d steps), spin %.0f ns/step (%d steps), "
+                + "draw %.0f ns/step (%d steps)%n", (double) plainShots[0] / plainShots[1], plainShots[1],
+                (double) spinShots[0] / spinShots[1], spinShots[1], (double) drawShots[0] / drawShots[1], drawShots[1]);
+        long bytes = spinShots[2] + drawShots[2];
+        System.out.println("Allocated bytes with spin: " + bytes);
+        if (bytes > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void reset(BallState pState, int pStep) {
+        for (int i = 0; i < BALLS; i++) {
+            pState.x[i] = 100 + 20 * i;
+            pState.y[i] = 200;
+            pState.setSpeed(i, 8 + (i + pStep) % 5, 0.1 * i);
+        }
+    }
+
+    private static long moveWithoutSpin(BallState pState, int pSteps) {
+        long start = System.nanoTime();
+        for (int s = 0; s < pSteps; s++) {
+            if (s % RESET == 0) {
+                reset(pState, s);
+            }
+            for (int i = 0; i < BALLS; i++) {
+                pState.move(i, PoolTable.FRICTION, 1);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Sposta le palle con il modello della rotazione: con <code>pFollow = 0</code> le palle partono senza
+     * rotazione e strisciano per quasi tutto l'intervallo, con <code>pFollow = 1</code> partono in
+     * rotolamento naturale.
+     */
+    private static long moveWithSpin(BallState pState, SpinState pSpin, int pSteps, double pFollow) {
+        long start = System.nanoTime();
+        for (int s = 0; s < pSteps; s++) {
+            if (s % RESET == 0) {
+                reset(pState, s);
+                for (int i = 0; i < BALLS; i++) {
+                    pSpin.rx[i] = pFollow * pState.vx[i];
+                    pSpin.ry[i] = pFollow * pState.vy[i];
+                }
+            }
+            for (int i = 0; i < BALLS; i++) {
+                pSpin.move(pState, i, PoolTable.FRICTION, 1);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Simula <code>pShots</code> tiri di apertura e restituisce i nanosecondi, gli step ed i byte allocati.
+     */
+    private static long[] breakShots(TableEngine pEngine, boolean pSpin, double pFollow, int pShots) {
+        pEngine.setSpinEnabled(pSpin);
+        long thread = Thread.currentThread().getId();
+        long overhead = THREADS.getThreadAllocatedBytes(thread);
+        overhead = THREADS.getThreadAllocatedBytes(thread) - overhead;
+        long[] result = new long[3];
+        for (int i = 0; i < pShots; i++) {
+            pEngine.rack();
+            if (pSpin) {
+                pEngine.strike(16, 0.02 * i / pShots, pFollow, 0);
+            } else {
+                pEngine.strike(16, 0.02 * i / pShots);
+            }
+            long bytes = THREADS.getThreadAllocatedBytes(thread);
+            long start = System.nanoTime();
+            while (pEngine.step(1)) {
+                result[1]++;
+            }
+            result[0] += System.nanoTime() - start;
+            result[2] += THREADS.getThreadAllocatedBytes(thread) - bytes - overhead;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,114 @@
+package benchmark;
+
+import phisic.BallState;
+import pool.TableEngine;
+import pool.TableGeometry;
+
+/**
+ * La classe <code>SubstepBenchmark</code> confronta lo "step" fisso con i sotto-step adattivi di
+ * <code>TableEngine</code> su tiri potenti e su tiri lenti della sola palla bianca, da posizioni e in
+ * direzioni casuali. Ogni tiro viene simulato anche con sotto-step fissi di <code>1/16</code> di "step",
+ * presi come riferimento: per ogni metodo vengono riportati i sotto-step e il tempo per tiro, il massimo
+ * spostamento in un sotto-step (che limita la compenetrazione con sponde e palle), le palle uscite dal
+ * tavolo attraversando una sponda, la percentuale di tiri che finiscono in buca come il riferimento e la
+ * distanza media dalla posizione finale del riferimento.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.SubstepBenchmark [tiri]</code>
+ * @author Oneiros
+ */
+public class SubstepBenchmark {
+
+    /** Il sotto-step fisso della simulazione di riferimento */
+    private static final double REFERENCE_STEP = 1.0 / 16;
+
+    /**
+     * Esegue il benchmark e stampa i risultati.
+     * @param args Il numero di tiri per insieme (default: <code>300</code>)
+     */
+    public static void main(String[] args) {
+        int shots = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        run(shots / 4, 16, false);
+        run(shots, 16, true);
+        run(shots, 2, true);
+    }
+
+    private static void run(int pShots, double pStrength, boolean pPrint) {
+        TableEngine reference = new TableEngine();
+        TableEngine fixed = new TableEngine();
+        TableEngine adaptive = new TableEngine();
+        adaptive.setMaxDisplacement(TableEngine.DEFAULT_MAX_DISPLACEMENT);
+        java.util.Random random = new java.util.Random(24);
+        double[] fixedResult = new double[6];
+        double[] adaptiveResult = new double[6];
+        for (int s = 0; s < pShots; s++) {
+            double x = 80 + 640 * random.nextDouble();
+            double y = 80 + 280 * random.nextDouble();
+            double angle = 2 * Math.PI * random.nextDouble();
+            shoot(reference, x, y, pStrength, angle, REFERENCE_STEP, new double[6]);
+            shoot(fixed, x, y, pStrength, angle, 1, fixedResult);
+            shoot(adaptive, x, y, pStrength, angle, 0, adaptiveResult);
+            compare(reference, fixed, fixedResult);
+            compare(reference, adaptive, adaptiveResult);
+        }
+        if (pPrint) {
+            print("strength " + pStrength + ", fixed", fixedResult, pShots);
+            print("strength " + pStrength + ", adaptive", adaptiveResult, pShots);
+        }
+    }
+
+    private static void print(String pLabel, double[] pResult, int pShots) {
+        System.out.printf("%s: %.1f substeps/shot, %.1f us/shot, max displacement per substep: %.2f, escaped balls: "
+                + "%.0f, same pocket outcome: %.1f%%, mean distance from reference: %.2f%n", pLabel, pResult[1] / pShots,
+                pResult[0] / 1000 / pShots, pResult[5], pResult[2], 100 * pResult[3] / pShots, pResult[4] / pShots);
+    }
+
+    /**
+     * Simula un tiro della palla bianca da <code>(pX,pY)</code> con sotto-step fissi <code>pStep</code>, oppure
+     * adattivi se <code>pStep</code> vale <code>0</code>, ed accumula in <code>pResult</code> i nanosecondi,
+     * i sotto-step, le palle uscite ed il massimo spostamento in un sotto-step. Il tempo comprende la
+     * misura degli spostamenti.
+     */
+    private static void shoot(TableEngine pEngine, double pX, double pY, double pStrength, double pAngle,
+            double pStep, double[] pResult) {
+        pEngine.rack();
+        for (int i = 1; i < TableEngine.BALLS; i++) {
+            pEngine.getState().status[i] = BallState.POCKETED;
+        }
+        pEngine.stateChanged();
+        pEngine.setBallLocation(0, pX, pY);
+        pEngine.strike(pStrength, pAngle);
+        long start = System.nanoTime();
+        long substeps = 0;
+        boolean moving = true;
+        while (moving) {
+            double x = pEngine.getX(0), y = pEngine.getY(0);
+            moving = pEngine.step(pStep > 0 ? pStep : pEngine.getSubstep(TableEngine.MAX_SUBSTEP));
+            substeps++;
+            if (!pEngine.isPocketed(0)) {
+                pResult[5] = Math.max(pResult[5], Math.hypot(pEngine.getX(0) - x, pEngine.getY(0) - y));
+            }
+        }
+        pResult[0] += System.nanoTime() - start;
+        pResult[1] += substeps;
+        TableGeometry geometry = pEngine.getGeometry();
+        for (int i = 0; i < TableEngine.BALLS; i++) {
+            double x = pEngine.getX(i), y = pEngine.getY(i);
+            if (!pEngine.isPocketed(i) && (x < 0 || y < 0 || x > geometry.width || y > geometry.height)) {
+                pResult[2]++;
+            }
+        }
+    }
+
+    /**
+     * Accumula in <code>pResult</code> l'accordo tra l'esito del tiro e quello del riferimento e, se la palla
+     * bianca è rimasta sul tavolo in entrambi, la distanza tra le posizioni finali.
+     */
+    private static void compare(TableEngine pReference, TableEngine pEngine, double[] pResult) {
+        if (pReference.isPocketed(0) == pEngine.isPocketed(0)) {
+            pResult[3]++;
+            if (!pEngine.isPocketed(0)) {
+                pResult[4] += Math.hypot(pReference.getX(0) - pEngine.getX(0), pReference.getY(0) - pEngine.getY(0));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package benchmark;
+
+import pool.GameManager;
+import pool.ShotSweep;
+import pool.TableEngine;
+import pool.TableGeometry;
+
+/**
+ * La classe <code>SweepBenchmark</code> misura il tempo necessario a <code>ShotSweep</code> per valutare
+ * una griglia di tiri di apertura, e stampa la frequenza di ogni classe di esito.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.SweepBenchmark [angolazioni] [forze] [campioni] [STEPPING|EVENT_DRIVEN]</code>
+ * @author Oneiros
+ */
+public class SweepBenchmark {
+
+    /**
+     * Esegue il benchmark.
+     * @param args Il numero di angolazioni (default: <code>360</code>), di forze (default: <code>50</code>) e
+     *             di campioni per cella (default: <code>1</code>) ed il motore di simulazione (default:
+     *             <code>EVENT_DRIVEN</code>)
+     */
+    public static void main(String[] args) {
+        int angles = args.length > 0 ? Integer.parseInt(args[0]) : 360;
+        int strengths = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int samples = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        TableEngine.Mode mode = args.length > 3 ? TableEngine.Mode.valueOf(args[3]) : TableEngine.Mode.EVENT_DRIVEN;
+        TableEngine engine = new TableEngine();
+        GameManager game = new GameManager("A", "B", 1);
+        game.setNewTurn();
+
+        ShotSweep sweep = new ShotSweep(TableGeometry.STANDARD, mode);
+        sweep.sweep(engine, game, angles / 4, strengths / 4, null);
+        final int[] completed = new int[1];
+        long start = System.nanoTime();
+        ShotSweep.Heatmap map = sweep.sweep(engine, game, angles, strengths, samples, 0.005, 0.2, 42,
+                new ShotSweep.Listener() {
+
+                    @Override
+                    public void cellsCompleted(ShotSweep.Heatmap pMap, int pFrom, int pTo) {
+                        synchronized (completed) {
+                            completed[0] += pTo - pFrom;
+                        }
+                    }
+                });
+        double seconds = (System.nanoTime() - start) / 1e9;
+        sweep.shutdown();
+
+        System.out.printf("%d x %d x %d shots on %d threads: %.3f s (%d cells streamed)%n", angles, strengths,
+                samples, sweep.getParallelism(), seconds, completed[0]);
+        for (ShotSweep.Result r : ShotSweep.Result.values()) {
+            double sum = 0;
+            for (int a = 0; a < angles; a++) {
+                for (int s = 0; s < strengths; s++) {
+                    sum += map.getProbability(a, s, r);
+                }
+            }
+            System.out.printf("%-8s %6.2f%%%n", r, 100 * sum / (angles * strengths));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package benchmark;
+
+import phisic.BallState;
+import phisic.BatchKernel;
+import pool.PoolTable;
+import pool.TableEngine;
+
+/**
+ * La classe <code>VectorBenchmark</code> confronta l'implementazione scalare di <code>BatchKernel</code> con
+ * quella restituita da <code>BatchKernel.getInstance()</code> sulle palle di molti tavoli raccolte in un
+ * unico <code>BallState</code>, con la palla <code>b</code> del tavolo <code>t</code> all'indice
+ * <code>b * tavoli + t</code> come in <code>BatchSimulator.setLockstep</code>: prima verifica che i risultati
+ * di tutte le operazioni coincidano bit per bit, poi misura il tempo per palla dello spostamento e del
+ * confronto tra ogni coppia di palle di ogni tavolo. Il guadagno sull'intera simulazione in lockstep è
+ * misurato da <code>LockstepBenchmark</code>.
+ * <br><br>
+ * Per utilizzare le Vector API la JVM va avviata con <code>--add-modules jdk.incubator.vector</code>.
+ * <br><br>
+ * Utilizzo: <code>java benchmark.VectorBenchmark [tavoli] [step]</code>
+ * @author Oneiros
+ */
+public class VectorBenchmark {
+
+    private static final int BALLS = TableEngine.BALLS;
+    /** Il numero di step dopo i quali le velocità vengono reimpostate, in modo che le palle non si fermino */
+    private static final int RESET = 50;
+
+    /**
+     * Esegue il benchmark e stampa i nanosecondi per palla delle due implementazioni.
+     * @param args Il numero di tavoli (default: <code>4096</code>) ed il numero di step misurati
+     *             (default: <code>2000</code>)
+     */
+    public static void main(String[] args) {
+        int tables = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        int steps = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        BatchKernel scalar = BatchKernel.getScalar();
+        BatchKernel vector = BatchKernel.getInstance();
+        BallState initial = createTables(tables);
+        BallState state = new BallState(initial.size());
+        System.out.println("Kernel: " + vector.getName());
+
+        BallState expected = new BallState(initial.size());
+        initial.copyTo(expected);
+        initial.copyTo(state);
+        for (int s = 0; s < 3 * RESET; s++) {
+            scalar.move(expected, PoolTable.FRICTION, s % 2 == 0 ? 1 : 0.5, 0, expected.size());
+            vector.move(state, PoolTable.FRICTION, s % 2 == 0 ? 1 : 0.5, 0, state.size());
+        }
+        boolean same = java.util.Arrays.equals(expected.x, state.x) && java.util.Arrays.equals(expected.y, state.y)
+                && java.util.Arrays.equals(expected.vx, state.vx) && java.util.Arrays.equals(expected.vy, state.vy)
+                && checksum(scalar, state, tables) == checksum(vector, state, tables);
+        System.out.println("Identical results: " + same);
+
+        for (int warmup = 0; warmup < 3; warmup++) {
+            move(scalar, initial, state, steps / 10);
+            move(vector, initial, state, steps / 10);
+            touching(scalar, state, tables, steps / 100);
+            touching(vector, state, tables, steps / 100);
+        }
+        double balls = (double) tables * BALLS;
+        long scalarMove = move(scalar, initial, state, steps);
+        long vectorMove = move(vector, initial, state, steps);
+        System.out.printf("move: scalar %.3f ns/ball, %s %.3f ns/ball, speedup %.2f%n", scalarMove / balls / steps,
+                vector.getName(), vectorMove / balls / steps, (double) scalarMove / vectorMove);
+        double pairs = (double) tables * BALLS * (BALLS - 1) / 2;
+        long scalarTouching = touching(scalar, state, tables, steps / 10);
+        long vectorTouching = touching(vector, state, tables, steps / 10);
+        System.out.printf("touching: scalar %.3f ns/pair, %s %.3f ns/pair, speedup %.2f%n",
+                scalarTouching / pairs / (steps / 10), vector.getName(), vectorTouching / pairs / (steps / 10),
+                (double) scalarTouching / vectorTouching);
+        if (!same) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Crea <code>pTables</code> tavoli con le palle nella posizione di inizio partita, ognuna con una
+     * velocità casuale.
+     */
+    private static BallState createTables(int pTables) {
+        BallState rack = new TableEngine().getState();
+        BallState state = new BallState(pTables * BALLS);
+        java.util.Random random = new java.util.Random(25);
+        for (int t = 0; t < pTables; t++) {
+            for (int b = 0; b < BALLS; b++) {
+                int i = b * pTables + t;
+                state.x[i] = rack.x[b];
+                state.y[i] = rack.y[b];
+                state.setSpeed(i, 2 + 14 * random.nextDouble(), 2 * Math.PI * random.nextDouble());
+            }
+        }
+        return state;
+    }
+
+    private static long move(BatchKernel pKernel, BallState pInitial, BallState pState, int pSteps) {
+        long time = 0;
+        for (int s = 0; s < pSteps; s += RESET) {
+            pInitial.copyTo(pState);
+            long start = System.nanoTime();
+            for (int k = 0; k < RESET; k++) {
+                pKernel.move(pState, PoolTable.FRICTION, 1, 0, pState.size());
+            }
+            time += System.nanoTime() - start;
+        }
+        return time;
+    }
+
+    /**
+     * Confronta, in gruppi di al massimo 64 tavoli, ogni coppia di palle di ogni tavolo.
+     */
+    private static long touching(BatchKernel pKernel, BallState pState, int pTables, int pRepetitions) {
+        long found = 0;
+        long start = System.nanoTime();
+        for (int r = 0; r < pRepetitions; r++) {
+            for (int t = 0; t < pTables; t += 64) {
+                int count = Math.min(64, pTables - t);
+                for (int a = 0; a < BALLS; a++) {
+                    for (int b = a + 1; b < BALLS; b++) {
+                        found += Long.bitCount(pKernel.touching(pState, a * pTables + t, b * pTables + t, count));
+                    }
+                }
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (found < 0) {
+            System.out.println(found);
+        }
+        return time;
+    }
+
+    /**
+     * Combina i risultati dei confronti di <code>pKernel</code> su tutti i tavoli.
+     */
+    private static long checksum(BatchKernel pKernel, BallState pState, int pTables) {
+        long checksum = 0;
+        for (int t = 0; t < pTables; t += 64) {
+            int count = Math.min(64, pTables - t);
+            for (int a = 0; a < BALLS; a++) {
+                int from = a * pTables + t;
+                checksum = 31 * checksum + pKernel.moving(pState, from, from + count);
+                checksum = 31 * checksum + pKernel.outside(pState, 100, 100, 700, 340, from, from + count);
+                for (int b = a + 1; b < BALLS; b++) {
+                    checksum = 31 * checksum + pKernel.touching(pState, from, b * pTables + t, count);
+                }
+            }
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,182 @@
+package phisic;
+
+/**
+ * La classe <code>BallGrid</code> suddivide il piano in una griglia uniforme di celle quadrate e tiene traccia
+ * della cella occupata da ogni sfera di un <code>BallState</code>. Se il lato delle celle è pari a
+ * <code>BALL_SIZE</code>, due sfere che si toccano occupano sempre la stessa cella o due celle adiacenti: per
+ * trovare le sfere che possono urtarne un'altra è quindi sufficiente esaminare le 9 celle intorno ad essa,
+ * anziché tutte le sfere.
+ * <br><br>
+ * Ogni cella contiene una lista doppiamente concatenata di sfere memorizzata in array di interi, in modo che
+ * lo spostamento di una sfera da una cella all'altra costi un tempo costante e non allochi memoria.
+ * @author Oneiros
+ */
+public class BallGrid {
+
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+    private final int[] head;
+    private final int[] next;
+    private final int[] previous;
+    private final int[] cell;
+
+    /**
+     * Crea ed inizializza una griglia vuota che copre il rettangolo <code>(0,0) - (pWidth,pHeight)</code>.
+     * Le sfere che si trovano al di fuori del rettangolo vengono assegnate alle celle del bordo.
+     * @param pWidth La larghezza del rettangolo coperto dalla griglia
+     * @param pHeight L'altezza del rettangolo coperto dalla griglia
+     * @param pCellSize Il lato delle celle, non inferiore alla distanza di contatto tra due sfere
+     * @param pBalls Il numero di sfere da gestire
+     */
+    public BallGrid(double pWidth, double pHeight, double pCellSize, int pBalls) {
+        this.cellSize = pCellSize;
+        this.columns = Math.max(1, (int) Math.ceil(pWidth / pCellSize));
+        this.rows = Math.max(1, (int) Math.ceil(pHeight / pCellSize));
+        this.head = new int[this.columns * this.rows];
+        this.next = new int[pBalls];
+        this.previous = new int[pBalls];
+        this.cell = new int[pBalls];
+        this.clear();
+    }
+
+    /**
+     * Svuota la griglia.
+     */
+    public final void clear() {
+        java.util.Arrays.fill(this.head, -1);
+        java.util.Arrays.fill(this.cell, -1);
+    }
+
+    /**
+     * Ricostruisce la griglia inserendo tutte le sfere in gioco dello stato <code>pState</code>.
+     * @param pState Lo stato delle sfere
+     */
+    public void rebuild(BallState pState) {
+        this.clear();
+        for (int i = 0; i < this.cell.length; i++) {
+            this.update(pState, i);
+        }
+    }
+
+    /**
+     * Aggiorna la cella occupata dalla sfera <code>pBall</code> dopo uno spostamento. Le sfere uscite dal
+     * gioco vengono rimosse dalla griglia.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     */
+    public void update(BallState pState, int pBall) {
+        if (pState.status[pBall] == BallState.POCKETED) {
+            this.remove(pBall);
+            return;
+        }
+        int c = this.getCell(pState.x[pBall], pState.y[pBall]);
+        if (c != this.cell[pBall]) {
+            this.remove(pBall);
+            this.cell[pBall] = c;
+            this.previous[pBall] = -1;
+            this.next[pBall] = this.head[c];
+            if (this.head[c] >= 0) {
+                this.previous[this.head[c]] = pBall;
+            }
+            this.head[c] = pBall;
+        }
+    }
+
+    /**
+     * Rimuove la sfera <code>pBall</code> dalla griglia.
+     * @param pBall L'indice della sfera
+     */
+    public void remove(int pBall) {
+        int c = this.cell[pBall];
+        if (c < 0) {
+            return;
+        }
+        if (this.previous[pBall] >= 0) {
+            this.next[this.previous[pBall]] = this.next[pBall];
+        } else {
+            this.head[c] = this.next[pBall];
+        }
+        if (this.next[pBall] >= 0) {
+            this.previous[this.next[pBall]] = this.previous[pBall];
+        }
+        this.cell[pBall] = -1;
+    }
+
+    /**
+     * Raccoglie in <code>pNeighbours</code>, in ordine crescente, gli indici delle sfere che occupano la
+     * cella della sfera <code>pBall</code> o una delle celle adiacenti.
+     * @param pBall L'indice della sfera
+     * @param pNeighbours L'array nel quale scrivere gli indici, di dimensione pari al numero di sfere
+     * @return Il numero di sfere trovate
+     */
+    public int getNeighbours(int pBall, int[] pNeighbours) {
+        int c = this.cell[pBall];
+        if (c < 0) {
+            return 0;
+        }
+        int column = c % this.columns;
+        int row = c / this.columns;
+        int count = 0;
+        for (int r = Math.max(0, row - 1); r <= Math.min(this.rows - 1, row + 1); r++) {
+            for (int k = Math.max(0, column - 1); k <= Math.min(this.columns - 1, column + 1); k++) {
+                for (int j = this.head[r * this.columns + k]; j >= 0; j = this.next[j]) {
+                    if (j != pBall) {
+                        int position = count++;
+                        while (position > 0 && pNeighbours[position - 1] > j) {
+                            pNeighbours[position] = pNeighbours[position - 1];
+                            position--;
+                        }
+                        pNeighbours[position] = j;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Raccoglie in <code>pBalls</code> gli indici delle sfere che occupano le celle raggiunte dal segmento
+     * <code>(pX1,pY1) - (pX2,pY2)</code> allargato di <code>pRadius</code>. Vengono esaminate solo le celle
+     * vicine al segmento, per cui il costo non dipende dal numero di sfere; tra quelle restituite possono
+     * esserci sfere più lontane di <code>pRadius</code>, per le quali il chiamante deve verificare la
+     * distanza esatta.
+     * @param pX1 La coordinata <code>x</code> del primo estremo del segmento
+     * @param pY1 La coordinata <code>y</code> del primo estremo del segmento
+     * @param pX2 La coordinata <code>x</code> del secondo estremo del segmento
+     * @param pY2 La coordinata <code>y</code> del secondo estremo del segmento
+     * @param pRadius La distanza massima dal segmento
+     * @param pBalls L'array nel quale scrivere gli indici, di dimensione pari al numero di sfere
+     * @return Il numero di sfere trovate
+     */
+    public int getAlong(double pX1, double pY1, double pX2, double pY2, double pRadius, int[] pBalls) {
+        int first = this.getCell(Math.min(pX1, pX2) - pRadius, Math.min(pY1, pY2) - pRadius);
+        int last = this.getCell(Math.max(pX1, pX2) + pRadius, Math.max(pY1, pY2) + pRadius);
+        double reach = pRadius + this.cellSize * Math.sqrt(0.5);
+        double dx = pX2 - pX1;
+        double dy = pY2 - pY1;
+        double length = dx * dx + dy * dy;
+        int count = 0;
+        for (int r = first / this.columns; r <= last / this.columns; r++) {
+            for (int k = first % this.columns; k <= last % this.columns; k++) {
+                double cx = (k + 0.5) * this.cellSize;
+                double cy = (r + 0.5) * this.cellSize;
+                double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((cx - pX1) * dx + (cy - pY1) * dy) / length));
+                double ex = pX1 + t * dx - cx;
+                double ey = pY1 + t * dy - cy;
+                if (ex * ex + ey * ey <= reach * reach) {
+                    for (int j = this.head[r * this.columns + k]; j >= 0; j = this.next[j]) {
+                        pBalls[count++] = j;
+                    }
+                }
+            }
+        }
+        return count;
+    }
+
+    private int getCell(double pX, double pY) {
+        int column = Math.max(0, Math.min(this.columns - 1, (int) Math.floor(pX / this.cellSize)));
+        int row = Math.max(0, Math.min(this.rows - 1, (int) Math.floor(pY / this.cellSize)));
+        return row * this.columns + column;
+    }
+}
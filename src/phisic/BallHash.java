@@ -0,0 +1,112 @@
+package phisic;
+
+/**
+ * La classe <code>BallHash</code> calcola in modo incrementale un hash a 64 bit della disposizione delle
+ * sfere di un <code>BallState</code>, alla maniera dell'hashing di Zobrist: ad ogni sfera viene associata
+ * una chiave pseudo-casuale che dipende dal suo indice e dalla cella di lato <code>quantum</code> occupata
+ * dal suo centro (oppure dal fatto che sia uscita dal gioco), e l'hash è lo XOR di tutte le chiavi.
+ * Quando una sfera cambia cella è quindi sufficiente togliere la vecchia chiave ed aggiungere la nuova.
+ * <br><br>
+ * L'hash dipende solo dalle posizioni quantizzate e dall'insieme delle sfere uscite dal gioco: due stati
+ * che differiscono per meno di <code>quantum</code> o per le sole velocità hanno lo stesso hash.
+ * @author Oneiros
+ */
+public class BallHash {
+
+    private final double quantum;
+    private final long[] keys;
+    private final long[] cells;
+    private long hash;
+
+    /**
+     * Crea ed inizializza un hash per <code>pBalls</code> sfere.
+     * @param pBalls Il numero di sfere
+     * @param pQuantum Il lato delle celle nelle quali vengono quantizzate le posizioni
+     */
+    public BallHash(int pBalls, double pQuantum) {
+        this.quantum = pQuantum;
+        this.keys = new long[pBalls];
+        this.cells = new long[pBalls];
+    }
+
+    /**
+     * Ricalcola l'hash considerando tutte le sfere dello stato <code>pState</code>.
+     * @param pState Lo stato delle sfere
+     */
+    public void rebuild(BallState pState) {
+        this.hash = 0;
+        for (int i = 0; i < this.keys.length; i++) {
+            this.cells[i] = getCell(pState.x[i], pState.y[i], pState.status[i] == BallState.POCKETED, this.quantum);
+            this.keys[i] = key(i, this.cells[i]);
+            this.hash ^= this.keys[i];
+        }
+    }
+
+    /**
+     * Aggiorna l'hash dopo uno spostamento della sfera <code>pBall</code> o la sua uscita dal gioco.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     */
+    public void update(BallState pState, int pBall) {
+        long cell = getCell(pState.x[pBall], pState.y[pBall], pState.status[pBall] == BallState.POCKETED,
+                this.quantum);
+        if (cell != this.cells[pBall]) {
+            this.cells[pBall] = cell;
+            this.hash ^= this.keys[pBall];
+            this.keys[pBall] = key(pBall, cell);
+            this.hash ^= this.keys[pBall];
+        }
+    }
+
+    /**
+     * Restituisce l'hash attuale.
+     * @return L'hash della disposizione delle sfere
+     */
+    public long getHash() {
+        return this.hash;
+    }
+
+    /**
+     * Rimescola i bit di <code>pValue</code> (funzione finale di SplitMix64), in modo che valori vicini
+     * producano risultati indipendenti.
+     * @param pValue Il valore da rimescolare
+     * @return Il valore rimescolato
+     */
+    public static long mix(long pValue) {
+        long z = pValue + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Restituisce la chiave con la quale una sfera contribuisce all'hash. Permette di calcolare l'hash di
+     * stati ottenuti per trasformazione di un altro stato senza doverli costruire.
+     * @param pBall L'indice della sfera
+     * @param pX La coordinata <code>x</code> del centro della sfera
+     * @param pY La coordinata <code>y</code> del centro della sfera
+     * @param pPocketed <code>true</code> se la sfera è uscita dal gioco
+     * @param pQuantum Il lato delle celle nelle quali vengono quantizzate le posizioni
+     * @return La chiave della sfera
+     */
+    public static long getKey(int pBall, double pX, double pY, boolean pPocketed, double pQuantum) {
+        return key(pBall, getCell(pX, pY, pPocketed, pQuantum));
+    }
+
+    private static long key(int pBall, long pCell) {
+        return mix(mix(pCell) + pBall);
+    }
+
+    /**
+     * Restituisce la cella occupata da una sfera, oppure <code>Long.MIN_VALUE</code> se la sfera è uscita
+     * dal gioco.
+     */
+    private static long getCell(double pX, double pY, boolean pPocketed, double pQuantum) {
+        if (pPocketed) {
+            return Long.MIN_VALUE;
+        }
+        long column = (long) Math.floor(pX / pQuantum);
+        long row = (long) Math.floor(pY / pQuantum);
+        return (row << 32) ^ (column & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,203 @@
+package phisic;
+
+/**
+ * La classe <code>BallState</code> memorizza in forma compatta lo stato di un insieme di sfere: posizioni e
+ * velocità sono contenute in array contigui di <code>double</code> indicizzati dal numero della sfera,
+ * anziché in due oggetti <code>Vector</code> per ogni sfera.
+ * <br><br>
+ * I metodi di questa classe riproducono il comportamento dei corrispondenti metodi di
+ * <code>Sphere2D</code>, operando però direttamente sugli array.
+ * @author Oneiros
+ */
+public class BallState {
+
+    /** Stato di una sfera in gioco. */
+    public static final byte IN_PLAY = 0;
+    /** Stato di una sfera uscita dal gioco (ad esempio caduta in buca). */
+    public static final byte POCKETED = 1;
+    /** Le coordinate <code>x</code> dei centri delle sfere. */
+    public final double[] x;
+    /** Le coordinate <code>y</code> dei centri delle sfere. */
+    public final double[] y;
+    /** Le componenti <code>x</code> delle velocità delle sfere. */
+    public final double[] vx;
+    /** Le componenti <code>y</code> delle velocità delle sfere (positive verso l'alto). */
+    public final double[] vy;
+    /** Lo stato di ogni sfera: <code>IN_PLAY</code> oppure <code>POCKETED</code>. */
+    public final byte[] status;
+
+    /**
+     * Crea ed inizializza lo stato di <code>pCount</code> sfere in quiete nell'origine.
+     * @param pCount Il numero di sfere
+     */
+    public BallState(int pCount) {
+        this.x = new double[pCount];
+        this.y = new double[pCount];
+        this.vx = new double[pCount];
+        this.vy = new double[pCount];
+        this.status = new byte[pCount];
+    }
+
+    /**
+     * Restituisce il numero di sfere memorizzate.
+     * @return Il numero di sfere
+     */
+    public int size() {
+        return this.x.length;
+    }
+
+    /**
+     * Copia lo stato di tutte le sfere in <code>pState</code>, che deve avere la stessa dimensione.
+     * @param pState Lo stato di destinazione
+     */
+    public void copyTo(BallState pState) {
+        System.arraycopy(this.x, 0, pState.x, 0, this.x.length);
+        System.arraycopy(this.y, 0, pState.y, 0, this.y.length);
+        System.arraycopy(this.vx, 0, pState.vx, 0, this.vx.length);
+        System.arraycopy(this.vy, 0, pState.vy, 0, this.vy.length);
+        System.arraycopy(this.status, 0, pState.status, 0, this.status.length);
+    }
+
+    /**
+     * Restituisce il modulo della velocità della sfera <code>pBall</code>.
+     * @param pBall L'indice della sfera
+     * @return Il modulo della velocità
+     */
+    public double getSpeed(int pBall) {
+        return Math.sqrt(this.vx[pBall] * this.vx[pBall] + this.vy[pBall] * this.vy[pBall]);
+    }
+
+    /**
+     * Determina se la sfera <code>pBall</code> è dotata o meno di velocità.
+     * @param pBall L'indice della sfera
+     * @return <code>true</code> se la sfera è dotata di velocità;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean hasSpeed(int pBall) {
+        return this.vx[pBall] * this.vx[pBall] + this.vy[pBall] * this.vy[pBall] > 0;
+    }
+
+    /**
+     * Ferma il movimento della sfera <code>pBall</code>.
+     * @param pBall L'indice della sfera
+     */
+    public void stop(int pBall) {
+        this.vx[pBall] = 0;
+        this.vy[pBall] = 0;
+    }
+
+    /**
+     * Imposta la velocità della sfera <code>pBall</code> mediante modulo ed inclinazione.
+     * @param pBall L'indice della sfera
+     * @param pMagnitude Il modulo della velocità
+     * @param pAngle L'inclinazione della velocità espressa in radianti
+     */
+    public void setSpeed(int pBall, double pMagnitude, double pAngle) {
+        this.vx[pBall] = pMagnitude * Math.cos(pAngle);
+        this.vy[pBall] = pMagnitude * Math.sin(pAngle);
+    }
+
+    /**
+     * Muove la sfera <code>pBall</code> di una frazione <code>pStep</code> di "step".
+     * @param pBall L'indice della sfera
+     * @param pFriction L'attrito generato dal rotolamento della sfera sulla superficie
+     * @param pStep La frazione di "step" da simulare
+     * @see Sphere2D#move(double, double)
+     */
+    public void move(int pBall, double pFriction, double pStep) {
+        double squaredSpeed = this.vx[pBall] * this.vx[pBall] + this.vy[pBall] * this.vy[pBall];
+        if (squaredSpeed > 0) {
+            if (squaredSpeed < pFriction * pFriction * 100) {
+                this.stop(pBall);
+            } else {
+                double decay = pStep == 1 ? pFriction : 1 - Math.pow(1 - pFriction, pStep);
+                double travel = pStep == 1 || pFriction == 0 ? pStep : decay / pFriction;
+                this.x[pBall] += travel * this.vx[pBall];
+                this.y[pBall] -= travel * this.vy[pBall];
+                this.vx[pBall] -= decay * this.vx[pBall];
+                this.vy[pBall] -= decay * this.vy[pBall];
+            }
+        }
+    }
+
+    /**
+     * Determina se le sfere <code>pBall</code> e <code>pSecondBall</code> si trovano ad una distanza tale
+     * da toccarsi.
+     * @param pBall L'indice della prima sfera
+     * @param pSecondBall L'indice della seconda sfera
+     * @return <code>true</code> se le sfere si toccano;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isTouching(int pBall, int pSecondBall) {
+        double dx = this.x[pSecondBall] - this.x[pBall];
+        double dy = this.y[pSecondBall] - this.y[pBall];
+        return dx * dx + dy * dy < Sphere2D.BALL_SIZE * Sphere2D.BALL_SIZE;
+    }
+
+    /**
+     * Gestisce l'urto tra le sfere <code>pBall</code> e <code>pSecondBall</code> scambiando le proiezioni
+     * delle velocità sulla retta che congiunge i centri e distanziando le due sfere lungo la stessa retta.
+     * Il costo è costante qualunque sia la profondità della compenetrazione.
+     * @param pBall L'indice della prima sfera
+     * @param pSecondBall L'indice della seconda sfera
+     * @see Sphere2D#collideWith(Sphere2D)
+     */
+    public void collide(int pBall, int pSecondBall) {
+        int i = pBall, j = pSecondBall;
+        double dx = this.x[j] - this.x[i];
+        double dy = this.y[j] - this.y[i];
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0) {
+            dx = 1;
+            distance = 1;
+        }
+        double nx = dx / distance;
+        double ny = dy / distance;
+
+        double impulse = (this.vx[j] - this.vx[i]) * nx - (this.vy[j] - this.vy[i]) * ny;
+        this.vx[i] += impulse * nx;
+        this.vy[i] -= impulse * ny;
+        this.vx[j] -= impulse * nx;
+        this.vy[j] += impulse * ny;
+
+        this.separate(i, j, nx, ny, distance);
+    }
+
+    /**
+     * Distanzia le sfere <code>pBall</code> e <code>pSecondBall</code> lungo la normale di contatto
+     * <code>(pNx,pNy)</code> in modo che i loro centri si trovino a distanza <code>BALL_SIZE</code>
+     * (più il margine <code>Sphere2D.SKIN</code>). Entrambe le sfere vengono spostate della stessa
+     * quantità, lasciando invariato il punto medio.
+     * @param pBall L'indice della prima sfera
+     * @param pSecondBall L'indice della seconda sfera
+     * @param pNx La componente <code>x</code> della normale unitaria, orientata dalla prima alla seconda sfera
+     * @param pNy La componente <code>y</code> della normale unitaria, orientata dalla prima alla seconda sfera
+     * @param pDistance La distanza attuale tra i centri
+     */
+    public void separate(int pBall, int pSecondBall, double pNx, double pNy, double pDistance) {
+        double overlap = (Sphere2D.BALL_SIZE + Sphere2D.SKIN - pDistance) / 2;
+        if (overlap > 0) {
+            this.x[pBall] -= overlap * pNx;
+            this.y[pBall] -= overlap * pNy;
+            this.x[pSecondBall] += overlap * pNx;
+            this.y[pSecondBall] += overlap * pNy;
+        }
+    }
+
+    /**
+     * Gestisce l'urto tra la sfera <code>pBall</code> ed il muro <code>pWall</code> calcolando la nuova
+     * direzione di spostamento.
+     * @param pBall L'indice della sfera
+     * @param pWall Il muro sul quale la sfera è entrata in collisione
+     * @see Sphere2D#collideWith(Wall)
+     */
+    public void collide(int pBall, Wall pWall) {
+        double β = 2 * pWall.getAngle() - Math.atan2(this.vy[pBall], this.vx[pBall]);
+        double α = β - Math.atan2(this.vy[pBall], this.vx[pBall]);
+        double cosα = Math.cos(α);
+        double sinα = Math.sin(α);
+        double aux = this.vx[pBall];
+        this.vx[pBall] = aux * cosα - this.vy[pBall] * sinα;
+        this.vy[pBall] = aux * sinα + this.vy[pBall] * cosα;
+    }
+}
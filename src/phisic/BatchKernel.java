@@ -0,0 +1,135 @@
+package phisic;
+
+/**
+ * La classe <code>BatchKernel</code> raccoglie le operazioni sulle sfere che possono essere eseguite su molte
+ * sfere contemporaneamente: lo spostamento di <code>BallState.move</code> ed i confronti che individuano le
+ * poche sfere da esaminare una alla volta. Le sfere di molti tavoli possono essere raccolte in un unico
+ * <code>BallState</code>, ad esempio con la palla <code>b</code> del tavolo <code>t</code> all'indice
+ * <code>b * tavoli + t</code>, in modo che la stessa palla di tavoli diversi occupi posizioni contigue (vedi
+ * <code>pool.BatchSimulator.setLockstep</code>).
+ * <br><br>
+ * I confronti restituiscono una maschera di bit, per cui ognuno riguarda al massimo 64 sfere; le sfere
+ * individuate si possono scorrere con<br>
+ * <code>for (long m = mask; m != 0; m &amp;= m - 1) { int k = Long.numberOfTrailingZeros(m); }</code>
+ * <br><br>
+ * Sono disponibili due implementazioni: una scalare, sempre presente, ed una che elabora più sfere per
+ * istruzione tramite le <code>Vector API</code> del JDK (modulo <code>jdk.incubator.vector</code>). Questa
+ * si trova nella cartella di sorgenti <code>src-vector</code>, compilata solo con un JDK che la supporta, e
+ * viene caricata per riflessione da {@link #getInstance()}: se la classe non è stata compilata o se la JVM
+ * non è stata avviata con <code>--add-modules jdk.incubator.vector</code>, viene utilizzata l'implementazione
+ * scalare. Le due implementazioni producono risultati identici bit per bit.
+ * @author Oneiros
+ */
+public abstract class BatchKernel {
+
+    /** Il nome della proprietà di sistema che, impostata a <code>false</code>, disattiva le Vector API */
+    public static final String VECTOR_PROPERTY = "phisic.vector";
+    private static final String VECTOR_CLASS = "phisic.VectorKernel";
+    private static final BatchKernel SCALAR = new ScalarKernel();
+    private static BatchKernel instance;
+
+    /**
+     * Restituisce l'implementazione più veloce disponibile su questa JVM.
+     * @return L'implementazione vettoriale, se disponibile; altrimenti quella scalare
+     */
+    public static synchronized BatchKernel getInstance() {
+        if (instance == null) {
+            instance = SCALAR;
+            if (!"false".equals(System.getProperty(VECTOR_PROPERTY))) {
+                try {
+                    instance = (BatchKernel) Class.forName(VECTOR_CLASS).getDeclaredConstructor().newInstance();
+                } catch (ReflectiveOperationException ex) {
+                    // Classe non compilata: si utilizza l'implementazione scalare
+                } catch (LinkageError ex) {
+                    // Modulo jdk.incubator.vector non disponibile: si utilizza l'implementazione scalare
+                }
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Restituisce l'implementazione scalare.
+     * @return L'implementazione scalare
+     */
+    public static BatchKernel getScalar() {
+        return SCALAR;
+    }
+
+    /**
+     * Restituisce una descrizione dell'implementazione, ad esempio il numero di sfere elaborate per istruzione.
+     * @return La descrizione dell'implementazione
+     */
+    public abstract String getName();
+
+    /**
+     * Muove di una frazione <code>pStep</code> di "step" le sfere di <code>pState</code> con indice compreso
+     * tra <code>pFrom</code> (incluso) e <code>pTo</code> (escluso). Il risultato coincide con quello di
+     * {@link BallState#move(int, double, double)} invocato su ognuna delle sfere; le sfere prive di velocità,
+     * comprese quelle in buca, non vengono modificate.
+     * @param pState Lo stato delle sfere
+     * @param pFriction L'attrito generato dal rotolamento delle sfere sulla superficie
+     * @param pStep La frazione di "step" da simulare
+     * @param pFrom L'indice della prima sfera
+     * @param pTo L'indice successivo a quello dell'ultima sfera
+     */
+    public abstract void move(BallState pState, double pFriction, double pStep, int pFrom, int pTo);
+
+    /**
+     * Cerca le sfere di <code>pState</code>, con indice compreso tra <code>pFrom</code> (incluso) e
+     * <code>pTo</code> (escluso), che hanno una velocità non nulla, come in
+     * {@link BallState#hasSpeed(int)}.
+     * @param pState Lo stato delle sfere
+     * @param pFrom L'indice della prima sfera
+     * @param pTo L'indice successivo a quello dell'ultima sfera, al massimo <code>pFrom + 64</code>
+     * @return La maschera nella quale il bit <code>k</code> vale <code>1</code> se la sfera
+     *         <code>pFrom + k</code> è in movimento
+     */
+    public abstract long moving(BallState pState, int pFrom, int pTo);
+
+    /**
+     * Cerca le sfere di <code>pState</code>, con indice compreso tra <code>pFrom</code> (incluso) e
+     * <code>pTo</code> (escluso), il cui centro si trova al di fuori del rettangolo
+     * <code>[pMinX,pMaxX] x [pMinY,pMaxY]</code>.
+     * @param pState Lo stato delle sfere
+     * @param pMinX La coordinata <code>x</code> minima del rettangolo
+     * @param pMinY La coordinata <code>y</code> minima del rettangolo
+     * @param pMaxX La coordinata <code>x</code> massima del rettangolo
+     * @param pMaxY La coordinata <code>y</code> massima del rettangolo
+     * @param pFrom L'indice della prima sfera
+     * @param pTo L'indice successivo a quello dell'ultima sfera, al massimo <code>pFrom + 64</code>
+     * @return La maschera nella quale il bit <code>k</code> vale <code>1</code> se la sfera
+     *         <code>pFrom + k</code> si trova al di fuori del rettangolo
+     */
+    public abstract long outside(BallState pState, double pMinX, double pMinY, double pMaxX, double pMaxY,
+            int pFrom, int pTo);
+
+    /**
+     * Confronta a coppie le sfere <code>pFirst + k</code> e <code>pSecond + k</code>, per <code>k</code> da
+     * <code>0</code> a <code>pCount - 1</code>, e cerca quelle che si toccano, come in
+     * {@link BallState#isTouching(int, int)}. Le sfere in buca non vengono escluse.
+     * @param pState Lo stato delle sfere
+     * @param pFirst L'indice della prima sfera della prima serie
+     * @param pSecond L'indice della prima sfera della seconda serie
+     * @param pCount Il numero di coppie, al massimo <code>64</code>
+     * @return La maschera nella quale il bit <code>k</code> vale <code>1</code> se le sfere
+     *         <code>pFirst + k</code> e <code>pSecond + k</code> si toccano
+     */
+    public abstract long touching(BallState pState, int pFirst, int pSecond, int pCount);
+
+    /**
+     * Restituisce la riduzione relativa della velocità in un sotto-step <code>pStep</code>, come in
+     * <code>BallState.move</code>.
+     */
+    static double getDecay(double pFriction, double pStep) {
+        return pStep == 1 ? pFriction : 1 - Math.pow(1 - pFriction, pStep);
+    }
+
+    /**
+     * Restituisce il fattore per il quale va moltiplicata la velocità per ottenere lo spostamento in un
+     * sotto-step <code>pStep</code>, come in <code>BallState.move</code>.
+     */
+    static double getTravel(double pFriction, double pStep) {
+        return pStep == 1 || pFriction == 0 ? pStep : getDecay(pFriction, pStep) / pFriction;
+    }
+}
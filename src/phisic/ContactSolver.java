@@ -0,0 +1,325 @@
+package phisic;
+
+/**
+ * La classe <code>ContactSolver</code> risolve simultaneamente tutti i contatti tra le sfere di un
+ * <code>BallState</code> avvenuti durante uno "step", anziché una coppia alla volta. I contatti vengono
+ * raccolti a partire dalle sfere in movimento, propagandosi alle sfere che le toccano (a meno di
+ * {@link #CONTACT_MARGIN}): nel triangolo di apertura l'intero gruppo di palle viene quindi risolto in un
+ * solo "step".
+ * <br><br>
+ * Ad ogni contatto è associato un impulso normale non negativo, calcolato con un'iterazione di Gauss-Seidel
+ * proiettata: ad ogni passo l'impulso di ogni contatto viene corretto in modo da ottenere la velocità
+ * relativa desiderata, e la correzione viene applicata subito alle due sfere. I contatti vengono esaminati
+ * in ordine di posizione sul tavolo, per cui il risultato non dipende dalla numerazione delle sfere né
+ * dall'ordine nel quale i contatti sono stati raccolti. L'iterazione parte dagli impulsi dello "step"
+ * precedente (vedi {@link #solve(BallState)}) e si arresta quando nessuna correzione supera {@link #TOLERANCE}, oppure dopo
+ * {@link #MAX_ITERATIONS} passi. Un contatto isolato viene risolto in un passo ed il risultato coincide
+ * con quello di {@link BallState#collide(int, int)}.
+ * <br><br>
+ * Nessun metodo di questa classe alloca oggetti.
+ * @author Oneiros
+ */
+public class ContactSolver {
+
+    /** La distanza tra le superfici al di sotto della quale due sfere vengono considerate a contatto */
+    public static final double CONTACT_MARGIN = 0.5;
+    /** La correzione massima di un impulso al di sotto della quale l'iterazione si arresta */
+    public static final double TOLERANCE = 1e-9;
+    /** Il numero massimo di passi dell'iterazione */
+    public static final int MAX_ITERATIONS = 256;
+    /** Il coefficiente di restituzione degli urti tra sfere */
+    public static final double RESTITUTION = 1;
+    private final int balls;
+    private final int[] first;
+    private final int[] second;
+    private final double[] nx;
+    private final double[] ny;
+    private final double[] distance;
+    private final double[] target;
+    private final double[] impulse;
+    private final double[] dx;
+    private final double[] dy;
+    private final int[] queue;
+    private final int[] position;
+    private final int[] neighbours;
+    /** Gli impulsi dello "step" precedente, indicizzati per coppia di sfere */
+    private final double[] warm;
+    private final int[] warmPairs;
+    private int warmCount;
+    private int count;
+    private int iterations;
+
+    /**
+     * Crea ed inizializza un risolutore per <code>pBalls</code> sfere.
+     * @param pBalls Il numero di sfere
+     */
+    public ContactSolver(int pBalls) {
+        this.balls = pBalls;
+        // Una sfera può toccarne al più 6 di uguale dimensione
+        int capacity = 3 * pBalls;
+        this.first = new int[capacity];
+        this.second = new int[capacity];
+        this.nx = new double[capacity];
+        this.ny = new double[capacity];
+        this.distance = new double[capacity];
+        this.target = new double[capacity];
+        this.impulse = new double[capacity];
+        this.dx = new double[pBalls];
+        this.dy = new double[pBalls];
+        this.queue = new int[pBalls];
+        this.position = new int[pBalls];
+        java.util.Arrays.fill(this.position, -1);
+        this.neighbours = new int[pBalls];
+        this.warm = new double[pBalls * pBalls];
+        this.warmPairs = new int[capacity];
+    }
+
+    /**
+     * Dimentica gli impulsi dello "step" precedente, ad esempio quando le sfere sono state spostate
+     * dall'esterno o sta per iniziare un nuovo tiro.
+     */
+    public void reset() {
+        for (int k = 0; k < this.warmCount; k++) {
+            this.warm[this.warmPairs[k]] = 0;
+        }
+        this.warmCount = 0;
+        this.count = 0;
+    }
+
+    /**
+     * Raccoglie i contatti tra le sfere in movimento <code>pMoving</code> e le sfere che le toccano,
+     * proseguendo attraverso le sfere toccate, anche se ferme.
+     * @param pState Lo stato delle sfere
+     * @param pGrid La griglia delle sfere, aggiornata
+     * @param pMoving Le sfere in movimento
+     * @return Il numero di contatti raccolti
+     */
+    public int gather(BallState pState, BallGrid pGrid, java.util.BitSet pMoving) {
+        this.count = 0;
+        int head = 0, tail = 0;
+        for (int i = pMoving.nextSetBit(0); i >= 0; i = pMoving.nextSetBit(i + 1)) {
+            this.position[i] = tail;
+            this.queue[tail++] = i;
+        }
+        double reach = Sphere2D.BALL_SIZE + CONTACT_MARGIN;
+        while (head < tail) {
+            int i = this.queue[head++];
+            int found = pGrid.getNeighbours(i, this.neighbours);
+            for (int k = 0; k < found; k++) {
+                int j = this.neighbours[k];
+                // Le coppie con sfere già esaminate sono state raccolte esaminando queste ultime
+                if (this.position[j] >= 0 && this.position[j] < head - 1) {
+                    continue;
+                }
+                double x = pState.x[j] - pState.x[i];
+                double y = pState.y[j] - pState.y[i];
+                double squared = x * x + y * y;
+                if (squared < reach * reach && this.count < this.first.length) {
+                    this.add(i, j, x, y, Math.sqrt(squared));
+                    if (this.position[j] < 0) {
+                        this.position[j] = tail;
+                        this.queue[tail++] = j;
+                    }
+                }
+            }
+        }
+        for (int k = 0; k < tail; k++) {
+            this.position[this.queue[k]] = -1;
+        }
+        this.sort(pState);
+        return this.count;
+    }
+
+    /**
+     * Ordina i contatti per posizione del punto medio tra i centri, prima per <code>x</code> e poi per
+     * <code>y</code>.
+     */
+    private void sort(BallState pState) {
+        for (int c = 1; c < this.count; c++) {
+            int i = this.first[c], j = this.second[c];
+            double x = pState.x[i] + pState.x[j], y = pState.y[i] + pState.y[j];
+            double cx = this.nx[c], cy = this.ny[c], d = this.distance[c];
+            int k = c;
+            while (k > 0) {
+                double px = pState.x[this.first[k - 1]] + pState.x[this.second[k - 1]];
+                double py = pState.y[this.first[k - 1]] + pState.y[this.second[k - 1]];
+                if (px < x || (px == x && py <= y)) {
+                    break;
+                }
+                this.first[k] = this.first[k - 1];
+                this.second[k] = this.second[k - 1];
+                this.nx[k] = this.nx[k - 1];
+                this.ny[k] = this.ny[k - 1];
+                this.distance[k] = this.distance[k - 1];
+                k--;
+            }
+            this.first[k] = i;
+            this.second[k] = j;
+            this.nx[k] = cx;
+            this.ny[k] = cy;
+            this.distance[k] = d;
+        }
+    }
+
+    private void add(int pBall, int pSecondBall, double pDx, double pDy, double pDistance) {
+        int c = this.count++;
+        if (pDistance == 0) {
+            pDx = 1;
+            pDistance = 1;
+        }
+        this.first[c] = pBall;
+        this.second[c] = pSecondBall;
+        this.nx[c] = pDx / pDistance;
+        this.ny[c] = pDy / pDistance;
+        this.distance[c] = pDistance;
+    }
+
+    /**
+     * Calcola ed applica gli impulsi dei contatti raccolti con {@link #gather(BallState, BallGrid,
+     * java.util.BitSet)}: al termine nessuna coppia di sfere a contatto si avvicina, e quelle che si
+     * avvicinavano si allontanano con la velocità relativa moltiplicata per {@link #RESTITUTION}.
+     * @param pState Lo stato delle sfere
+     * @return Il numero di passi eseguiti
+     */
+    public int solve(BallState pState) {
+        int n = this.balls;
+        // Velocità relative iniziali e partenza dagli impulsi dello "step" precedente, limitati all'impulso
+        // che il contatto richiederebbe se fosse isolato: gli urti tra sfere sono istantanei, per cui un
+        // impulso già applicato non va ripetuto se le sfere non si stanno più avvicinando
+        for (int c = 0; c < this.count; c++) {
+            int i = this.first[c], j = this.second[c];
+            double approach = this.getNormalSpeed(pState, c);
+            this.target[c] = approach < 0 ? -RESTITUTION * approach : 0;
+            this.impulse[c] = Math.min(this.target[c], this.warm[Math.min(i, j) * n + Math.max(i, j)]);
+        }
+        for (int c = 0; c < this.count; c++) {
+            this.apply(pState, c, this.impulse[c]);
+        }
+        for (int k = 0; k < this.warmCount; k++) {
+            this.warm[this.warmPairs[k]] = 0;
+        }
+
+        this.iterations = 0;
+        double largest = Double.POSITIVE_INFINITY;
+        while (largest > TOLERANCE && this.iterations < MAX_ITERATIONS) {
+            largest = 0;
+            for (int c = 0; c < this.count; c++) {
+                // Le due sfere hanno massa unitaria: un impulso λ varia la velocità relativa di 2λ
+                double updated = Math.max(0, this.impulse[c] + (this.target[c] - this.getNormalSpeed(pState, c)) / 2);
+                double correction = updated - this.impulse[c];
+                this.impulse[c] = updated;
+                this.apply(pState, c, correction);
+                largest = Math.max(largest, Math.abs(correction));
+            }
+            this.iterations++;
+        }
+
+        this.warmCount = 0;
+        for (int c = 0; c < this.count; c++) {
+            int pair = Math.min(this.first[c], this.second[c]) * n + Math.max(this.first[c], this.second[c]);
+            this.warm[pair] = this.impulse[c];
+            this.warmPairs[this.warmCount++] = pair;
+        }
+        return this.iterations;
+    }
+
+    /**
+     * Restituisce la velocità relativa lungo la normale del contatto <code>pContact</code>, negativa se
+     * le sfere si avvicinano. L'asse y delle velocità è orientato verso l'alto.
+     */
+    private double getNormalSpeed(BallState pState, int pContact) {
+        int i = this.first[pContact], j = this.second[pContact];
+        return (pState.vx[j] - pState.vx[i]) * this.nx[pContact] - (pState.vy[j] - pState.vy[i]) * this.ny[pContact];
+    }
+
+    private void apply(BallState pState, int pContact, double pImpulse) {
+        if (pImpulse != 0) {
+            int i = this.first[pContact], j = this.second[pContact];
+            double x = pImpulse * this.nx[pContact];
+            double y = pImpulse * this.ny[pContact];
+            pState.vx[i] -= x;
+            pState.vy[i] += y;
+            pState.vx[j] += x;
+            pState.vy[j] -= y;
+        }
+    }
+
+    /**
+     * Distanzia le sfere compenetrate: ogni contatto sposta le sue due sfere come
+     * {@link BallState#separate(int, int, double, double, double)}, ma gli spostamenti vengono calcolati
+     * tutti a partire dalle posizioni iniziali e poi sommati.
+     * @param pState Lo stato delle sfere
+     */
+    public void separate(BallState pState) {
+        for (int c = 0; c < this.count; c++) {
+            this.dx[this.first[c]] = 0;
+            this.dy[this.first[c]] = 0;
+            this.dx[this.second[c]] = 0;
+            this.dy[this.second[c]] = 0;
+        }
+        for (int c = 0; c < this.count; c++) {
+            double overlap = (Sphere2D.BALL_SIZE + Sphere2D.SKIN - this.distance[c]) / 2;
+            if (overlap > 0) {
+                int i = this.first[c], j = this.second[c];
+                this.dx[i] -= overlap * this.nx[c];
+                this.dy[i] -= overlap * this.ny[c];
+                this.dx[j] += overlap * this.nx[c];
+                this.dy[j] += overlap * this.ny[c];
+            }
+        }
+        for (int c = 0; c < this.count; c++) {
+            int i = this.first[c], j = this.second[c];
+            pState.x[i] += this.dx[i];
+            pState.y[i] += this.dy[i];
+            this.dx[i] = 0;
+            this.dy[i] = 0;
+            pState.x[j] += this.dx[j];
+            pState.y[j] += this.dy[j];
+            this.dx[j] = 0;
+            this.dy[j] = 0;
+        }
+    }
+
+    /**
+     * Restituisce il numero di contatti raccolti.
+     * @return Il numero di contatti
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Restituisce la prima sfera del contatto <code>pContact</code>.
+     * @param pContact L'indice del contatto
+     * @return L'indice della sfera
+     */
+    public int getFirst(int pContact) {
+        return this.first[pContact];
+    }
+
+    /**
+     * Restituisce la seconda sfera del contatto <code>pContact</code>.
+     * @param pContact L'indice del contatto
+     * @return L'indice della sfera
+     */
+    public int getSecond(int pContact) {
+        return this.second[pContact];
+    }
+
+    /**
+     * Restituisce l'impulso normale applicato al contatto <code>pContact</code> dall'ultima risoluzione.
+     * @param pContact L'indice del contatto
+     * @return L'impulso, non negativo
+     */
+    public double getImpulse(int pContact) {
+        return this.impulse[pContact];
+    }
+
+    /**
+     * Restituisce il numero di passi eseguiti dall'ultima risoluzione.
+     * @return Il numero di passi
+     */
+    public int getIterations() {
+        return this.iterations;
+    }
+}
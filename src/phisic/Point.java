@@ -94,17 +94,23 @@ public class Point extends java.awt.geom.Point2D.Double {
 
     /**
      * Sposta l'istanza del punto lungo la retta passante per essa ed il punto <code>pPoint</code>
-     * in modo che la distanza tra i due punti sia uguale a <code>pDistance</code>
+     * in modo che la distanza tra i due punti sia uguale a <code>pDistance</code>. Il punto viene spostato
+     * solo se si trova ad una distanza inferiore; se i due punti coincidono lo spostamento avviene lungo
+     * l'asse delle ascisse.
      * @param pPoint Il punto dal quale distanziare l'istanza del punto
      * @param pDistance La distanza finale tra l'istanza del punto e <code>pPoint</code>
      */
     public void setDistanceFrom(Point pPoint, double pDistance) {
-        double α = Math.atan2(this.y - pPoint.y, this.x - pPoint.x) % Math.PI;
-        double aux = pDistance;
-        while (this.distance(pPoint) < pDistance) {
-            this.x = aux * Math.cos(α) + pPoint.x;
-            this.y = aux * Math.sin(α) + pPoint.y;
-            aux += 0.001;
+        double dx = this.x - pPoint.x;
+        double dy = this.y - pPoint.y;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance < pDistance) {
+            if (distance == 0) {
+                dx = 1;
+                distance = 1;
+            }
+            this.x = pPoint.x + dx * pDistance / distance;
+            this.y = pPoint.y + dy * pDistance / distance;
         }
     }
 
@@ -0,0 +1,70 @@
+package phisic;
+
+/**
+ * La classe <code>ScalarKernel</code> implementa <code>BatchKernel</code> elaborando una sfera alla volta.
+ * Viene utilizzata quando le Vector API non sono disponibili e, dall'implementazione vettoriale, per le
+ * sfere che non riempiono un intero vettore. I confronti non contengono diramazioni.
+ * @author Oneiros
+ */
+class ScalarKernel extends BatchKernel {
+
+    @Override
+    public String getName() {
+        return "scalar";
+    }
+
+    @Override
+    public void move(BallState pState, double pFriction, double pStep, int pFrom, int pTo) {
+        double decay = getDecay(pFriction, pStep);
+        double travel = getTravel(pFriction, pStep);
+        double threshold = pFriction * pFriction * 100;
+        double[] x = pState.x, y = pState.y, vx = pState.vx, vy = pState.vy;
+        for (int i = pFrom; i < pTo; i++) {
+            double squaredSpeed = vx[i] * vx[i] + vy[i] * vy[i];
+            if (squaredSpeed > 0) {
+                if (squaredSpeed < threshold) {
+                    vx[i] = 0;
+                    vy[i] = 0;
+                } else {
+                    x[i] += travel * vx[i];
+                    y[i] -= travel * vy[i];
+                    vx[i] -= decay * vx[i];
+                    vy[i] -= decay * vy[i];
+                }
+            }
+        }
+    }
+
+    @Override
+    public long moving(BallState pState, int pFrom, int pTo) {
+        double[] vx = pState.vx, vy = pState.vy;
+        long mask = 0;
+        for (int i = pFrom; i < pTo; i++) {
+            mask |= (vx[i] * vx[i] + vy[i] * vy[i] > 0 ? 1L : 0L) << (i - pFrom);
+        }
+        return mask;
+    }
+
+    @Override
+    public long outside(BallState pState, double pMinX, double pMinY, double pMaxX, double pMaxY, int pFrom, int pTo) {
+        double[] x = pState.x, y = pState.y;
+        long mask = 0;
+        for (int i = pFrom; i < pTo; i++) {
+            mask |= (x[i] < pMinX | x[i] > pMaxX | y[i] < pMinY | y[i] > pMaxY ? 1L : 0L) << (i - pFrom);
+        }
+        return mask;
+    }
+
+    @Override
+    public long touching(BallState pState, int pFirst, int pSecond, int pCount) {
+        double[] x = pState.x, y = pState.y;
+        double limit = Sphere2D.BALL_SIZE * Sphere2D.BALL_SIZE;
+        long mask = 0;
+        for (int k = 0; k < pCount; k++) {
+            double dx = x[pSecond + k] - x[pFirst + k];
+            double dy = y[pSecond + k] - y[pFirst + k];
+            mask |= (dx * dx + dy * dy < limit ? 1L : 0L) << k;
+        }
+        return mask;
+    }
+}
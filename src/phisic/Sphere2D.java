@@ -9,6 +9,8 @@ public class Sphere2D {
 
     /** Il diametro delle sfere modellate da questa classe.*/
     public static int BALL_SIZE = 30;
+    /** La distanza aggiuntiva a cui vengono separati gli oggetti in contatto, per assorbire gli errori di arrotondamento.*/
+    public static final double SKIN = 1e-6;
     /** Il vettore posizione della sfera.*/
     public Vector location;
     /** Il vettore velocità della sfera.*/
@@ -34,14 +36,30 @@ public class Sphere2D {
      * @param pFriction L'attrito generato dal rotolamento della sfera sulla superficie
      */
     public void move(double pFriction) {
+        this.move(pFriction, 1);
+    }
+
+    /**
+     * Muove la sfera di una frazione <code>pStep</code> di "step". L'attrito viene composto in modo che
+     * <code>n</code> chiamate con <code>pStep = 1/n</code> riducano la velocità quanto una singola chiamata a
+     * {@link #move(double)}, e lo spostamento segue la stessa legge: dopo un tempo <code>t</code> la sfera ha
+     * percorso <code>v * (1 - r^t) / (1 - r)</code>, con <code>r = 1 - pFriction</code>, qualunque sia la
+     * suddivisione di <code>t</code>. Con <code>pStep = 1</code> il comportamento coincide esattamente con
+     * quello di {@link #move(double)}.
+     * @param pFriction L'attrito generato dal rotolamento della sfera sulla superficie
+     * @param pStep La frazione di "step" da simulare, maggiore di <code>0</code>
+     */
+    public void move(double pFriction, double pStep) {
         if (this.hasSpeed()) {
             if (this.speed.getMagnitude() < pFriction * 10) {
                 this.stop();
             } else {
-                this.location.x += this.speed.x;
-                this.location.y -= this.speed.y;
-                this.speed.x -= pFriction * this.speed.x;
-                this.speed.y -= pFriction * this.speed.y;
+                double decay = pStep == 1 ? pFriction : 1 - Math.pow(1 - pFriction, pStep);
+                double travel = pStep == 1 || pFriction == 0 ? pStep : decay / pFriction;
+                this.location.x += travel * this.speed.x;
+                this.location.y -= travel * this.speed.y;
+                this.speed.x -= decay * this.speed.x;
+                this.speed.y -= decay * this.speed.y;
             }
         }
     }
@@ -91,27 +109,36 @@ public class Sphere2D {
 
     /**
      * Gestisce l'urto tra la sfera d'istanza e la sfera <code>pSphere</code>. Le nuove velocità e le nuove
-     * direzioni vengono determinate scambiando le proiezioni dei vettori velocità sulla retta tangente
-     * alle due sfere. Il metodo si occupa anche di distanziare opportunamente le due sfere per evitare casi di
-     * autocompenetrazione.
+     * direzioni vengono determinate scambiando le proiezioni dei vettori velocità sulla retta che congiunge
+     * i centri delle due sfere. Il metodo si occupa anche di distanziare opportunamente le due sfere lungo
+     * la stessa retta per evitare casi di autocompenetrazione, in tempo costante qualunque sia la profondità
+     * della compenetrazione.
      * @param pSphere La sfera con la quale è avvenuta la collisione
      */
     public void collideWith(Sphere2D pSphere) {
-        double α = Math.PI / 2 - this.location.getAngularCoordFromPoint(pSphere.location);
-
-        this.speed.rotate(α);
-        pSphere.speed.rotate(α);
-
-        double aux = this.speed.y;
-        this.speed.y = pSphere.speed.y;
-        pSphere.speed.y = aux;
-
-        this.speed.rotate(-α);
-        pSphere.speed.rotate(-α);
+        double dx = pSphere.location.x - this.location.x;
+        double dy = pSphere.location.y - this.location.y;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if (distance == 0) {
+            dx = 1;
+            distance = 1;
+        }
+        double nx = dx / distance;
+        double ny = dy / distance;
 
-        Point M = new Point((this.location.x + pSphere.location.x) / 2, (this.location.y + pSphere.location.y) / 2);
+        // L'asse y dei vettori velocità è orientato verso l'alto
+        double impulse = (pSphere.speed.x - this.speed.x) * nx - (pSphere.speed.y - this.speed.y) * ny;
+        this.speed.x += impulse * nx;
+        this.speed.y -= impulse * ny;
+        pSphere.speed.x -= impulse * nx;
+        pSphere.speed.y += impulse * ny;
 
-        this.location.setDistanceFrom(M, Sphere2D.BALL_SIZE / 2);
-        pSphere.location.setDistanceFrom(M, Sphere2D.BALL_SIZE / 2);
+        double overlap = (BALL_SIZE + SKIN - distance) / 2;
+        if (overlap > 0) {
+            this.location.x -= overlap * nx;
+            this.location.y -= overlap * ny;
+            pSphere.location.x += overlap * nx;
+            pSphere.location.y += overlap * ny;
+        }
     }
 }
@@ -0,0 +1,205 @@
+package phisic;
+
+/**
+ * La classe <code>SpinState</code> affianca a <code>BallState</code> la rotazione delle sfere, memorizzata
+ * anch'essa in array contigui di <code>double</code> indicizzati dal numero della sfera. Per ogni sfera
+ * vengono memorizzate la velocità di rotolamento <code>(rx,ry)</code>, cioè il prodotto tra il raggio e la
+ * componente orizzontale della velocità angolare, espressa come la velocità che avrebbe la sfera se
+ * rotolasse senza strisciare (con gli stessi assi di <code>vx</code> e <code>vy</code>), e l'effetto
+ * laterale <code>side</code>, il prodotto tra il raggio e la componente verticale della velocità angolare.
+ * <br><br>
+ * Finché la velocità e la velocità di rotolamento differiscono la sfera striscia: l'attrito radente,
+ * costante ed opposto alla velocità del punto di contatto, modifica entrambe fino a renderle uguali. Da quel
+ * momento la sfera rotola e rallenta come in {@link BallState#move(int, double, double)}. Un tiro colpito
+ * sopra o sotto il centro (colpo "a seguire" o "a ritornare") produce così una sfera che, dopo aver urtato
+ * un'altra sfera, prosegue o torna indietro; l'effetto laterale modifica invece l'angolo di rimbalzo sulle
+ * sponde.
+ * <br><br>
+ * Nessun metodo di questa classe alloca oggetti.
+ * @author Oneiros
+ */
+public class SpinState {
+
+    /** La decelerazione dovuta all'attrito radente durante lo strisciamento, per "step" */
+    public static final double SLIDING_FRICTION = 0.08;
+    /** La diminuzione dell'effetto laterale dovuta all'attrito con il panno, per "step" */
+    public static final double SPIN_FRICTION = 0.02;
+    /** La frazione dell'effetto laterale trasformata in velocità tangenziale ad ogni urto con una sponda */
+    public static final double CUSHION_TRANSFER = 0.25;
+    /** La massima distanza dal centro alla quale la stecca può colpire la sfera, in frazioni del raggio */
+    public static final double MAX_TIP_OFFSET = 0.5;
+    /** La differenza tra velocità e velocità di rotolamento al di sotto della quale la sfera rotola */
+    private static final double SLIP_EPSILON = 1e-9;
+    /** Le componenti <code>x</code> delle velocità di rotolamento delle sfere. */
+    public final double[] rx;
+    /** Le componenti <code>y</code> delle velocità di rotolamento delle sfere (positive verso l'alto). */
+    public final double[] ry;
+    /** L'effetto laterale delle sfere, positivo in senso antiorario. */
+    public final double[] side;
+
+    /**
+     * Crea ed inizializza la rotazione di <code>pCount</code> sfere prive di rotazione.
+     * @param pCount Il numero di sfere
+     */
+    public SpinState(int pCount) {
+        this.rx = new double[pCount];
+        this.ry = new double[pCount];
+        this.side = new double[pCount];
+    }
+
+    /**
+     * Restituisce il numero di sfere memorizzate.
+     * @return Il numero di sfere
+     */
+    public int size() {
+        return this.rx.length;
+    }
+
+    /**
+     * Porta tutte le sfere di <code>pState</code> in rotolamento naturale, senza effetto laterale.
+     * @param pState Lo stato delle sfere
+     */
+    public void roll(BallState pState) {
+        System.arraycopy(pState.vx, 0, this.rx, 0, this.rx.length);
+        System.arraycopy(pState.vy, 0, this.ry, 0, this.ry.length);
+        java.util.Arrays.fill(this.side, 0);
+    }
+
+    /**
+     * Annulla la rotazione della sfera <code>pBall</code>.
+     * @param pBall L'indice della sfera
+     */
+    public void stop(int pBall) {
+        this.rx[pBall] = 0;
+        this.ry[pBall] = 0;
+        this.side[pBall] = 0;
+    }
+
+    /**
+     * Determina se la sfera <code>pBall</code> sta strisciando sul panno, cioè se la sua velocità differisce
+     * dalla sua velocità di rotolamento. Una sfera ferma che ruota su se stessa è in movimento.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     * @return <code>true</code> se la sfera striscia;<br>
+     *         <code>false</code> se rotola o è ferma.
+     */
+    public boolean isSliding(BallState pState, int pBall) {
+        double ux = pState.vx[pBall] - this.rx[pBall];
+        double uy = pState.vy[pBall] - this.ry[pBall];
+        return ux * ux + uy * uy > SLIP_EPSILON * SLIP_EPSILON;
+    }
+
+    /**
+     * Colpisce la sfera <code>pBall</code> con la stecca. La velocità è quella di
+     * {@link BallState#setSpeed(int, double, double)}; la rotazione dipende dal punto colpito.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     * @param pStrength Il modulo della velocità impressa
+     * @param pAngle L'inclinazione della velocità espressa in radianti
+     * @param pFollow La distanza verticale dal centro del punto colpito, tra <code>-1</code> (colpo a
+     *                ritornare) e <code>1</code> (colpo a seguire), in frazioni di {@link #MAX_TIP_OFFSET}
+     * @param pEnglish La distanza orizzontale dal centro del punto colpito, tra <code>-1</code> (sinistra) e
+     *                 <code>1</code> (destra), in frazioni di {@link #MAX_TIP_OFFSET}
+     */
+    public void strike(BallState pState, int pBall, double pStrength, double pAngle, double pFollow,
+            double pEnglish) {
+        pState.setSpeed(pBall, pStrength, pAngle);
+        // Per una sfera piena colpita a distanza b dal centro: R·ω = 5/2·b/R·v
+        double follow = 2.5 * MAX_TIP_OFFSET * Math.max(-1, Math.min(1, pFollow));
+        this.rx[pBall] = follow * pState.vx[pBall];
+        this.ry[pBall] = follow * pState.vy[pBall];
+        this.side[pBall] = -2.5 * MAX_TIP_OFFSET * Math.max(-1, Math.min(1, pEnglish)) * pStrength;
+    }
+
+    /**
+     * Muove la sfera <code>pBall</code> di una frazione <code>pStep</code> di "step". Se la sfera striscia,
+     * l'attrito radente riduce la differenza tra velocità e velocità di rotolamento di
+     * <code>7/2·SLIDING_FRICTION</code> per "step", fino ad annullarla; se rotola, il movimento coincide con
+     * quello di {@link BallState#move(int, double, double)}.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     * @param pFriction L'attrito generato dal rotolamento della sfera sulla superficie
+     * @param pStep La frazione di "step" da simulare
+     */
+    public void move(BallState pState, int pBall, double pFriction, double pStep) {
+        double vx = pState.vx[pBall];
+        double vy = pState.vy[pBall];
+        double ux = vx - this.rx[pBall];
+        double uy = vy - this.ry[pBall];
+        double squaredSlip = ux * ux + uy * uy;
+        if (squaredSlip > SLIP_EPSILON * SLIP_EPSILON) {
+            pState.x[pBall] += pStep * vx;
+            pState.y[pBall] -= pStep * vy;
+            double slip = Math.sqrt(squaredSlip);
+            double deceleration = SLIDING_FRICTION * pStep;
+            if (3.5 * deceleration >= slip) {
+                // Fine dello strisciamento: la velocità si riduce di 2/7 della differenza
+                vx -= ux / 3.5;
+                vy -= uy / 3.5;
+                pState.vx[pBall] = vx;
+                pState.vy[pBall] = vy;
+                this.rx[pBall] = vx;
+                this.ry[pBall] = vy;
+            } else {
+                double fx = deceleration * ux / slip;
+                double fy = deceleration * uy / slip;
+                pState.vx[pBall] = vx - fx;
+                pState.vy[pBall] = vy - fy;
+                this.rx[pBall] += 2.5 * fx;
+                this.ry[pBall] += 2.5 * fy;
+            }
+        } else if (vx * vx + vy * vy < pFriction * pFriction * 100) {
+            pState.stop(pBall);
+            this.stop(pBall);
+            return;
+        } else {
+            // Rotolamento: come BallState.move, con la velocità di rotolamento che segue la velocità
+            double decay = pStep == 1 ? pFriction : 1 - Math.pow(1 - pFriction, pStep);
+            double travel = pStep == 1 || pFriction == 0 ? pStep : decay / pFriction;
+            pState.x[pBall] += travel * vx;
+            pState.y[pBall] -= travel * vy;
+            vx -= decay * vx;
+            vy -= decay * vy;
+            pState.vx[pBall] = vx;
+            pState.vy[pBall] = vy;
+            this.rx[pBall] = vx;
+            this.ry[pBall] = vy;
+        }
+        double s = this.side[pBall];
+        if (s != 0) {
+            double decay = SPIN_FRICTION * pStep;
+            this.side[pBall] = Math.abs(s) <= decay ? 0 : s - Math.signum(s) * decay;
+        }
+    }
+
+    /**
+     * Gestisce l'urto tra la sfera <code>pBall</code> ed il muro <code>pWall</code>: la velocità viene
+     * riflessa come in {@link BallState#collide(int, Wall)}, la velocità di rotolamento viene riflessa allo
+     * stesso modo e una parte dell'effetto laterale si trasforma in velocità parallela al muro.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     * @param pWall Il muro sul quale la sfera è entrata in collisione
+     */
+    public void collide(BallState pState, int pBall, Wall pWall) {
+        double vx = pState.vx[pBall];
+        double vy = pState.vy[pBall];
+        pState.collide(pBall, pWall);
+        double cos = Math.cos(2 * pWall.getAngle());
+        double sin = Math.sin(2 * pWall.getAngle());
+        double aux = this.rx[pBall];
+        this.rx[pBall] = aux * cos + this.ry[pBall] * sin;
+        this.ry[pBall] = aux * sin - this.ry[pBall] * cos;
+
+        // La variazione di velocità è diretta lungo la normale al muro, verso l'interno del tavolo
+        double nx = pState.vx[pBall] - vx;
+        double ny = pState.vy[pBall] - vy;
+        double length = Math.sqrt(nx * nx + ny * ny);
+        double s = this.side[pBall];
+        if (s != 0 && length > 0) {
+            double kick = CUSHION_TRANSFER * s / length;
+            pState.vx[pBall] -= kick * ny;
+            pState.vy[pBall] += kick * nx;
+            this.side[pBall] = s - CUSHION_TRANSFER * s;
+        }
+    }
+}
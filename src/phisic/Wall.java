@@ -6,6 +6,10 @@ package phisic;
  */
 public class Wall extends java.awt.geom.Line2D.Double {
 
+    private double angle;
+    private double cosα, sinα;
+    private double rotatedX1, rotatedY1, rotatedX2;
+
     /**
      * Crea ed inizializza un muro a partire dai suoi punti estremali. L'ordine con il quale vengono
      * passati i due parametri <code>A</code> e <code>B</code> rappresenta una terza informazione
@@ -31,13 +35,42 @@ public class Wall extends java.awt.geom.Line2D.Double {
         super(pA, pB);
     }
 
+    /**
+     * Imposta i punti estremali del muro e ne ricalcola l'inclinazione e le coordinate nel sistema di assi
+     * ruotato, in modo che le interrogazioni successive non debbano ricalcolarle.
+     * @param pX1 La coordinata <code>x</code> del primo punto estremale
+     * @param pY1 La coordinata <code>y</code> del primo punto estremale
+     * @param pX2 La coordinata <code>x</code> del secondo punto estremale
+     * @param pY2 La coordinata <code>y</code> del secondo punto estremale
+     */
+    @Override
+    public void setLine(double pX1, double pY1, double pX2, double pY2) {
+        super.setLine(pX1, pY1, pX2, pY2);
+        this.angle = Math.atan2(pY1 - pY2, pX2 - pX1);
+        this.cosα = Math.cos(this.angle);
+        this.sinα = Math.sin(this.angle);
+        this.rotatedX1 = pX1 * this.cosα - pY1 * this.sinα;
+        this.rotatedY1 = pX1 * this.sinα + pY1 * this.cosα;
+        this.rotatedX2 = pX2 * this.cosα - pY2 * this.sinα;
+    }
+
     /**
      * Restituisce la distanza minima tra il muro e la sfera <code>pBall</code>.
      * @param pBall La sfera dalla quale si vuole calcolare la distanza dal muro
      * @return La distanza minima tra il muro e la sfera <code>pBall</code>.
      */
     public double distanceFrom(Sphere2D pBall) {
-        return super.ptSegDist(pBall.location);
+        return this.distanceFrom(pBall.location.x, pBall.location.y);
+    }
+
+    /**
+     * Restituisce la distanza minima tra il muro ed il punto <code>(pX,pY)</code>.
+     * @param pX La coordinata <code>x</code> del punto
+     * @param pY La coordinata <code>y</code> del punto
+     * @return La distanza minima tra il muro ed il punto
+     */
+    public double distanceFrom(double pX, double pY) {
+        return super.ptSegDist(pX, pY);
     }
 
     /**
@@ -47,7 +80,19 @@ public class Wall extends java.awt.geom.Line2D.Double {
      *         <code>false</code> altrimenti.
      */
     public boolean isTouching(Sphere2D pBall) {
-        return this.distanceFrom(pBall) < Sphere2D.BALL_SIZE / 2 || this.getPenetration(pBall) > 0;
+        return this.isTouching(pBall.location.x, pBall.location.y);
+    }
+
+    /**
+     * Determina se una sfera con centro in <code>(pX,pY)</code> si trova ad una distanza dal muro tale
+     * da toccarlo.
+     * @param pX La coordinata <code>x</code> del centro della sfera
+     * @param pY La coordinata <code>y</code> del centro della sfera
+     * @return <code>true</code> se la sfera sta toccando il muro;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isTouching(double pX, double pY) {
+        return this.distanceFrom(pX, pY) < Sphere2D.BALL_SIZE / 2 || this.getPenetration(pX, pY) > 0;
     }
 
     /**
@@ -56,17 +101,21 @@ public class Wall extends java.awt.geom.Line2D.Double {
      * @return La quantità di penetrazione
      */
     public double getPenetration(Sphere2D pBall) {
-        double α = this.getAngle();
-        Point a = new Point(x1, y1);
-        Point b = new Point(x2, y2);
-        Point c = new Point(pBall.location.x, pBall.location.y);
+        return this.getPenetration(pBall.location.x, pBall.location.y);
+    }
 
-        a.changeAxisSystem(α);
-        b.changeAxisSystem(α);
-        c.changeAxisSystem(α);
+    /**
+     * Restituisce di quanto una sfera con centro in <code>(pX,pY)</code> è penetrata all'interno del muro.
+     * @param pX La coordinata <code>x</code> del centro della sfera
+     * @param pY La coordinata <code>y</code> del centro della sfera
+     * @return La quantità di penetrazione
+     */
+    public double getPenetration(double pX, double pY) {
+        double cx = pX * this.cosα - pY * this.sinα;
+        double cy = pX * this.sinα + pY * this.cosα;
 
-        if (c.x > a.x && c.x < b.x && c.y >= (a.y - Sphere2D.BALL_SIZE / 2)) {
-            return Math.abs(c.y - (a.y - Sphere2D.BALL_SIZE / 2));
+        if (cx > this.rotatedX1 && cx < this.rotatedX2 && cy >= (this.rotatedY1 - Sphere2D.BALL_SIZE / 2)) {
+            return Math.abs(cy - (this.rotatedY1 - Sphere2D.BALL_SIZE / 2));
         } else {
             return 0;
         }
@@ -75,24 +124,160 @@ public class Wall extends java.awt.geom.Line2D.Double {
     /**
      * Distanzia opportunamente la sfera <code>pBall</code> in modo da eliminare la penetrazione
      * @param pBall La sfera penetrata nel muro
+     * @see #moveAway(BallState, int)
      */
     public void moveAway(Sphere2D pBall) {
-        double α = this.getAngle();
-        Point a = new Point(this.x1, this.y1);
-        Point b = new Point(this.x2, this.y2);
-        Point c = new Point(pBall.location.x, pBall.location.y);
-
-        a.changeAxisSystem(α);
-        b.changeAxisSystem(α);
-        c.changeAxisSystem(α);
-
-        double aux = Sphere2D.BALL_SIZE / 2;
-        while (this.isTouching(pBall)) {
-            c.y = a.y - aux;
-            b.setLocation(c);
-            b.changeAxisSystem(-α);
-            pBall.location.setLocation(b);
-            aux += 0.001;
+        double x = pBall.location.x;
+        double y = pBall.location.y;
+        if (!this.isTouching(x, y)) {
+            return;
+        }
+        double cx = x * this.cosα - y * this.sinα;
+        double cy = x * this.sinα + y * this.cosα;
+        double ax = this.getAwayX(cx, cy);
+        double ay = this.getAwayY(cx, cy);
+        pBall.location.setLocation(ax * this.cosα + ay * this.sinα, ay * this.cosα - ax * this.sinα);
+    }
+
+    /**
+     * Distanzia opportunamente la sfera <code>pBall</code> dello stato <code>pState</code> in modo da
+     * eliminare la penetrazione. La sfera viene proiettata in tempo costante alla distanza di un raggio
+     * dal muro: se il suo centro cade all'interno del segmento viene spostata perpendicolarmente davanti
+     * al muro, altrimenti viene allontanata radialmente dal punto estremale più vicino.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera penetrata nel muro
+     */
+    public void moveAway(BallState pState, int pBall) {
+        double x = pState.x[pBall];
+        double y = pState.y[pBall];
+        if (!this.isTouching(x, y)) {
+            return;
+        }
+        double cx = x * this.cosα - y * this.sinα;
+        double cy = x * this.sinα + y * this.cosα;
+        double ax = this.getAwayX(cx, cy);
+        double ay = this.getAwayY(cx, cy);
+        pState.x[pBall] = ax * this.cosα + ay * this.sinα;
+        pState.y[pBall] = ay * this.cosα - ax * this.sinα;
+    }
+
+    /**
+     * Restituisce la coordinata <code>x</code>, nel sistema di assi ruotato, nella quale
+     * {@link #moveAway(BallState, int)} sposta una sfera con centro in <code>(pCx,pCy)</code> dello stesso
+     * sistema.
+     */
+    private double getAwayX(double pCx, double pCy) {
+        double ex = Math.max(this.rotatedX1, Math.min(this.rotatedX2, pCx));
+        double dx = pCx - ex;
+        double dy = pCy - this.rotatedY1;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        if ((pCx > this.rotatedX1 && pCx < this.rotatedX2) || distance == 0) {
+            return pCx;
+        }
+        return ex + dx * (Sphere2D.BALL_SIZE / 2 + Sphere2D.SKIN) / distance;
+    }
+
+    /**
+     * Restituisce la coordinata <code>y</code>, nel sistema di assi ruotato, nella quale
+     * {@link #moveAway(BallState, int)} sposta una sfera con centro in <code>(pCx,pCy)</code> dello stesso
+     * sistema.
+     */
+    private double getAwayY(double pCx, double pCy) {
+        double ex = Math.max(this.rotatedX1, Math.min(this.rotatedX2, pCx));
+        double dx = pCx - ex;
+        double dy = pCy - this.rotatedY1;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        double ray = Sphere2D.BALL_SIZE / 2 + Sphere2D.SKIN;
+        if ((pCx > this.rotatedX1 && pCx < this.rotatedX2) || distance == 0) {
+            return this.rotatedY1 - ray;
+        }
+        return this.rotatedY1 + dy * ray / distance;
+    }
+
+    /**
+     * Calcola il primo istante di contatto tra il muro ed una sfera con centro in <code>(pX,pY)</code> che
+     * si muove lungo la traiettoria <code>(pX,pY) + s * (pWx,pWy)</code>, con <code>s</code> compreso tra
+     * <code>0</code> e <code>pMax</code>. Vengono considerati sia il lato anteriore del muro sia i suoi
+     * punti estremali; i contatti con sfere che si stanno allontanando vengono ignorati.
+     * @param pX La coordinata <code>x</code> del centro della sfera
+     * @param pY La coordinata <code>y</code> del centro della sfera
+     * @param pWx La componente <code>x</code> della direzione di spostamento
+     * @param pWy La componente <code>y</code> della direzione di spostamento
+     * @param pMax Il massimo valore del parametro <code>s</code> da considerare
+     * @return Il valore del parametro <code>s</code> al momento del contatto, oppure
+     *         <code>Double.POSITIVE_INFINITY</code> se non avviene alcun contatto
+     */
+    public double getImpact(double pX, double pY, double pWx, double pWy, double pMax) {
+        double ray = Sphere2D.BALL_SIZE / 2;
+        double cx = pX * this.cosα - pY * this.sinα;
+        double cy = pX * this.sinα + pY * this.cosα;
+        double wx = pWx * this.cosα - pWy * this.sinα;
+        double wy = pWx * this.sinα + pWy * this.cosα;
+        double impact = java.lang.Double.POSITIVE_INFINITY;
+        if (wy > 0 && cy <= this.rotatedY1) {
+            double s = Math.max(0, (this.rotatedY1 - ray - cy) / wy);
+            double x = cx + wx * s;
+            if (x > this.rotatedX1 && x < this.rotatedX2) {
+                impact = s;
+            }
+        }
+        impact = Math.min(impact, circleImpact(cx - this.rotatedX1, cy - this.rotatedY1, wx, wy, ray));
+        impact = Math.min(impact, circleImpact(cx - this.rotatedX2, cy - this.rotatedY1, wx, wy, ray));
+        return impact <= pMax ? impact : java.lang.Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Calcola il primo valore non negativo del parametro <code>s</code> per il quale il punto
+     * <code>(pDx,pDy) + s * (pWx,pWy)</code> si trova a distanza <code>pRay</code> dall'origine,
+     * avvicinandosi ad essa.
+     * @param pDx La coordinata <code>x</code> iniziale del punto
+     * @param pDy La coordinata <code>y</code> iniziale del punto
+     * @param pWx La componente <code>x</code> della direzione di spostamento
+     * @param pWy La componente <code>y</code> della direzione di spostamento
+     * @param pRay La distanza di contatto
+     * @return Il valore del parametro <code>s</code> al momento del contatto, oppure
+     *         <code>Double.POSITIVE_INFINITY</code> se non avviene alcun contatto
+     */
+    public static double circleImpact(double pDx, double pDy, double pWx, double pWy, double pRay) {
+        double a = pWx * pWx + pWy * pWy;
+        double b = pDx * pWx + pDy * pWy;
+        if (a == 0 || b >= 0) {
+            return java.lang.Double.POSITIVE_INFINITY;
+        }
+        double c = pDx * pDx + pDy * pDy - pRay * pRay;
+        double discriminant = b * b - a * c;
+        if (discriminant < 0) {
+            return java.lang.Double.POSITIVE_INFINITY;
+        }
+        return Math.max(0, (-b - Math.sqrt(discriminant)) / a);
+    }
+
+    /**
+     * Gestisce l'urto tra la sfera <code>pBall</code> dello stato <code>pState</code> ed il muro, riflettendo
+     * la velocità rispetto alla normale che congiunge il punto del muro più vicino ed il centro della sfera.
+     * Se il contatto avviene lungo il segmento l'effetto coincide con {@link BallState#collide(int, Wall)},
+     * se avviene su un punto estremale la sfera rimbalza come contro uno spigolo.
+     * @param pState Lo stato delle sfere
+     * @param pBall L'indice della sfera
+     */
+    public void bounce(BallState pState, int pBall) {
+        double dx = this.x2 - this.x1;
+        double dy = this.y2 - this.y1;
+        double t = ((pState.x[pBall] - this.x1) * dx + (pState.y[pBall] - this.y1) * dy) / (dx * dx + dy * dy);
+        t = Math.max(0, Math.min(1, t));
+        double nx = pState.x[pBall] - (this.x1 + t * dx);
+        double ny = pState.y[pBall] - (this.y1 + t * dy);
+        double length = Math.sqrt(nx * nx + ny * ny);
+        if (length == 0) {
+            return;
+        }
+        nx /= length;
+        ny /= length;
+        // L'asse y dei vettori velocità è orientato verso l'alto
+        double wn = pState.vx[pBall] * nx - pState.vy[pBall] * ny;
+        if (wn < 0) {
+            pState.vx[pBall] -= 2 * wn * nx;
+            pState.vy[pBall] += 2 * wn * ny;
         }
     }
 
@@ -103,6 +288,6 @@ public class Wall extends java.awt.geom.Line2D.Double {
      * @return L'angolo che forma il muro con l'asse delle ascisse
      */
     public double getAngle() {
-        return new Point(this.x1, this.y1).getAngularCoordFromPoint(new Point(this.x2, this.y2));
+        return this.angle;
     }
 }
@@ -0,0 +1,302 @@
+package pool;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import phisic.*;
+
+/**
+ * La classe <code>BatchSimulator</code> simula in parallelo un gran numero di tiri indipendenti, ognuno a
+ * partire dal proprio stato iniziale del tavolo. I tiri vengono suddivisi ricorsivamente tra i thread di un
+ * <code>ForkJoinPool</code>; ogni thread riutilizza sempre la stessa istanza di <code>TableEngine</code>,
+ * per cui il costo di un tiro è quello della sola simulazione. Con il motore a step fissi i tiri possono
+ * essere simulati anche in lockstep, molti tavoli alla volta (vedi {@link #setLockstep(BatchKernel)}).
+ * <br><br>
+ * Esempio:<br>
+ * <code>
+ * BatchSimulator simulator = new BatchSimulator(TableGeometry.STANDARD, TableEngine.Mode.EVENT_DRIVEN);<br>
+ * BatchSimulator.Outcome[] outcomes = simulator.simulate(shots);<br>
+ * simulator.shutdown();</code>
+ * @author Oneiros
+ */
+public class BatchSimulator {
+
+    /** Il numero di tiri al di sotto del quale un gruppo non viene ulteriormente suddiviso */
+    public static final int THRESHOLD = 8;
+    private final TableGeometry geometry;
+    private final TableEngine.Mode mode;
+    private final ForkJoinPool pool;
+    private BatchKernel lockstepKernel;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    /**
+     * Un tiro da simulare: lo stato iniziale del tavolo ed i parametri con i quali viene colpita la palla
+     * bianca, gli stessi accettati da <code>PoolTable.strike</code>.
+     */
+    public static class Shot {
+
+        private final BallState state;
+        private final double strength;
+        private final double angle;
+
+        /**
+         * Crea ed inizializza un tiro.
+         * @param pState Lo stato iniziale delle palle; non viene modificato dalla simulazione
+         * @param pStrength La forza con la quale viene colpita la palla bianca
+         * @param pAngle L'angolazione con la quale viene colpita la palla bianca
+         */
+        public Shot(BallState pState, double pStrength, double pAngle) {
+            this.state = pState;
+            this.strength = pStrength;
+            this.angle = pAngle;
+        }
+
+        /**
+         * Restituisce lo stato iniziale delle palle.
+         * @return Lo stato iniziale delle palle
+         */
+        public BallState getState() {
+            return this.state;
+        }
+
+        /**
+         * Restituisce la forza con la quale viene colpita la palla bianca.
+         * @return La forza del tiro
+         */
+        public double getStrength() {
+            return this.strength;
+        }
+
+        /**
+         * Restituisce l'angolazione con la quale viene colpita la palla bianca.
+         * @return L'angolazione del tiro
+         */
+        public double getAngle() {
+            return this.angle;
+        }
+    }
+
+    /**
+     * L'esito di un tiro: lo stato finale del tavolo ed un riepilogo degli eventi avvenuti.
+     */
+    public static class Outcome {
+
+        /** Lo stato finale delle palle */
+        public final BallState state;
+        /** La buca nella quale è caduta ogni palla durante il tiro, <code>-1</code> se non è caduta */
+        public final int[] pocket;
+        /** Il numero di palle cadute in buca durante il tiro */
+        public int pocketed;
+        /** Il numero identificativo della prima palla toccata dalla palla bianca, <code>0</code> se nessuna */
+        public int firstTouchedBall;
+        /** Il numero di urti tra palle */
+        public int collisions;
+        /** Il numero di urti contro le sponde */
+        public int cushionHits;
+        /** La durata del tiro espressa in "step" */
+        public int duration;
+
+        Outcome(int pBalls) {
+            this.state = new BallState(pBalls);
+            this.pocket = new int[pBalls];
+            java.util.Arrays.fill(this.pocket, -1);
+        }
+
+        /**
+         * Determina se la palla bianca è caduta in buca durante il tiro.
+         * @return <code>true</code> se la palla bianca è caduta in buca;<br>
+         *         <code>false</code> altrimenti.
+         */
+        public boolean isScratch() {
+            return this.pocket[0] >= 0;
+        }
+    }
+
+    /**
+     * Il tavolo riutilizzato da un singolo thread, con l'osservatore che ne riassume gli eventi.
+     */
+    private class Worker extends TableEngine.ListenerAdapter {
+
+        private TableEngine engine;
+        private Outcome outcome;
+        private LockstepBatch lockstep;
+
+        private void simulate(Shot pShot, Outcome pOutcome) {
+            int balls = pShot.state.size();
+            if (this.engine == null || this.engine.getState().size() != balls) {
+                this.engine = new TableEngine(geometry, balls);
+                this.engine.setMode(mode);
+                this.engine.addListener(this);
+            }
+            pShot.state.copyTo(this.engine.getState());
+            this.engine.stateChanged();
+            this.engine.strike(pShot.strength, pShot.angle);
+            this.outcome = pOutcome;
+            pOutcome.duration = this.engine.simulate();
+            pOutcome.firstTouchedBall = this.engine.getFirstTouchedBall();
+            this.engine.getState().copyTo(pOutcome.state);
+            this.outcome = null;
+        }
+
+        private void simulate(Shot[] pShots, Outcome[] pOutcomes, int pFrom, int pTo, BatchKernel pKernel) {
+            int balls = pShots[pFrom].state.size();
+            for (int i = pFrom; i < pTo; i++) {
+                pOutcomes[i] = new Outcome(pShots[i].state.size());
+                if (pShots[i].state.size() != balls) {
+                    balls = -1;
+                }
+            }
+            if (balls < 0) {
+                // Tavoli con un numero diverso di palle non possono avanzare insieme
+                for (int i = pFrom; i < pTo; i++) {
+                    this.simulate(pShots[i], pOutcomes[i]);
+                }
+                return;
+            }
+            if (this.lockstep == null || this.lockstep.getBalls() != balls || this.lockstep.getKernel() != pKernel) {
+                this.lockstep = new LockstepBatch(geometry, pKernel, balls);
+            }
+            this.lockstep.simulate(pShots, pOutcomes, pFrom, pTo);
+        }
+
+        @Override
+        public void ballsCollided(int pBall, int pSecondBall, double pStrength) {
+            this.outcome.collisions++;
+        }
+
+        @Override
+        public void cushionHit(int pBall, double pSpeed) {
+            this.outcome.cushionHits++;
+        }
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+            this.outcome.pocket[pBall] = pPocket;
+            this.outcome.pocketed++;
+        }
+    }
+
+    /**
+     * Simula i tiri di un intervallo dell'elenco, suddividendolo se è troppo grande.
+     */
+    private class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final Shot[] shots;
+        private final Outcome[] outcomes;
+        private final int from, to;
+        private final BatchKernel kernel;
+
+        private Task(Shot[] pShots, Outcome[] pOutcomes, int pFrom, int pTo, BatchKernel pKernel) {
+            this.shots = pShots;
+            this.outcomes = pOutcomes;
+            this.from = pFrom;
+            this.to = pTo;
+            this.kernel = pKernel;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.kernel != null && this.to - this.from <= LockstepBatch.TABLES) {
+                if (this.to > this.from) {
+                    workers.get().simulate(this.shots, this.outcomes, this.from, this.to, this.kernel);
+                }
+            } else if (this.kernel == null && this.to - this.from <= THRESHOLD) {
+                Worker worker = workers.get();
+                for (int i = this.from; i < this.to; i++) {
+                    this.outcomes[i] = new Outcome(this.shots[i].state.size());
+                    worker.simulate(this.shots[i], this.outcomes[i]);
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                if (this.kernel != null) {
+                    // In lockstep i gruppi vengono divisi in multipli di LockstepBatch.TABLES tiri
+                    int groups = (this.to - this.from + LockstepBatch.TABLES - 1) / LockstepBatch.TABLES;
+                    middle = this.from + groups / 2 * LockstepBatch.TABLES;
+                }
+                invokeAll(new Task(this.shots, this.outcomes, this.from, middle, this.kernel),
+                        new Task(this.shots, this.outcomes, middle, this.to, this.kernel));
+            }
+        }
+    }
+
+    /**
+     * Crea ed inizializza un simulatore che utilizza tutti i processori disponibili.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione
+     */
+    public BatchSimulator(TableGeometry pGeometry, TableEngine.Mode pMode) {
+        this(pGeometry, pMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea ed inizializza un simulatore che utilizza <code>pParallelism</code> thread.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione
+     * @param pParallelism Il numero di thread
+     */
+    public BatchSimulator(TableGeometry pGeometry, TableEngine.Mode pMode, int pParallelism) {
+        this.geometry = pGeometry;
+        this.mode = pMode;
+        this.pool = new ForkJoinPool(pParallelism);
+    }
+
+    /**
+     * Simula tutti i tiri dell'elenco <code>pShots</code>.
+     * @param pShots I tiri da simulare
+     * @return Gli esiti dei tiri, nello stesso ordine dell'elenco
+     */
+    public Outcome[] simulate(java.util.List<Shot> pShots) {
+        Shot[] shots = pShots.toArray(new Shot[pShots.size()]);
+        Outcome[] outcomes = new Outcome[shots.length];
+        this.pool.invoke(new Task(shots, outcomes, 0, shots.length, this.lockstepKernel));
+        return outcomes;
+    }
+
+    /**
+     * Attiva o disattiva la simulazione in lockstep: i tiri vengono simulati in gruppi di 64, facendo
+     * avanzare tutti i tavoli di un gruppo di uno step alla volta, e le operazioni sulle palle vengono
+     * eseguite per tutti i tavoli insieme da <code>pKernel</code>, di solito
+     * <code>BatchKernel.getInstance()</code>. Le palle vengono elaborate nello stesso ordine del motore a
+     * step fissi e gli esiti coincidono con quelli di un tiro alla volta, salvo i rari casi in cui la
+     * separazione di un urto porta una palla a toccarne un'altra che <code>TableEngine</code> non aveva
+     * incluso tra le vicine, e che qui viene invece urtata. I tiri di un gruppo con un
+     * numero di palle diverso tra loro vengono simulati uno alla volta.
+     * @param pKernel Le operazioni su molte palle, oppure <code>null</code> per simulare un tiro alla volta
+     * @throws IllegalStateException Se il motore di simulazione non è <code>STEPPING</code>
+     */
+    public void setLockstep(BatchKernel pKernel) {
+        if (pKernel != null && this.mode != TableEngine.Mode.STEPPING) {
+            throw new IllegalStateException("Lockstep simulation requires the STEPPING mode");
+        }
+        this.lockstepKernel = pKernel;
+    }
+
+    /**
+     * Restituisce le operazioni su molte palle utilizzate dalla simulazione in lockstep.
+     * @return Le operazioni su molte palle, oppure <code>null</code> se i tiri vengono simulati uno alla volta
+     */
+    public BatchKernel getLockstep() {
+        return this.lockstepKernel;
+    }
+
+    /**
+     * Restituisce il numero di thread utilizzati dal simulatore.
+     * @return Il numero di thread
+     */
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    /**
+     * Termina i thread del simulatore, che non potrà più essere utilizzato.
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+}
@@ -0,0 +1,286 @@
+package pool;
+
+import java.io.File;
+import java.io.IOException;
+import phisic.*;
+
+/**
+ * La classe <code>BreakBook</code> è un "libro delle aperture": un file binario contenente i migliori tiri
+ * di apertura trovati da <code>BreakBookBuilder</code>, con le statistiche raccolte durante la loro
+ * simulazione e la disposizione delle palle che producono. Il file viene mappato in memoria, per cui
+ * l'apertura è immediata e le consultazioni non richiedono alcuna simulazione; la lettura può avvenire
+ * da più thread contemporaneamente.
+ * <br><br>
+ * Formato del file (big-endian): un'intestazione con {@link #MAGIC}, {@link #VERSION}, il numero di palle
+ * <code>n</code> ed il numero di voci, seguita dalle voci ordinate per punteggio decrescente. Ogni voce
+ * contiene posizione della palla bianca, forza ed angolazione del tiro (<code>double</code>), numero medio
+ * di palle imbucate, frequenza delle entrate in buca della bianca e della palla 8, punteggio
+ * (<code>float</code>) e le coordinate finali delle <code>n</code> palle (<code>float</code>,
+ * <code>NaN</code> per le palle in buca).
+ * @author Oneiros
+ */
+public class BreakBook {
+
+    /** Il numero che identifica i file del libro delle aperture ("8BBK") */
+    public static final int MAGIC = 0x3842424B;
+    /** La versione del formato del file */
+    public static final int VERSION = 1;
+    /** Il file dal quale il gioco carica il libro delle aperture, se esiste */
+    public static String DEFAULT_FILE = "standard.book";
+    private static final int HEADER = 16;
+    private final java.nio.ByteBuffer buffer;
+    private final int balls;
+    private final int count;
+    private final int recordSize;
+
+    /**
+     * Una voce del libro: un tiro di apertura e le sue statistiche.
+     */
+    public static class Entry {
+
+        private final double cueX, cueY;
+        private final double strength, angle;
+        private final float pocketed, scratchRate, eightRate;
+        private final float[] layout;
+
+        /**
+         * Crea ed inizializza una voce.
+         * @param pCueX La coordinata <code>x</code> della palla bianca
+         * @param pCueY La coordinata <code>y</code> della palla bianca
+         * @param pStrength La forza del tiro
+         * @param pAngle L'angolazione del tiro
+         * @param pPocketed Il numero medio di palle imbucate, bianca esclusa
+         * @param pScratchRate La frequenza con la quale la palla bianca cade in buca
+         * @param pEightRate La frequenza con la quale la palla 8 cade in buca
+         * @param pLayout Le coordinate finali delle palle, alternando <code>x</code> e <code>y</code>
+         */
+        Entry(double pCueX, double pCueY, double pStrength, double pAngle, float pPocketed, float pScratchRate,
+                float pEightRate, float[] pLayout) {
+            this.cueX = pCueX;
+            this.cueY = pCueY;
+            this.strength = pStrength;
+            this.angle = pAngle;
+            this.pocketed = pPocketed;
+            this.scratchRate = pScratchRate;
+            this.eightRate = pEightRate;
+            this.layout = pLayout;
+        }
+
+        /**
+         * Restituisce la coordinata <code>x</code> della palla bianca.
+         * @return La coordinata <code>x</code> della palla bianca
+         */
+        public double getCueX() {
+            return this.cueX;
+        }
+
+        /**
+         * Restituisce la coordinata <code>y</code> della palla bianca.
+         * @return La coordinata <code>y</code> della palla bianca
+         */
+        public double getCueY() {
+            return this.cueY;
+        }
+
+        /**
+         * Restituisce la forza del tiro.
+         * @return La forza del tiro
+         */
+        public double getStrength() {
+            return this.strength;
+        }
+
+        /**
+         * Restituisce l'angolazione del tiro.
+         * @return L'angolazione del tiro in radianti
+         */
+        public double getAngle() {
+            return this.angle;
+        }
+
+        /**
+         * Restituisce il numero medio di palle imbucate dal tiro, palla bianca esclusa.
+         * @return Il numero medio di palle imbucate
+         */
+        public float getPocketed() {
+            return this.pocketed;
+        }
+
+        /**
+         * Restituisce la frequenza con la quale la palla bianca cade in buca.
+         * @return La frequenza, tra <code>0</code> e <code>1</code>
+         */
+        public float getScratchRate() {
+            return this.scratchRate;
+        }
+
+        /**
+         * Restituisce la frequenza con la quale la palla 8 cade in buca, perdendo la partita.
+         * @return La frequenza, tra <code>0</code> e <code>1</code>
+         */
+        public float getEightRate() {
+            return this.eightRate;
+        }
+
+        /**
+         * Restituisce il punteggio del tiro: il numero medio di palle imbucate, penalizzato dalle entrate
+         * in buca della palla bianca e della palla 8.
+         * @return Il punteggio del tiro
+         */
+        public float getScore() {
+            return this.pocketed - 2 * this.scratchRate - 8 * this.eightRate;
+        }
+
+        /**
+         * Copia in <code>pState</code> la disposizione finale delle palle prodotta dal tiro senza rumore.
+         * @param pState Lo stato nel quale copiare la disposizione
+         */
+        public void getLayout(BallState pState) {
+            for (int i = 0; i < pState.size(); i++) {
+                pState.vx[i] = 0;
+                pState.vy[i] = 0;
+                if (Float.isNaN(this.layout[2 * i])) {
+                    pState.status[i] = BallState.POCKETED;
+                } else {
+                    pState.status[i] = BallState.IN_PLAY;
+                    pState.x[i] = this.layout[2 * i];
+                    pState.y[i] = this.layout[2 * i + 1];
+                }
+            }
+        }
+    }
+
+    private BreakBook(java.nio.ByteBuffer pBuffer) throws IOException {
+        this.buffer = pBuffer;
+        if (pBuffer.capacity() < HEADER || pBuffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an opening book");
+        }
+        if (pBuffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported opening book version " + pBuffer.getInt(4));
+        }
+        this.balls = pBuffer.getInt(8);
+        this.count = pBuffer.getInt(12);
+        this.recordSize = getRecordSize(this.balls);
+        if (this.balls <= 0 || this.count < 0 || pBuffer.capacity() < HEADER + (long) this.count * this.recordSize) {
+            throw new IOException("Truncated opening book");
+        }
+    }
+
+    /**
+     * Apre il libro delle aperture contenuto nel file <code>pFile</code>, mappandolo in memoria.
+     * @param pFile Il file
+     * @return Il libro delle aperture
+     * @throws IOException Se il file non può essere letto o non è un libro delle aperture valido
+     */
+    public static BreakBook open(File pFile) throws IOException {
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(pFile, "r");
+        try {
+            java.nio.channels.FileChannel channel = file.getChannel();
+            return new BreakBook(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Scrive un libro delle aperture nel file <code>pFile</code>, ordinando le voci per punteggio
+     * decrescente.
+     * @param pFile Il file
+     * @param pBalls Il numero di palle
+     * @param pEntries Le voci del libro
+     * @throws IOException Se il file non può essere scritto
+     */
+    public static void write(File pFile, int pBalls, java.util.List<Entry> pEntries) throws IOException {
+        java.util.List<Entry> entries = new java.util.ArrayList<Entry>(pEntries);
+        java.util.Collections.sort(entries, new java.util.Comparator<Entry>() {
+
+            @Override
+            public int compare(Entry pFirst, Entry pSecond) {
+                return Float.compare(pSecond.getScore(), pFirst.getScore());
+            }
+        });
+        java.io.DataOutputStream out = new java.io.DataOutputStream(
+                new java.io.BufferedOutputStream(new java.io.FileOutputStream(pFile)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(pBalls);
+            out.writeInt(entries.size());
+            for (Entry e : entries) {
+                out.writeDouble(e.cueX);
+                out.writeDouble(e.cueY);
+                out.writeDouble(e.strength);
+                out.writeDouble(e.angle);
+                out.writeFloat(e.pocketed);
+                out.writeFloat(e.scratchRate);
+                out.writeFloat(e.eightRate);
+                out.writeFloat(e.getScore());
+                for (int i = 0; i < 2 * pBalls; i++) {
+                    out.writeFloat(e.layout[i]);
+                }
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Restituisce il numero di palle delle disposizioni contenute nel libro.
+     * @return Il numero di palle
+     */
+    public int getBalls() {
+        return this.balls;
+    }
+
+    /**
+     * Restituisce il numero di voci del libro.
+     * @return Il numero di voci
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * Restituisce la voce <code>pIndex</code>; le voci sono ordinate per punteggio decrescente.
+     * @param pIndex L'indice della voce
+     * @return La voce
+     */
+    public Entry getEntry(int pIndex) {
+        if (pIndex < 0 || pIndex >= this.count) {
+            throw new IndexOutOfBoundsException("Entry " + pIndex + " of " + this.count);
+        }
+        int offset = HEADER + pIndex * this.recordSize;
+        float[] layout = new float[2 * this.balls];
+        for (int i = 0; i < layout.length; i++) {
+            layout[i] = this.buffer.getFloat(offset + 48 + 4 * i);
+        }
+        return new Entry(this.buffer.getDouble(offset), this.buffer.getDouble(offset + 8),
+                this.buffer.getDouble(offset + 16), this.buffer.getDouble(offset + 24),
+                this.buffer.getFloat(offset + 32), this.buffer.getFloat(offset + 36),
+                this.buffer.getFloat(offset + 40), layout);
+    }
+
+    /**
+     * Cerca il miglior tiro di apertura con la palla bianca a distanza non superiore a
+     * <code>pTolerance</code> da <code>(pCueX, pCueY)</code>.
+     * @param pCueX La coordinata <code>x</code> della palla bianca
+     * @param pCueY La coordinata <code>y</code> della palla bianca
+     * @param pTolerance La distanza massima
+     * @return La voce migliore, oppure <code>null</code> se non ce ne sono
+     */
+    public Entry find(double pCueX, double pCueY, double pTolerance) {
+        for (int i = 0; i < this.count; i++) {
+            int offset = HEADER + i * this.recordSize;
+            double dx = this.buffer.getDouble(offset) - pCueX;
+            double dy = this.buffer.getDouble(offset + 8) - pCueY;
+            if (dx * dx + dy * dy <= pTolerance * pTolerance) {
+                return this.getEntry(i);
+            }
+        }
+        return null;
+    }
+
+    private static int getRecordSize(int pBalls) {
+        return 4 * 8 + 4 * 4 + 2 * 4 * pBalls;
+    }
+}
@@ -0,0 +1,160 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>BreakBookBuilder</code> costruisce fuori linea il libro delle aperture
+ * (vedi <code>BreakBook</code>). Per ogni posizione della palla bianca lungo la linea di partenza, ogni
+ * angolazione attorno alla direzione del vertice del triangolo ed ogni forza, il tiro di apertura viene
+ * simulato più volte con <code>BatchSimulator</code>: una volta con i parametri esatti ed altre con un
+ * piccolo rumore gaussiano, in modo da premiare i tiri che restano buoni anche se eseguiti in modo
+ * impreciso. Per ogni posizione vengono conservati i tiri con il punteggio migliore.
+ * <br><br>
+ * Utilizzo: <code>java pool.BreakBookBuilder file [posizioni] [angolazioni] [forze] [campioni] [voci]
+ * [STEPPING|EVENT_DRIVEN]</code>
+ * @author Oneiros
+ */
+public class BreakBookBuilder {
+
+    /** L'ampiezza in radianti dell'intervallo di angolazioni esplorato attorno al vertice del triangolo */
+    public static final double ANGLE_SPREAD = 0.08;
+    /** La forza minima dei tiri di apertura esplorati */
+    public static final double MIN_STRENGTH = 8;
+    /** La deviazione standard del rumore sull'angolazione, in radianti */
+    public static final double ANGLE_NOISE = 0.003;
+    /** La deviazione standard del rumore sulla forza */
+    public static final double STRENGTH_NOISE = 0.2;
+    private final TableGeometry geometry;
+    private final BatchSimulator simulator;
+
+    /**
+     * Crea ed inizializza un costruttore del libro delle aperture che utilizza tutti i processori disponibili.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione, che dovrebbe coincidere con quello del tavolo reale
+     */
+    public BreakBookBuilder(TableGeometry pGeometry, TableEngine.Mode pMode) {
+        this.geometry = pGeometry;
+        this.simulator = new BatchSimulator(pGeometry, pMode);
+    }
+
+    /**
+     * Esplora i tiri di apertura e restituisce i migliori per ogni posizione della palla bianca.
+     * @param pPositions Il numero di posizioni della palla bianca lungo la linea di partenza
+     * @param pAngles Il numero di angolazioni per ogni posizione
+     * @param pStrengths Il numero di forze, tra {@link #MIN_STRENGTH} e <code>ComputerPlayer.MAX_STRENGTH</code>
+     * @param pSamples Il numero di simulazioni per ogni tiro
+     * @param pKeep Il numero di tiri conservati per ogni posizione
+     * @return Le voci del libro
+     */
+    public java.util.List<BreakBook.Entry> build(int pPositions, int pAngles, int pStrengths, int pSamples, int pKeep) {
+        TableGeometry g = this.geometry;
+        BallState rack = new TableEngine(g, TableEngine.BALLS).getState();
+        double top = g.height, bottom = 0;
+        for (int w = 0; w < g.getWallCount(); w++) {
+            if (Math.min(g.wallX1[w], g.wallX2[w]) <= g.rackX[0] && Math.max(g.wallX1[w], g.wallX2[w]) >= g.rackX[0]) {
+                double y = g.wallY1[w];
+                if (y < g.rackY[0]) {
+                    bottom = Math.max(bottom, y);
+                } else {
+                    top = Math.min(top, y);
+                }
+            }
+        }
+        double minY = bottom + Sphere2D.BALL_SIZE / 2 + 1;
+        double maxY = top - Sphere2D.BALL_SIZE / 2 - 1;
+
+        java.util.List<BreakBook.Entry> entries = new java.util.ArrayList<BreakBook.Entry>();
+        for (int p = 0; p < pPositions; p++) {
+            double cueY = pPositions == 1 ? g.rackY[0] : minY + (maxY - minY) * p / (pPositions - 1);
+            BallState start = new BallState(rack.size());
+            rack.copyTo(start);
+            start.y[0] = cueY;
+            double apex = Math.atan2(-(g.rackY[1] - cueY), g.rackX[1] - g.rackX[0]);
+
+            java.util.List<BatchSimulator.Shot> shots = new java.util.ArrayList<BatchSimulator.Shot>();
+            for (int a = 0; a < pAngles; a++) {
+                double angle = apex + (pAngles == 1 ? 0 : ANGLE_SPREAD * (2.0 * a / (pAngles - 1) - 1));
+                for (int s = 0; s < pStrengths; s++) {
+                    double strength = pStrengths == 1 ? ComputerPlayer.MAX_STRENGTH
+                            : MIN_STRENGTH + (ComputerPlayer.MAX_STRENGTH - MIN_STRENGTH) * s / (pStrengths - 1);
+                    for (int k = 0; k < pSamples; k++) {
+                        long key = 2 * (((long) p * pAngles + a) * pStrengths + s) * pSamples + 2 * k;
+                        double noisyAngle = k == 0 ? angle : angle + ANGLE_NOISE * ShotSweep.gaussian(key);
+                        double noisyStrength = k == 0 ? strength
+                                : Math.min(ComputerPlayer.MAX_STRENGTH, strength + STRENGTH_NOISE * ShotSweep.gaussian(key + 1));
+                        shots.add(new BatchSimulator.Shot(start, noisyStrength, noisyAngle));
+                    }
+                }
+            }
+            BatchSimulator.Outcome[] outcomes = this.simulator.simulate(shots);
+
+            java.util.List<BreakBook.Entry> position = new java.util.ArrayList<BreakBook.Entry>();
+            for (int i = 0; i < outcomes.length; i += pSamples) {
+                int pocketed = 0, scratches = 0, eights = 0;
+                for (int k = i; k < i + pSamples; k++) {
+                    pocketed += outcomes[k].pocketed - (outcomes[k].isScratch() ? 1 : 0);
+                    scratches += outcomes[k].isScratch() ? 1 : 0;
+                    eights += outcomes[k].pocket[8] >= 0 ? 1 : 0;
+                }
+                BallState end = outcomes[i].state;
+                float[] layout = new float[2 * end.size()];
+                for (int b = 0; b < end.size(); b++) {
+                    boolean out = end.status[b] == BallState.POCKETED;
+                    layout[2 * b] = out ? Float.NaN : (float) end.x[b];
+                    layout[2 * b + 1] = out ? Float.NaN : (float) end.y[b];
+                }
+                position.add(new BreakBook.Entry(g.rackX[0], cueY, shots.get(i).getStrength(), shots.get(i).getAngle(),
+                        (float) pocketed / pSamples, (float) scratches / pSamples, (float) eights / pSamples, layout));
+            }
+            java.util.Collections.sort(position, new java.util.Comparator<BreakBook.Entry>() {
+
+                @Override
+                public int compare(BreakBook.Entry pFirst, BreakBook.Entry pSecond) {
+                    return Float.compare(pSecond.getScore(), pFirst.getScore());
+                }
+            });
+            entries.addAll(position.subList(0, Math.min(pKeep, position.size())));
+        }
+        return entries;
+    }
+
+    /**
+     * Termina i thread del costruttore.
+     */
+    public void shutdown() {
+        this.simulator.shutdown();
+    }
+
+    /**
+     * Costruisce il libro delle aperture del tavolo standard e lo scrive su file.
+     * @param args Il file da scrivere (default: <code>BreakBook.DEFAULT_FILE</code>), il numero di posizioni
+     *             (default: <code>9</code>), di angolazioni (default: <code>21</code>), di forze (default:
+     *             <code>5</code>), di campioni (default: <code>4</code>) e di voci per posizione (default:
+     *             <code>16</code>), ed il motore di simulazione (default: <code>STEPPING</code>)
+     * @throws java.io.IOException Se il file non può essere scritto
+     */
+    public static void main(String[] args) throws java.io.IOException {
+        java.io.File file = new java.io.File(args.length > 0 ? args[0] : BreakBook.DEFAULT_FILE);
+        int positions = args.length > 1 ? Integer.parseInt(args[1]) : 9;
+        int angles = args.length > 2 ? Integer.parseInt(args[2]) : 21;
+        int strengths = args.length > 3 ? Integer.parseInt(args[3]) : 5;
+        int samples = args.length > 4 ? Integer.parseInt(args[4]) : 4;
+        int keep = args.length > 5 ? Integer.parseInt(args[5]) : 16;
+        TableEngine.Mode mode = args.length > 6 ? TableEngine.Mode.valueOf(args[6]) : TableEngine.Mode.STEPPING;
+
+        long start = System.currentTimeMillis();
+        BreakBookBuilder builder = new BreakBookBuilder(TableGeometry.STANDARD, mode);
+        java.util.List<BreakBook.Entry> entries = builder.build(positions, angles, strengths, samples, keep);
+        builder.shutdown();
+        BreakBook.write(file, TableEngine.BALLS, entries);
+
+        BreakBook book = BreakBook.open(file);
+        BreakBook.Entry best = book.getEntry(0);
+        System.out.printf("%d breaks simulated in %.1f s, %d entries written to %s (%d bytes)%n",
+                positions * angles * strengths * samples, (System.currentTimeMillis() - start) / 1000.0,
+                book.getCount(), file, file.length());
+        System.out.printf("Best break: cue (%.0f, %.0f), strength %.2f, angle %.4f: %.2f balls, %.0f%% scratch, %.0f%% 8-ball%n",
+                best.getCueX(), best.getCueY(), best.getStrength(), best.getAngle(), best.getPocketed(),
+                100 * best.getScratchRate(), 100 * best.getEightRate());
+    }
+}
@@ -0,0 +1,38 @@
+package pool;
+
+/**
+ * L'interfaccia <code>CacheMetrics</code> espone le statistiche di utilizzo di una cache.
+ * @author Oneiros
+ */
+public interface CacheMetrics {
+
+    /**
+     * Restituisce il numero di richieste soddisfatte dalla cache.
+     * @return Il numero di successi
+     */
+    long getHits();
+
+    /**
+     * Restituisce il numero di richieste che non hanno trovato risposta nella cache.
+     * @return Il numero di fallimenti
+     */
+    long getMisses();
+
+    /**
+     * Restituisce il numero di elementi rimossi per fare spazio a quelli nuovi.
+     * @return Il numero di rimozioni
+     */
+    long getEvictions();
+
+    /**
+     * Restituisce il numero di elementi attualmente contenuti nella cache.
+     * @return La dimensione della cache
+     */
+    int getSize();
+
+    /**
+     * Restituisce la frazione di richieste soddisfatte dalla cache.
+     * @return Il rapporto tra successi e richieste totali, <code>0</code> se non ci sono state richieste
+     */
+    double getHitRate();
+}
@@ -0,0 +1,541 @@
+package pool;
+
+/**
+ * La classe <code>ComputerPlayer</code> modella un avversario controllato dal computer che sceglie forza ed
+ * angolazione dei propri tiri tramite una ricerca ad albero Monte Carlo (MCTS). Ogni tiro candidato viene
+ * simulato su un <code>TableEngine</code> privo di interfaccia grafica e giudicato con le regole reali di
+ * <code>GameManager</code>; dopo il tiro la ricerca prosegue con i tiri successivi dello stesso giocatore o
+ * dell'avversario, fino ad una profondità massima.
+ * <br><br>
+ * La ricerca è parallelizzata alla radice: ogni thread costruisce un proprio albero a partire dalla stessa
+ * situazione e dallo stesso elenco di tiri iniziali, e le statistiche dei tiri iniziali vengono sommate.
+ * La ricerca è "anytime": prosegue fino allo scadere del tempo a disposizione, ma in qualsiasi momento
+ * {@link #getBestShot()} restituisce il miglior tiro trovato fino a quel momento.
+ * @author Oneiros
+ */
+public class ComputerPlayer {
+
+    /** Il tempo di riflessione predefinito per ogni tiro, in millisecondi */
+    public static final long DEFAULT_BUDGET = 200;
+    /** La forza massima di un tiro, pari a quella ottenibile caricando completamente la stecca */
+    public static final double MAX_STRENGTH = Cue.MAX_DISTANCE_FROM_BALL / 10 - 2;
+    /** La forza minima di un tiro */
+    public static final double MIN_STRENGTH = 2;
+    /** Il numero massimo di tiri consecutivi esplorati dalla ricerca */
+    public static final int MAX_DEPTH = 3;
+    private static final double EXPLORATION = 0.7;
+    private static final int ANGLES = 48;
+    private static final double[] STRENGTHS = {4, 7, 11, 16};
+    private final TableGeometry geometry;
+    private final TableSettings settings;
+    private final Worker[] workers;
+    private final java.util.Random random = new java.util.Random();
+    private double[] rootStrengths;
+    private double[] rootAngles;
+    private int[] rootVisits;
+    private double[] rootRewards;
+    private volatile boolean thinking;
+    private BreakBook breakBook;
+    private EndgameSolver endgameSolver;
+
+    /**
+     * Un tiro scelto dal computer.
+     */
+    public static class Shot {
+
+        private final double strength;
+        private final double angle;
+        private final int visits;
+        private final double value;
+
+        private Shot(double pStrength, double pAngle, int pVisits, double pValue) {
+            this.strength = pStrength;
+            this.angle = pAngle;
+            this.visits = pVisits;
+            this.value = pValue;
+        }
+
+        /**
+         * Restituisce la forza del tiro.
+         * @return La forza con la quale colpire la palla bianca
+         */
+        public double getStrength() {
+            return this.strength;
+        }
+
+        /**
+         * Restituisce l'angolazione del tiro.
+         * @return L'angolazione in radianti con la quale colpire la palla bianca
+         */
+        public double getAngle() {
+            return this.angle;
+        }
+
+        /**
+         * Restituisce il numero di simulazioni che hanno valutato il tiro.
+         * @return Il numero di simulazioni
+         */
+        public int getVisits() {
+            return this.visits;
+        }
+
+        /**
+         * Restituisce il valore stimato del tiro: la probabilità di vittoria del computer, tra <code>0</code>
+         * e <code>1</code>.
+         * @return Il valore stimato del tiro
+         */
+        public double getValue() {
+            return this.value;
+        }
+    }
+
+    /**
+     * Un nodo dell'albero di ricerca: una situazione di gioco a tavolo fermo, raggiunta eseguendo il tiro
+     * <code>(strength, angle)</code> dalla situazione del nodo padre.
+     */
+    private static class Node {
+
+        private final double[] data;
+        private final double strength;
+        private final double angle;
+        private final int action;
+        private final int depth;
+        private final boolean computerToMove;
+        private final boolean terminal;
+        private final double value;
+        private final java.util.List<Node> children = new java.util.ArrayList<Node>();
+        private int visits;
+        private double reward;
+
+        private Node(double[] pData, double pStrength, double pAngle, int pAction, int pDepth,
+                boolean pComputerToMove, boolean pTerminal, double pValue) {
+            this.data = pData;
+            this.strength = pStrength;
+            this.angle = pAngle;
+            this.action = pAction;
+            this.depth = pDepth;
+            this.computerToMove = pComputerToMove;
+            this.terminal = pTerminal;
+            this.value = pValue;
+        }
+    }
+
+    /**
+     * Un thread di ricerca, con il proprio tavolo, la propria partita ed il proprio albero.
+     */
+    private class Worker extends TableEngine.ListenerAdapter implements Runnable {
+
+        private final TableEngine engine;
+        private final GameManager game;
+        private final java.util.Random random;
+        private int computer;
+        private int[] order;
+        private Node root;
+        private long deadline;
+
+        private Worker(TableGeometry pGeometry, int pBalls, long pSeed) {
+            this.engine = new TableEngine(pGeometry, pBalls);
+            settings.configure(this.engine);
+            this.engine.addListener(this);
+            this.game = new GameManager("A", "B", 1);
+            this.random = new java.util.Random(pSeed);
+        }
+
+        private void prepare(double[] pRoot, int pComputer, long pDeadline) {
+            this.computer = pComputer;
+            this.deadline = pDeadline;
+            this.root = new Node(pRoot, 0, 0, -1, 0, true, false, 0.5);
+            this.order = new int[rootStrengths.length];
+            for (int i = 0; i < this.order.length; i++) {
+                int j = this.random.nextInt(i + 1);
+                this.order[i] = this.order[j];
+                this.order[j] = i;
+            }
+        }
+
+        @Override
+        public void run() {
+            while (thinking && System.currentTimeMillis() < this.deadline) {
+                this.iterate();
+            }
+        }
+
+        /**
+         * Esegue un'iterazione della ricerca: selezione, espansione, valutazione e propagazione.
+         */
+        private void iterate() {
+            java.util.List<Node> path = new java.util.ArrayList<Node>();
+            Node node = this.root;
+            path.add(node);
+            double reward;
+            while (true) {
+                if (node.terminal || node.depth >= MAX_DEPTH) {
+                    reward = node.value;
+                    break;
+                }
+                if (node.children.size() < this.getWidth(node)) {
+                    node = this.expand(node);
+                    path.add(node);
+                    reward = node.value;
+                    break;
+                }
+                node = this.select(node);
+                path.add(node);
+            }
+            for (Node n : path) {
+                n.visits++;
+                n.reward += reward;
+            }
+            recordRoot(path.get(1).action, reward);
+        }
+
+        /**
+         * Restituisce il numero di figli che il nodo può avere in base alle visite ricevute: la radice
+         * considera tutti i tiri iniziali, gli altri nodi si allargano progressivamente.
+         */
+        private int getWidth(Node pNode) {
+            if (pNode == this.root) {
+                return this.order.length;
+            }
+            return 1 + (int) (2 * Math.sqrt(pNode.visits));
+        }
+
+        private Node select(Node pNode) {
+            Node best = null;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            double log = Math.log(pNode.visits + 1);
+            for (Node child : pNode.children) {
+                double mean = child.reward / child.visits;
+                if (!pNode.computerToMove) {
+                    mean = 1 - mean;
+                }
+                double score = mean + EXPLORATION * Math.sqrt(log / child.visits);
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = child;
+                }
+            }
+            return best;
+        }
+
+        private Node expand(Node pNode) {
+            double strength, angle;
+            int action = -1;
+            if (pNode == this.root) {
+                action = this.order[pNode.children.size()];
+                strength = rootStrengths[action];
+                angle = rootAngles[action];
+            } else {
+                strength = MIN_STRENGTH + (MAX_STRENGTH - MIN_STRENGTH) * this.random.nextDouble();
+                angle = 2 * Math.PI * this.random.nextDouble();
+            }
+            Node child = this.play(pNode, strength, angle, action);
+            pNode.children.add(child);
+            return child;
+        }
+
+        /**
+         * Simula il tiro <code>(pStrength, pAngle)</code> a partire dalla situazione del nodo
+         * <code>pNode</code>, applicando le regole di fine turno come <code>EightBallPoolManager</code>.
+         */
+        private Node play(Node pNode, double pStrength, double pAngle, int pAction) {
+            int split = this.engine.getSnapshotLength();
+            this.engine.restore(pNode.data, 0);
+            this.game.restore(pNode.data, split);
+            this.engine.strike(pStrength, pAngle);
+            this.engine.simulate();
+
+            double[] data = new double[pNode.data.length];
+            GameManager.Shooter computer = this.computer == 1 ? this.game.shooter1 : this.game.shooter2;
+            boolean computerShot = this.game.currentShooter == computer;
+            GameManager.Result result = endTurn(this.engine, this.game);
+            this.engine.snapshot(data, 0);
+            this.game.snapshot(data, split);
+            if (result == GameManager.Result.WON || result == GameManager.Result.LOST) {
+                boolean computerWon = (result == GameManager.Result.WON) == computerShot;
+                return new Node(data, pStrength, pAngle, pAction, pNode.depth + 1, false, true, computerWon ? 1 : 0);
+            }
+            return new Node(data, pStrength, pAngle, pAction, pNode.depth + 1, this.getCurrent() == this.computer,
+                    false, evaluate(this.game, computer));
+        }
+
+        private int getCurrent() {
+            return this.game.currentShooter == this.game.shooter1 ? 1 : 2;
+        }
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+            this.game.pocket(pBall, pWith, pPocket);
+        }
+    }
+
+    /**
+     * Crea ed inizializza un giocatore che utilizza tutti i processori disponibili.
+     * @param pGeometry La geometria del tavolo
+     * @param pSettings Le impostazioni del motore fisico, che dovrebbero coincidere con quelle del tavolo reale
+     */
+    public ComputerPlayer(TableGeometry pGeometry, TableSettings pSettings) {
+        this(pGeometry, pSettings, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea ed inizializza un giocatore che utilizza tutti i processori disponibili e le impostazioni
+     * predefinite con il motore di simulazione <code>pMode</code>.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione, che dovrebbe coincidere con quello del tavolo reale
+     */
+    public ComputerPlayer(TableGeometry pGeometry, TableEngine.Mode pMode) {
+        this(pGeometry, pMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea ed inizializza un giocatore che utilizza <code>pThreads</code> thread di ricerca e le impostazioni
+     * predefinite con il motore di simulazione <code>pMode</code>.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione, che dovrebbe coincidere con quello del tavolo reale
+     * @param pThreads Il numero di thread di ricerca
+     */
+    public ComputerPlayer(TableGeometry pGeometry, TableEngine.Mode pMode, int pThreads) {
+        this(pGeometry, getSettings(pMode), pThreads);
+    }
+
+    /**
+     * Crea ed inizializza un giocatore che utilizza <code>pThreads</code> thread di ricerca. Le impostazioni
+     * vengono copiate, per cui modificarle in seguito non ha effetto sul giocatore.
+     * @param pGeometry La geometria del tavolo
+     * @param pSettings Le impostazioni del motore fisico, che dovrebbero coincidere con quelle del tavolo reale
+     * @param pThreads Il numero di thread di ricerca
+     */
+    public ComputerPlayer(TableGeometry pGeometry, TableSettings pSettings, int pThreads) {
+        this.geometry = pGeometry;
+        this.settings = new TableSettings(pSettings);
+        this.workers = new Worker[pThreads];
+        for (int i = 0; i < pThreads; i++) {
+            this.workers[i] = new Worker(pGeometry, TableEngine.BALLS, this.random.nextLong());
+        }
+    }
+
+    /**
+     * Imposta il libro delle aperture consultato per il tiro di apertura al posto della ricerca.
+     * @param pBreakBook Il libro delle aperture, oppure <code>null</code>
+     */
+    public void setBreakBook(BreakBook pBreakBook) {
+        this.breakBook = pBreakBook;
+    }
+
+    /**
+     * Imposta la tabella dei finali: nelle situazioni che contiene il tiro viene scelto con una ricerca ad
+     * un solo livello che valuta con la tabella le situazioni raggiunte, al posto della ricerca Monte Carlo.
+     * @param pTablebase La tabella dei finali, oppure <code>null</code>
+     */
+    public void setTablebase(Tablebase pTablebase) {
+        this.endgameSolver = pTablebase == null ? null : new EndgameSolver(this.geometry, this.settings, pTablebase);
+    }
+
+    /**
+     * Cerca il miglior tiro per il giocatore di turno di <code>pGame</code> sul tavolo <code>pEngine</code>,
+     * che deve essere fermo e con il turno già iniziato. Il metodo ritorna allo scadere del tempo
+     * <code>pBudget</code> oppure dopo una chiamata a {@link #stop()}; né il tavolo né la partita vengono
+     * modificati. Se il tiro è quello di apertura ed il libro delle aperture contiene la posizione della
+     * palla bianca, il tiro viene letto dal libro senza alcuna ricerca; se la situazione è contenuta nella
+     * tabella dei finali, il tiro viene scelto con il suo aiuto.
+     * @param pEngine Il tavolo
+     * @param pGame La partita
+     * @param pBudget Il tempo a disposizione in millisecondi
+     * @return Il miglior tiro trovato
+     */
+    public Shot think(TableEngine pEngine, GameManager pGame, long pBudget) {
+        TableSnapshot snapshot = new TableSnapshot(pEngine, pGame);
+        snapshot.save();
+        if (this.breakBook != null && isBreak(snapshot.getData(), pEngine.getSnapshotLength())) {
+            BreakBook.Entry entry = this.breakBook.find(pEngine.getX(0), pEngine.getY(0), 1);
+            if (entry != null) {
+                return new Shot(entry.getStrength(), entry.getAngle(), 0, 0.5);
+            }
+        }
+        EndgameSolver solver = this.endgameSolver;
+        if (solver != null && solver.covers(pEngine.getState(), pGame) && solver.solve(snapshot.getData())) {
+            return new Shot(solver.getStrength(), solver.getAngle(), 0, solver.getValue());
+        }
+        int computer = pGame.currentShooter == pGame.shooter1 ? 1 : 2;
+        long deadline = System.currentTimeMillis() + pBudget;
+        synchronized (this) {
+            int actions = ANGLES * STRENGTHS.length;
+            this.rootStrengths = new double[actions];
+            this.rootAngles = new double[actions];
+            this.rootVisits = new int[actions];
+            this.rootRewards = new double[actions];
+            double offset = this.random.nextDouble() * 2 * Math.PI / ANGLES;
+            for (int i = 0; i < actions; i++) {
+                this.rootStrengths[i] = STRENGTHS[i % STRENGTHS.length];
+                this.rootAngles[i] = offset + 2 * Math.PI * (i / STRENGTHS.length) / ANGLES;
+            }
+        }
+        this.thinking = true;
+        Thread[] threads = new Thread[this.workers.length];
+        for (int i = 0; i < threads.length; i++) {
+            this.workers[i].prepare(snapshot.getData(), computer, deadline);
+            threads[i] = new Thread(this.workers[i], "ComputerPlayer-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        for (Thread t : threads) {
+            try {
+                t.join();
+            } catch (InterruptedException ex) {
+                this.stop();
+            }
+        }
+        this.thinking = false;
+        return this.getBestShot();
+    }
+
+    /**
+     * Interrompe la ricerca in corso, che restituirà il miglior tiro trovato fino a quel momento.
+     */
+    public void stop() {
+        this.thinking = false;
+    }
+
+    /**
+     * Restituisce il miglior tiro trovato fino a questo momento dall'ultima ricerca: quello valutato dal
+     * maggior numero di simulazioni, sommate su tutti i thread.
+     * @return Il miglior tiro, oppure <code>null</code> se non è stata ancora eseguita alcuna ricerca
+     */
+    public synchronized Shot getBestShot() {
+        if (this.rootVisits == null) {
+            return null;
+        }
+        int best = 0;
+        for (int i = 1; i < this.rootVisits.length; i++) {
+            if (this.rootVisits[i] > this.rootVisits[best] || (this.rootVisits[i] == this.rootVisits[best]
+                    && this.rootRewards[i] > this.rootRewards[best])) {
+                best = i;
+            }
+        }
+        int visits = this.rootVisits[best];
+        return new Shot(this.rootStrengths[best], this.rootAngles[best], visits,
+                visits == 0 ? 0.5 : this.rootRewards[best] / visits);
+    }
+
+    /**
+     * Restituisce le impostazioni predefinite con il motore di simulazione <code>pMode</code>.
+     */
+    static TableSettings getSettings(TableEngine.Mode pMode) {
+        TableSettings settings = new TableSettings();
+        settings.setMode(pMode);
+        return settings;
+    }
+
+    /**
+     * Determina se l'istantanea <code>pData</code> rappresenta il tiro di apertura: tutte le palle in gioco
+     * e primo tiro della partita.
+     */
+    private static boolean isBreak(double[] pData, int pSplit) {
+        int balls = (pSplit - 1) / 5;
+        for (int i = 0; i < balls; i++) {
+            if (pData[4 * balls + i] != phisic.BallState.IN_PLAY) {
+                return false;
+            }
+        }
+        return pData[pSplit + GameManager.SNAPSHOT_BREAK] != 0;
+    }
+
+    private synchronized void recordRoot(int pAction, double pReward) {
+        this.rootVisits[pAction]++;
+        this.rootRewards[pAction] += pReward;
+    }
+
+    /**
+     * Conclude il turno appena giocato su <code>pEngine</code> applicando le stesse regole di
+     * <code>EightBallPoolManager</code>: se la palla bianca è caduta in buca viene rimessa in gioco con
+     * {@link #placeCueBall(TableEngine)}, se necessario la buca per la palla 8 viene scelta con
+     * {@link #choosePocket(TableEngine)}, e infine inizia il turno successivo. Se la partita è finita il
+     * turno resta aperto.
+     * @param pEngine Il tavolo, fermo
+     * @param pGame La partita, con il turno in corso
+     * @return Il risultato del turno concluso
+     */
+    static GameManager.Result endTurn(TableEngine pEngine, GameManager pGame) {
+        GameManager.Result result = pGame.getTurnResult();
+        if (result == GameManager.Result.WON || result == GameManager.Result.LOST) {
+            return result;
+        }
+        if (result == GameManager.Result.WHITE_IN_POCKET) {
+            pGame.whiteBallRepositionated();
+            placeCueBall(pEngine);
+        }
+        pGame.turnOver();
+        if (pGame.playerHaveToChoosePocket()) {
+            pGame.setDesignatedPocket(choosePocket(pEngine));
+        }
+        pGame.setNewTurn();
+        return result;
+    }
+
+    /**
+     * Stima la probabilità di vittoria del giocatore <code>pShooter</code> in una situazione non terminale,
+     * a partire dalla differenza di punti e dal giocatore di turno.
+     * @param pGame La partita
+     * @param pShooter Il giocatore
+     * @return La probabilità di vittoria stimata, tra <code>0</code> e <code>1</code>
+     */
+    static double evaluate(GameManager pGame, GameManager.Shooter pShooter) {
+        GameManager.Shooter other = pShooter == pGame.shooter1 ? pGame.shooter2 : pGame.shooter1;
+        double value = 0.5 + 0.05 * (pShooter.getPoints() - other.getPoints())
+                + (pGame.currentShooter == pShooter ? 0.1 : -0.1);
+        return Math.max(0, Math.min(1, value));
+    }
+
+    /**
+     * Sceglie la buca nella quale imbucare la palla 8: quella più vicina alla palla stessa.
+     * @param pEngine Il tavolo
+     * @return L'indice della buca
+     */
+    public static int choosePocket(TableEngine pEngine) {
+        TableGeometry g = pEngine.getGeometry();
+        int best = 0;
+        double min = Double.POSITIVE_INFINITY;
+        for (int p = 0; p < g.getPocketCount(); p++) {
+            double dx = g.pocketX[p] - pEngine.getX(8);
+            double dy = g.pocketY[p] - pEngine.getY(8);
+            if (dx * dx + dy * dy < min) {
+                min = dx * dx + dy * dy;
+                best = p;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Rimette in gioco la palla bianca dopo che è caduta in buca: nella posizione di partenza, oppure nella
+     * posizione libera più vicina ad essa lungo la stessa colonna.
+     * @param pEngine Il tavolo
+     */
+    public static void placeCueBall(TableEngine pEngine) {
+        TableGeometry g = pEngine.getGeometry();
+        double x = g.rackX[0];
+        double y = g.rackY[0];
+        for (int k = 0; k < g.height / phisic.Sphere2D.BALL_SIZE; k++) {
+            double candidate = y + ((k % 2 == 0) ? 1 : -1) * ((k + 1) / 2) * phisic.Sphere2D.BALL_SIZE;
+            if (isFree(pEngine, x, candidate)) {
+                y = candidate;
+                break;
+            }
+        }
+        pEngine.setBallLocation(0, x, y);
+    }
+
+    private static boolean isFree(TableEngine pEngine, double pX, double pY) {
+        for (int i = 1; i < pEngine.getState().size(); i++) {
+            if (!pEngine.isPocketed(i)) {
+                double dx = pEngine.getX(i) - pX;
+                double dy = pEngine.getY(i) - pY;
+                if (dx * dx + dy * dy < phisic.Sphere2D.BALL_SIZE * phisic.Sphere2D.BALL_SIZE) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+package pool;
+
+import phisic.BallState;
+
+/**
+ * La classe <code>EndgameSolver</code> cerca il miglior tiro in un finale di partita con una ricerca ad un
+ * solo livello guidata dalla tabella dei finali: i tiri diretti di <code>ShotGenerator</code> vengono
+ * simulati con alcune forze diverse, e la situazione raggiunta da ogni tiro viene valutata con le regole
+ * di <code>GameManager</code>. Se il giocatore mantiene il turno, il valore della nuova situazione viene
+ * letto dalla tabella dei finali; se il turno passa all'avversario, vale {@link #TURN_LOST_VALUE} oppure
+ * {@link #SCRATCH_VALUE}.
+ * <br><br>
+ * Viene utilizzata sia da <code>TablebaseGenerator</code>, per calcolare i record della tabella a partire
+ * da quelli con una palla in meno, sia da <code>ComputerPlayer</code> nelle situazioni reali. Un'istanza
+ * non può essere utilizzata da più thread contemporaneamente.
+ * @author Oneiros
+ */
+class EndgameSolver extends TableEngine.ListenerAdapter {
+
+    /** Il valore stimato di una situazione nella quale il turno è passato all'avversario */
+    static final double TURN_LOST_VALUE = 0.3;
+    /** Il valore stimato di una situazione nella quale l'avversario riposiziona la palla bianca */
+    static final double SCRATCH_VALUE = 0.2;
+    /** I fattori per i quali viene moltiplicata la forza proposta da <code>ShotGenerator</code> */
+    private static final double[] STRENGTH_FACTORS = {1, 1.4, 2};
+    private final Tablebase tablebase;
+    private final TableEngine engine;
+    private final GameManager game;
+    private final ShotGenerator generator;
+    private int pocketed;
+    private double value;
+    private double strength;
+    private double angle;
+
+    /**
+     * Crea ed inizializza un risolutore.
+     * @param pGeometry La geometria del tavolo
+     * @param pSettings Le impostazioni del motore fisico
+     * @param pTablebase La tabella dei finali con la quale valutare le situazioni raggiunte
+     */
+    EndgameSolver(TableGeometry pGeometry, TableSettings pSettings, Tablebase pTablebase) {
+        this.tablebase = pTablebase;
+        this.engine = new TableEngine(pGeometry, TableEngine.BALLS);
+        pSettings.configure(this.engine);
+        this.engine.addListener(this);
+        this.game = new GameManager("A", "B", 1);
+        this.generator = new ShotGenerator(pGeometry, TableEngine.BALLS);
+    }
+
+    /**
+     * Cerca il miglior tiro a partire dall'istantanea <code>pData</code> di tavolo e partita, salvata con
+     * <code>TableSnapshot</code> a turno iniziato. Il risultato si legge con {@link #getValue()},
+     * {@link #getStrength()} e {@link #getAngle()}.
+     * @param pData L'istantanea
+     * @return <code>true</code> se è stato trovato un tiro diretto che vale più di {@link #TURN_LOST_VALUE};<br>
+     *         <code>false</code> altrimenti: in tal caso il valore è {@link #TURN_LOST_VALUE} ed il tiro non
+     *         è definito.
+     */
+    boolean solve(double[] pData) {
+        int split = this.engine.getSnapshotLength();
+        this.engine.restore(pData, 0);
+        this.game.restore(pData, split);
+        java.util.List<ShotGenerator.Candidate> candidates = this.generator.generate(this.engine, this.game);
+        this.value = TURN_LOST_VALUE;
+        this.strength = Double.NaN;
+        this.angle = Double.NaN;
+        for (ShotGenerator.Candidate c : candidates) {
+            for (double factor : STRENGTH_FACTORS) {
+                double s = Math.min(ComputerPlayer.MAX_STRENGTH, c.getStrength() * factor);
+                this.engine.restore(pData, 0);
+                this.game.restore(pData, split);
+                double v = this.play(s, c.getAngle());
+                if (v > this.value) {
+                    this.value = v;
+                    this.strength = s;
+                    this.angle = c.getAngle();
+                }
+                if (this.value == 1) {
+                    return true;
+                }
+            }
+        }
+        return !Double.isNaN(this.strength);
+    }
+
+    /**
+     * Determina se la situazione di gioco è contenuta nella tabella dei finali.
+     * @param pState Lo stato delle palle
+     * @param pGame La partita
+     * @return <code>true</code> se la tabella contiene la situazione;<br>
+     *         <code>false</code> altrimenti.
+     */
+    boolean covers(BallState pState, GameManager pGame) {
+        return this.tablebase != null && this.tablebase.getRecord(pState, pGame) >= 0;
+    }
+
+    /**
+     * Esegue il tiro e restituisce il valore della situazione raggiunta per il giocatore che lo ha eseguito.
+     */
+    private double play(double pStrength, double pAngle) {
+        GameManager.Shooter shooter = this.game.currentShooter;
+        this.pocketed = 0;
+        this.engine.strike(pStrength, pAngle);
+        this.engine.simulate();
+        GameManager.Result result = this.game.getTurnResult();
+        if (result == GameManager.Result.WON) {
+            return 1;
+        } else if (result == GameManager.Result.LOST) {
+            return 0;
+        } else if (result == GameManager.Result.WHITE_IN_POCKET) {
+            return SCRATCH_VALUE;
+        } else if (result == GameManager.Result.TURN_OVER || this.pocketed == 0) {
+            return TURN_LOST_VALUE;
+        }
+        ComputerPlayer.endTurn(this.engine, this.game);
+        double v = this.tablebase == null ? Double.NaN : this.tablebase.getValue(this.engine.getState(), this.game);
+        return Double.isNaN(v) ? ComputerPlayer.evaluate(this.game, shooter) : v;
+    }
+
+    double getValue() {
+        return this.value;
+    }
+
+    double getStrength() {
+        return this.strength;
+    }
+
+    double getAngle() {
+        return this.angle;
+    }
+
+    @Override
+    public void ballPocketed(int pBall, int pWith, int pPocket) {
+        this.game.pocket(pBall, pWith, pPocket);
+        this.pocketed++;
+    }
+}
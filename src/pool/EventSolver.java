@@ -0,0 +1,275 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>EventSolver</code> simula il movimento delle palle di un <code>TableEngine</code> saltando
+ * direttamente da un evento al successivo anziché campionare le posizioni ad ogni "step".
+ * <br><br>
+ * Tra due eventi ogni palla segue la traiettoria chiusa implicita in <code>Sphere2D.move</code>: dopo un
+ * tempo <code>t</code> (misurato in "step") la velocità vale <code>v * r^t</code>, con
+ * <code>r = 1 - FRICTION</code>, e lo spostamento vale <code>v * S(t)</code>, con
+ * <code>S(t) = (1 - r^t) / (1 - r)</code>. Poiché tutte le palle condividono la stessa funzione
+ * <code>S</code>, gli istanti di contatto tra palle, sponde e buche si ottengono risolvendo equazioni di
+ * secondo grado in <code>S</code>. Gli eventi previsti sono mantenuti in una coda di priorità ordinata
+ * per istante; un evento viene scartato se una delle palle coinvolte ha cambiato traiettoria dopo la sua
+ * previsione.
+ * @author Oneiros
+ */
+class EventSolver {
+
+    private static final int STOP = 0;
+    private static final int BALL = 1;
+    private static final int CUSHION = 2;
+    private static final int POCKET = 3;
+    private static final double RATIO = 1 - PoolTable.FRICTION;
+    private static final double LOG_RATIO = Math.log(RATIO);
+    private static final double MIN_SPEED = PoolTable.FRICTION * 10;
+    private final TableEngine engine;
+    private final BallState state;
+    private final TableGeometry geometry;
+    private final int[] counts;
+    private final java.util.PriorityQueue<Event> queue;
+    private double time;
+    private boolean valid;
+
+    /**
+     * Un evento previsto: l'arresto di una palla, o il suo contatto con un'altra palla, con una sponda
+     * o con una buca.
+     */
+    private static class Event implements Comparable<Event> {
+
+        private final double time;
+        private final int type;
+        private final int ball;
+        private final int other;
+        private final int ballCount;
+        private final int otherCount;
+
+        private Event(double pTime, int pType, int pBall, int pOther, int pBallCount, int pOtherCount) {
+            this.time = pTime;
+            this.type = pType;
+            this.ball = pBall;
+            this.other = pOther;
+            this.ballCount = pBallCount;
+            this.otherCount = pOtherCount;
+        }
+
+        @Override
+        public int compareTo(Event pEvent) {
+            return Double.compare(this.time, pEvent.time);
+        }
+    }
+
+    /**
+     * Crea ed inizializza un risolutore ad eventi per il tavolo <code>pEngine</code>.
+     * @param pEngine Il tavolo da simulare
+     */
+    EventSolver(TableEngine pEngine) {
+        this.engine = pEngine;
+        this.state = pEngine.state;
+        this.geometry = pEngine.geometry;
+        this.counts = new int[pEngine.state.size()];
+        this.queue = new java.util.PriorityQueue<Event>();
+        this.valid = false;
+    }
+
+    /**
+     * Segnala che lo stato del tavolo è stato modificato dall'esterno: gli eventi previsti verranno
+     * ricalcolati alla prossima simulazione.
+     */
+    void invalidate() {
+        this.valid = false;
+    }
+
+    /**
+     * Fa avanzare la simulazione di <code>pDuration</code> "step", gestendo tutti gli eventi che avvengono
+     * nel frattempo.
+     * @param pDuration La durata da simulare
+     * @return <code>true</code> se al termine ci sono ancora palle in movimento;<br>
+     *         <code>false</code> altrimenti.
+     */
+    boolean advance(double pDuration) {
+        if (!this.valid) {
+            this.initialize();
+        }
+        double end = this.time + pDuration;
+        this.processUntil(end);
+        this.drift(end - this.time);
+        this.time = end;
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            this.engine.fireBallMoved(i);
+        }
+        return this.engine.isMoving();
+    }
+
+    /**
+     * Simula il tiro in corso fino a quando tutte le palle si sono fermate.
+     * @return La durata del tiro espressa in "step"
+     */
+    double simulate() {
+        if (!this.valid) {
+            this.initialize();
+        }
+        double start = this.time;
+        this.processUntil(Double.POSITIVE_INFINITY);
+        for (int i = 0; i < this.counts.length; i++) {
+            this.engine.fireBallMoved(i);
+        }
+        return this.time - start;
+    }
+
+    private void initialize() {
+        this.queue.clear();
+        this.time = 0;
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            this.predict(i);
+        }
+        this.valid = true;
+    }
+
+    private void processUntil(double pEnd) {
+        while (!this.queue.isEmpty() && this.queue.peek().time <= pEnd) {
+            Event e = this.queue.poll();
+            if (e.ballCount != this.counts[e.ball] || (e.type == BALL && e.otherCount != this.counts[e.other])) {
+                continue;
+            }
+            this.drift(e.time - this.time);
+            this.time = e.time;
+            this.handle(e);
+        }
+    }
+
+    private void handle(Event pEvent) {
+        int i = pEvent.ball;
+        switch (pEvent.type) {
+            case STOP:
+                this.state.stop(i);
+                this.engine.updateMotion(i);
+                this.counts[i]++;
+                this.predict(i);
+                this.engine.fireBallMoved(i);
+                break;
+            case BALL:
+                int j = pEvent.other;
+                this.engine.touched(i, j);
+                double hitStrenght = this.state.getSpeed(j);
+                this.state.collide(i, j);
+                this.engine.updateMotion(i);
+                this.engine.updateMotion(j);
+                this.engine.updateHash(i);
+                this.engine.updateHash(j);
+                hitStrenght = Math.abs(hitStrenght - this.state.getSpeed(i));
+                this.counts[i]++;
+                this.counts[j]++;
+                this.predict(i);
+                this.predict(j);
+                this.engine.fireBallsCollided(i, j, hitStrenght);
+                break;
+            case CUSHION:
+                this.geometry.walls[pEvent.other].bounce(this.state, i);
+                this.counts[i]++;
+                this.predict(i);
+                this.engine.fireCushionHit(i);
+                break;
+            default:
+                this.counts[i]++;
+                this.engine.pocket(i, pEvent.other);
+        }
+    }
+
+    /**
+     * Sposta tutte le palle in movimento lungo le loro traiettorie per un tempo <code>pDuration</code>.
+     */
+    private void drift(double pDuration) {
+        if (pDuration <= 0) {
+            return;
+        }
+        double decay = Math.pow(RATIO, pDuration);
+        double s = (1 - decay) / (1 - RATIO);
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            this.state.x[i] += this.state.vx[i] * s;
+            this.state.y[i] -= this.state.vy[i] * s;
+            this.state.vx[i] *= decay;
+            this.state.vy[i] *= decay;
+            this.engine.updateHash(i);
+        }
+    }
+
+    /**
+     * Prevede tutti gli eventi che coinvolgono la palla <code>pBall</code> a partire dall'istante attuale.
+     */
+    private void predict(int pBall) {
+        if (this.state.status[pBall] == BallState.POCKETED) {
+            return;
+        }
+        double limit = this.getTravel(pBall);
+        if (this.isMoving(pBall)) {
+            this.schedule(this.getStopTime(pBall), STOP, pBall, -1);
+        }
+        for (int j = 0; j < this.counts.length; j++) {
+            if (j != pBall && this.state.status[j] != BallState.POCKETED && (this.isMoving(pBall) || this.isMoving(j))) {
+                double s = Wall.circleImpact(this.state.x[pBall] - this.state.x[j], this.state.y[pBall] - this.state.y[j],
+                        this.state.vx[pBall] - this.state.vx[j], this.state.vy[j] - this.state.vy[pBall], Sphere2D.BALL_SIZE);
+                if (s <= Math.min(limit, this.getTravel(j))) {
+                    this.schedule(this.toTime(s), BALL, pBall, j);
+                }
+            }
+        }
+        if (!this.isMoving(pBall)) {
+            return;
+        }
+        double x = this.state.x[pBall];
+        double y = this.state.y[pBall];
+        double wx = this.state.vx[pBall];
+        double wy = -this.state.vy[pBall];
+        for (int w = 0; w < this.geometry.walls.length; w++) {
+            double s = this.geometry.walls[w].getImpact(x, y, wx, wy, limit);
+            if (s != Double.POSITIVE_INFINITY) {
+                this.schedule(this.toTime(s), CUSHION, pBall, w);
+            }
+        }
+        for (int p = 0; p < this.geometry.pocketX.length; p++) {
+            double s = Wall.circleImpact(x - this.geometry.pocketX[p], y - this.geometry.pocketY[p], wx, wy,
+                    Sphere2D.BALL_SIZE / 2);
+            if (s <= limit) {
+                this.schedule(this.toTime(s), POCKET, pBall, p);
+            }
+        }
+    }
+
+    private void schedule(double pDelay, int pType, int pBall, int pOther) {
+        int otherCount = pType == BALL ? this.counts[pOther] : 0;
+        this.queue.add(new Event(this.time + pDelay, pType, pBall, pOther, this.counts[pBall], otherCount));
+    }
+
+    private boolean isMoving(int pBall) {
+        return this.state.status[pBall] != BallState.POCKETED && this.state.hasSpeed(pBall);
+    }
+
+    /**
+     * Restituisce il tempo che la palla <code>pBall</code> impiega a fermarsi.
+     */
+    private double getStopTime(int pBall) {
+        double speed = this.state.getSpeed(pBall);
+        return speed < MIN_SPEED ? 0 : Math.log(MIN_SPEED / speed) / LOG_RATIO;
+    }
+
+    /**
+     * Restituisce il valore di <code>S</code> al quale la palla <code>pBall</code> si ferma, oppure infinito
+     * se la palla è ferma (la sua traiettoria non ha limiti).
+     */
+    private double getTravel(int pBall) {
+        if (!this.isMoving(pBall)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return (1 - Math.pow(RATIO, this.getStopTime(pBall))) / (1 - RATIO);
+    }
+
+    /**
+     * Converte un valore di <code>S</code> nel tempo necessario a raggiungerlo.
+     */
+    private double toTime(double pS) {
+        return Math.log(1 - pS * (1 - RATIO)) / LOG_RATIO;
+    }
+}
@@ -0,0 +1,275 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>FastForward</code> porta direttamente in quiete le palle di un <code>TableEngine</code>
+ * che non possono più urtare nulla, anziché spostarle uno "step" alla volta.
+ * <br><br>
+ * Una palla che rotola senza urti, muovendosi con passo <code>h</code>, dopo <code>k</code> spostamenti ha
+ * velocità <code>v * q^k</code>, con <code>q = (1 - FRICTION)^h</code>, e si trova a distanza
+ * <code>v * (1 - q^k) / FRICTION</code> dal punto di partenza (vedi <code>Sphere2D.move</code>). Si ferma al primo spostamento nel quale
+ * la sua velocità è inferiore a <code>10 * FRICTION</code> (vedi <code>BallState.move</code>), per cui il
+ * punto e l'istante di arresto si calcolano in forma chiusa. Il salto viene eseguito solo se il segmento
+ * percorso da ogni palla in movimento (prolungato fino al limite <code>v / FRICTION</code>), allargato
+ * della dimensione di una palla, non tocca le altre palle,
+ * i segmenti percorsi dalle altre palle in movimento, le sponde e le buche: in tal caso nessuna palla può
+ * più cambiare traiettoria ed il risultato coincide con quello della simulazione a "step".
+ * <br><br>
+ * Le traiettorie saltate restano memorizzate fino al salto successivo, in modo che l'interfaccia grafica
+ * possa mostrarle con {@link #getX(int, double)} e {@link #getY(int, double)}. Nessun metodo di questa
+ * classe alloca oggetti.
+ * @author Oneiros
+ */
+class FastForward {
+
+    /** La distanza minima, oltre al contatto, che il percorso di una palla deve mantenere da ogni ostacolo */
+    static final double MARGIN = 1;
+    /** Il massimo numero di chiamate che separano due tentativi falliti di salto */
+    static final int MAX_DELAY = 8;
+    private static final double MIN_SPEED = PoolTable.FRICTION * 10;
+    private static final double LOG_RATIO = Math.log(1 - PoolTable.FRICTION);
+    private final TableEngine engine;
+    private final BallState state;
+    private final TableGeometry geometry;
+    private final double[] speedX;
+    private final double[] speedY;
+    private final double[] endX;
+    private final double[] endY;
+    private final int[] moves;
+    private final java.util.BitSet flying;
+    private double step;
+    private double duration;
+    private int delay;
+    private int wait;
+
+    /**
+     * Crea ed inizializza il salto delle traiettorie per il tavolo <code>pEngine</code>.
+     * @param pEngine Il tavolo da simulare
+     */
+    FastForward(TableEngine pEngine) {
+        int n = pEngine.state.size();
+        this.engine = pEngine;
+        this.state = pEngine.state;
+        this.geometry = pEngine.geometry;
+        this.speedX = new double[n];
+        this.speedY = new double[n];
+        this.endX = new double[n];
+        this.endY = new double[n];
+        this.moves = new int[n];
+        this.flying = new java.util.BitSet(n);
+    }
+
+    /**
+     * Dimentica le traiettorie dell'ultimo salto.
+     */
+    void clear() {
+        this.flying.clear();
+        this.duration = 0;
+        this.delay = 0;
+        this.wait = 0;
+    }
+
+    /**
+     * Tenta di portare in quiete tutte le palle in movimento, spostate con passo <code>pStep</code>. Dopo
+     * ogni tentativo fallito i tentativi successivi vengono diradati, raddoppiando il numero di chiamate che
+     * li separano fino a {@link #MAX_DELAY}: durante un'apertura, con molte palle vicine, il controllo dei
+     * percorsi costerebbe altrimenti quanto lo "step" stesso.
+     * @param pStep La frazione di "step" con la quale vengono spostate le palle
+     * @return <code>true</code> se nessuna palla poteva più urtare nulla e tutte sono state fermate;<br>
+     *         <code>false</code> altrimenti, oppure se nessuna palla è in movimento: lo stato e le
+     *         traiettorie dell'ultimo salto non vengono modificati.
+     */
+    boolean tryJump(double pStep) {
+        if (!this.engine.isMoving()) {
+            return false;
+        }
+        if (this.wait > 0) {
+            this.wait--;
+            return false;
+        }
+        SpinState spin = this.engine.getSpin();
+        double ratio = pStep == 1 ? 1 - PoolTable.FRICTION : Math.pow(1 - PoolTable.FRICTION, pStep);
+        if (!this.arePathsClear(spin, 1 / PoolTable.FRICTION)) {
+            this.delay = Math.min(MAX_DELAY, Math.max(1, 2 * this.delay));
+            this.wait = this.delay;
+            return false;
+        }
+        this.delay = 0;
+
+        double logRatio = pStep * LOG_RATIO;
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            // Numero di spostamenti k prima dell'arresto: il primo k per cui v * q^k < MIN_SPEED
+            double speed = this.state.getSpeed(i);
+            int k = speed < MIN_SPEED ? 0 : (int) Math.floor(Math.log(MIN_SPEED / speed) / logRatio) + 1;
+            double s = (1 - Math.pow(ratio, k)) / PoolTable.FRICTION;
+            this.moves[i] = k;
+            this.endX[i] = this.state.x[i] + s * this.state.vx[i];
+            this.endY[i] = this.state.y[i] - s * this.state.vy[i];
+        }
+        this.flying.clear();
+        this.step = pStep;
+        this.duration = 0;
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            this.flying.set(i);
+            this.duration = Math.max(this.duration, this.moves[i] * pStep);
+            this.speedX[i] = this.state.vx[i];
+            this.speedY[i] = this.state.vy[i];
+        }
+        for (int i = this.flying.nextSetBit(0); i >= 0; i = this.flying.nextSetBit(i + 1)) {
+            this.state.x[i] = this.endX[i];
+            this.state.y[i] = this.endY[i];
+            this.state.stop(i);
+            if (spin != null) {
+                spin.stop(i);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determina se tutte le palle in movimento rotolano e se i loro percorsi sono liberi da ostacoli. I
+     * percorsi vengono controllati fino al limite <code>v / FRICTION</code> (il parametro
+     * <code>pLimit</code>), raggiunto solo dopo infiniti spostamenti, in modo che il controllo non richieda
+     * logaritmi.
+     */
+    private boolean arePathsClear(SpinState pSpin, double pLimit) {
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            if (pSpin != null && pSpin.isSliding(this.state, i)) {
+                return false;
+            }
+            this.endX[i] = this.state.x[i] + pLimit * this.state.vx[i];
+            this.endY[i] = this.state.y[i] - pLimit * this.state.vy[i];
+        }
+        for (int i = this.engine.nextMoving(0); i >= 0; i = this.engine.nextMoving(i + 1)) {
+            if (!this.isClear(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Determina se il percorso della palla in movimento <code>pBall</code> è libero da ostacoli.
+     */
+    private boolean isClear(int pBall) {
+        double x1 = this.state.x[pBall], y1 = this.state.y[pBall];
+        double x2 = this.endX[pBall], y2 = this.endY[pBall];
+        double ballLimit = (Sphere2D.BALL_SIZE + MARGIN) * (Sphere2D.BALL_SIZE + MARGIN);
+        for (int j = 0; j < this.state.size(); j++) {
+            if (j == pBall || this.state.status[j] == BallState.POCKETED) {
+                continue;
+            }
+            double distance;
+            if (this.state.hasSpeed(j)) {
+                if (j < pBall) {
+                    continue;
+                }
+                distance = segmentDistanceSq(x1, y1, x2, y2, this.state.x[j], this.state.y[j], this.endX[j], this.endY[j]);
+            } else {
+                distance = java.awt.geom.Line2D.ptSegDistSq(x1, y1, x2, y2, this.state.x[j], this.state.y[j]);
+            }
+            if (distance < ballLimit) {
+                return false;
+            }
+        }
+        double wallLimit = (Sphere2D.BALL_SIZE / 2 + MARGIN) * (Sphere2D.BALL_SIZE / 2 + MARGIN);
+        for (Wall w : this.geometry.walls) {
+            if (segmentDistanceSq(x1, y1, x2, y2, w.x1, w.y1, w.x2, w.y2) < wallLimit
+                    || w.getPenetration(x1, y1) > 0 || w.getPenetration(x2, y2) > 0) {
+                return false;
+            }
+        }
+        // Le buche vengono controllate sulle coordinate troncate, per cui il margine è più ampio
+        double pocketLimit = (Sphere2D.BALL_SIZE / 2 + 2 + MARGIN) * (Sphere2D.BALL_SIZE / 2 + 2 + MARGIN);
+        for (int p = 0; p < this.geometry.pocketX.length; p++) {
+            if (java.awt.geom.Line2D.ptSegDistSq(x1, y1, x2, y2, this.geometry.pocketX[p],
+                    this.geometry.pocketY[p]) < pocketLimit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce il quadrato della distanza minima tra due segmenti.
+     */
+    private static double segmentDistanceSq(double pAx1, double pAy1, double pAx2, double pAy2,
+            double pBx1, double pBy1, double pBx2, double pBy2) {
+        if (java.awt.geom.Line2D.linesIntersect(pAx1, pAy1, pAx2, pAy2, pBx1, pBy1, pBx2, pBy2)) {
+            return 0;
+        }
+        return Math.min(Math.min(java.awt.geom.Line2D.ptSegDistSq(pAx1, pAy1, pAx2, pAy2, pBx1, pBy1),
+                java.awt.geom.Line2D.ptSegDistSq(pAx1, pAy1, pAx2, pAy2, pBx2, pBy2)),
+                Math.min(java.awt.geom.Line2D.ptSegDistSq(pBx1, pBy1, pBx2, pBy2, pAx1, pAy1),
+                java.awt.geom.Line2D.ptSegDistSq(pBx1, pBy1, pBx2, pBy2, pAx2, pAy2)));
+    }
+
+    /**
+     * Restituisce il fattore per il quale va moltiplicata la velocità iniziale della palla
+     * <code>pBall</code> per ottenerne lo spostamento dopo un tempo <code>pTime</code> dall'inizio del salto.
+     */
+    private double getTravel(int pBall, double pTime) {
+        double t = Math.min(pTime, this.moves[pBall] * this.step);
+        return (1 - Math.pow(1 - PoolTable.FRICTION, t)) / PoolTable.FRICTION;
+    }
+
+    /**
+     * Restituisce la durata dell'ultimo salto, cioè il tempo che la simulazione a "step" avrebbe impiegato
+     * a fermare tutte le palle.
+     * @return La durata espressa in "step", <code>0</code> se non è avvenuto alcun salto
+     */
+    double getDuration() {
+        return this.duration;
+    }
+
+    /**
+     * Determina se la palla <code>pBall</code> è stata portata in quiete dall'ultimo salto.
+     * @param pBall Il numero identificativo della palla
+     * @return <code>true</code> se la palla ha una traiettoria da mostrare;<br>
+     *         <code>false</code> altrimenti.
+     */
+    boolean isFlying(int pBall) {
+        return this.flying.get(pBall);
+    }
+
+    /**
+     * Restituisce la prima palla portata in quiete dall'ultimo salto con numero maggiore o uguale a
+     * <code>pFrom</code>.
+     * @param pFrom Il numero dal quale iniziare la ricerca
+     * @return Il numero della palla, <code>-1</code> se non ci sono altre palle
+     */
+    int nextFlying(int pFrom) {
+        return this.flying.nextSetBit(pFrom);
+    }
+
+    /**
+     * Restituisce la coordinata <code>x</code> che la palla <code>pBall</code>, portata in quiete
+     * dall'ultimo salto, ha dopo un tempo <code>pTime</code> dall'inizio del salto.
+     * @param pBall Il numero identificativo della palla
+     * @param pTime Il tempo trascorso dall'inizio del salto, espresso in "step"
+     * @return La coordinata <code>x</code> del centro della palla
+     */
+    double getX(int pBall, double pTime) {
+        return this.state.x[pBall] - this.getRemaining(pBall, pTime) * this.speedX[pBall];
+    }
+
+    /**
+     * Restituisce la coordinata <code>y</code> che la palla <code>pBall</code>, portata in quiete
+     * dall'ultimo salto, ha dopo un tempo <code>pTime</code> dall'inizio del salto.
+     * @param pBall Il numero identificativo della palla
+     * @param pTime Il tempo trascorso dall'inizio del salto, espresso in "step"
+     * @return La coordinata <code>y</code> del centro della palla
+     */
+    double getY(int pBall, double pTime) {
+        return this.state.y[pBall] + this.getRemaining(pBall, pTime) * this.speedY[pBall];
+    }
+
+    /**
+     * Restituisce il fattore per il quale va moltiplicata la velocità iniziale per ottenere lo spostamento
+     * che resta da compiere dopo un tempo <code>pTime</code>.
+     */
+    private double getRemaining(int pBall, double pTime) {
+        return this.getTravel(pBall, Double.POSITIVE_INFINITY) - this.getTravel(pBall, Math.max(0, pTime));
+    }
+}
@@ -41,11 +41,35 @@ public class GameManager {
     protected Shooter currentShooter;
     /** Puntatore al giocatore in attesa.*/
     protected Shooter waitingShooter;
+    /** Il numero di <code>double</code> occupati da un'istantanea dello stato della partita */
+    public static final int SNAPSHOT_LENGTH = 10;
+    /** La posizione nell'istantanea del giocatore di turno (<code>1</code> o <code>2</code>) */
+    public static final int SNAPSHOT_CURRENT = 0;
+    /** La posizione nell'istantanea dei punti del primo giocatore */
+    public static final int SNAPSHOT_POINTS_1 = 1;
+    /** La posizione nell'istantanea del tipo di palle del primo giocatore (ordinale di <code>BallType</code>) */
+    public static final int SNAPSHOT_TYPE_1 = 2;
+    /** La posizione nell'istantanea dei punti del secondo giocatore */
+    public static final int SNAPSHOT_POINTS_2 = 3;
+    /** La posizione nell'istantanea del tipo di palle del secondo giocatore (ordinale di <code>BallType</code>) */
+    public static final int SNAPSHOT_TYPE_2 = 4;
+    /** La posizione nell'istantanea dell'indicatore di turno iniziato */
+    public static final int SNAPSHOT_IN_TURN = 5;
+    /** La posizione nell'istantanea dell'indicatore di tiro di apertura */
+    public static final int SNAPSHOT_BREAK = 6;
+    /** La posizione nell'istantanea del risultato del turno (ordinale di <code>Result</code> o <code>-1</code>) */
+    public static final int SNAPSHOT_RESULT = 7;
+    /** La posizione nell'istantanea del numero di palle imbucate nel turno */
+    public static final int SNAPSHOT_POCKETED = 8;
+    /** La posizione nell'istantanea della buca dichiarata per la palla 8 (<code>-1</code> se assente) */
+    public static final int SNAPSHOT_DESIGNATED_POCKET = 9;
     private boolean inTurn;
     private boolean strike;
     private Result turnResult;
     private int numberOfPockets;
     private int designatedPocket;
+    private static final BallType[] BALL_TYPES = BallType.values();
+    private static final Result[] RESULTS = Result.values();
 
     /**
      * L'enum <code>BallType</code> assegna ad ogni palla da biliardo il tipo <code>SOLID</code> ("piena")
@@ -210,6 +234,18 @@ public class GameManager {
         this.strike = true;
     }
 
+    /**
+     * Crea ed inizializza un <code>GameManager</code> nel quale i giocatori usano le stecche gialla e blu.
+     * Utile per simulare partite senza interfaccia grafica.
+     * @param pName1 Il nome del primo giocatore;
+     * @param pName2 Il nome del secondo giocatore;
+     * @param pBreaker <code>1</code> se sarà il primo giocatore a spaccare;
+     *                 <code>2</code> se sarà il secondo giocatore a spaccare;
+     */
+    public GameManager(String pName1, String pName2, int pBreaker) {
+        this(pName1, pName2, pBreaker, Cue.Color.YELLOW, Cue.Color.BLUE);
+    }
+
     /**
      * Prepara un nuovo turno di gioco. Questo metodo può generare eccezioni se chiamato in momenti di gioco
      * sbagliati.
@@ -320,6 +356,14 @@ public class GameManager {
         this.designatedPocket = pDesignated;
     }
 
+    /**
+     * Restituisce la buca nella quale il giocatore di turno ha dichiarato di voler imbucare la palla 8.
+     * @return L'indice della buca, oppure <code>-1</code> se non è stata ancora scelta
+     */
+    public int getDesignatedPocket() {
+        return this.designatedPocket;
+    }
+
     public boolean playerHaveToChoosePocket() {
         return this.currentShooter.getPoints() == 7 && this.designatedPocket == -1;
     }
@@ -342,6 +386,51 @@ public class GameManager {
         }
     }
 
+    /**
+     * Salva un'istantanea dello stato della partita in <code>pData</code> a partire dalla posizione
+     * <code>pOffset</code>: giocatore di turno, punti e tipo di palle di ogni giocatore e stato del turno
+     * in corso. L'istantanea occupa {@link #SNAPSHOT_LENGTH} elementi e non richiede alcuna allocazione.
+     * @param pData L'array nel quale salvare l'istantanea
+     * @param pOffset La posizione del primo elemento dell'istantanea
+     */
+    public void snapshot(double[] pData, int pOffset) {
+        pData[pOffset + SNAPSHOT_CURRENT] = this.currentShooter == this.shooter1 ? 1 : 2;
+        pData[pOffset + SNAPSHOT_POINTS_1] = this.shooter1.points;
+        pData[pOffset + SNAPSHOT_TYPE_1] = this.shooter1.type.ordinal();
+        pData[pOffset + SNAPSHOT_POINTS_2] = this.shooter2.points;
+        pData[pOffset + SNAPSHOT_TYPE_2] = this.shooter2.type.ordinal();
+        pData[pOffset + SNAPSHOT_IN_TURN] = this.inTurn ? 1 : 0;
+        pData[pOffset + SNAPSHOT_BREAK] = this.strike ? 1 : 0;
+        pData[pOffset + SNAPSHOT_RESULT] = this.turnResult == null ? -1 : this.turnResult.ordinal();
+        pData[pOffset + SNAPSHOT_POCKETED] = this.numberOfPockets;
+        pData[pOffset + SNAPSHOT_DESIGNATED_POCKET] = this.designatedPocket;
+    }
+
+    /**
+     * Ripristina un'istantanea salvata con {@link #snapshot(double[], int)}. Non richiede alcuna allocazione.
+     * @param pData L'array contenente l'istantanea
+     * @param pOffset La posizione del primo elemento dell'istantanea
+     */
+    public void restore(double[] pData, int pOffset) {
+        if (pData[pOffset + SNAPSHOT_CURRENT] == 1) {
+            this.currentShooter = this.shooter1;
+            this.waitingShooter = this.shooter2;
+        } else {
+            this.currentShooter = this.shooter2;
+            this.waitingShooter = this.shooter1;
+        }
+        this.shooter1.points = (int) pData[pOffset + SNAPSHOT_POINTS_1];
+        this.shooter1.type = BALL_TYPES[(int) pData[pOffset + SNAPSHOT_TYPE_1]];
+        this.shooter2.points = (int) pData[pOffset + SNAPSHOT_POINTS_2];
+        this.shooter2.type = BALL_TYPES[(int) pData[pOffset + SNAPSHOT_TYPE_2]];
+        this.inTurn = pData[pOffset + SNAPSHOT_IN_TURN] != 0;
+        this.strike = pData[pOffset + SNAPSHOT_BREAK] != 0;
+        int result = (int) pData[pOffset + SNAPSHOT_RESULT];
+        this.turnResult = result < 0 ? null : RESULTS[result];
+        this.numberOfPockets = (int) pData[pOffset + SNAPSHOT_POCKETED];
+        this.designatedPocket = (int) pData[pOffset + SNAPSHOT_DESIGNATED_POCKET];
+    }
+
     /**
      * Termina il turno attuale e stabilisce chi sarà il prossimo a colpire.
      */
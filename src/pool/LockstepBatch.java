@@ -0,0 +1,242 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>LockstepBatch</code> simula contemporaneamente fino a {@link #TABLES} tiri con il motore a
+ * step fissi, facendo avanzare tutti i tavoli di uno step alla volta. Le palle di tutti i tavoli sono
+ * raccolte in un unico <code>BallState</code>, con la palla <code>b</code> del tavolo <code>t</code>
+ * all'indice <code>b * TABLES + t</code>: la stessa palla di tutti i tavoli occupa posizioni contigue, per
+ * cui le operazioni di <code>BatchKernel</code> elaborano più tavoli per istruzione e restituiscono una
+ * maschera con un bit per tavolo.
+ * <br><br>
+ * Ad ogni step le palle vengono elaborate nello stesso ordine di <code>TableEngine</code>, una palla alla
+ * volta ma in tutti i tavoli insieme: la maschera dei tavoli nei quali la palla si muove, lo spostamento ed
+ * il confronto con ognuna delle altre palle vengono calcolati da <code>BatchKernel</code>, mentre buche,
+ * urti e sponde vengono gestiti uno alla volta solo nei tavoli individuati dalle maschere. Buche e sponde
+ * vengono verificate solo se la palla si trova al di fuori dell'area libera del tavolo (vedi
+ * <code>TableGeometry.clearMinX</code>), dove non potrebbe toccarle. Le operazioni sono le stesse, nello
+ * stesso ordine, di <code>TableEngine</code> a step fissi senza modelli facoltativi, per cui gli esiti
+ * coincidono con quelli di un tiro simulato da solo, con un'eccezione: <code>TableEngine</code> cerca le
+ * palle vicine nella griglia prima di gestire gli urti della palla, per cui non vede una palla che la
+ * separazione di un urto porta a toccarla, mentre qui ogni palla viene confrontata con tutte le altre
+ * dopo gli urti precedenti. Nei tiri di apertura di <code>benchmark.LockstepBenchmark</code> questo cambia
+ * l'esito di meno di un tiro su cento.
+ * @author Oneiros
+ */
+class LockstepBatch {
+
+    /** Il numero massimo di tavoli simulati contemporaneamente, pari al numero di bit di una maschera */
+    static final int TABLES = 64;
+    private final TableGeometry geometry;
+    private final BatchKernel kernel;
+    private final int balls;
+    private final BallState state;
+    private final BatchSimulator.Outcome[] outcomes = new BatchSimulator.Outcome[TABLES];
+
+    /**
+     * Crea ed inizializza un gruppo di tavoli con <code>pBalls</code> palle ciascuno.
+     * @param pGeometry La geometria del tavolo
+     * @param pKernel Le operazioni su molte palle
+     * @param pBalls Il numero di palle di ogni tavolo
+     */
+    LockstepBatch(TableGeometry pGeometry, BatchKernel pKernel, int pBalls) {
+        this.geometry = pGeometry;
+        this.kernel = pKernel;
+        this.balls = pBalls;
+        this.state = new BallState(pBalls * TABLES);
+    }
+
+    /**
+     * Restituisce il numero di palle di ogni tavolo.
+     * @return Il numero di palle
+     */
+    int getBalls() {
+        return this.balls;
+    }
+
+    /**
+     * Restituisce le operazioni su molte palle utilizzate.
+     * @return Le operazioni su molte palle
+     */
+    BatchKernel getKernel() {
+        return this.kernel;
+    }
+
+    /**
+     * Simula i tiri da <code>pFrom</code> (incluso) a <code>pTo</code> (escluso), al massimo {@link #TABLES},
+     * che devono avere tutti {@link #getBalls()} palle.
+     * @param pShots I tiri
+     * @param pOutcomes Gli esiti, negli stessi indici dei tiri
+     * @param pFrom L'indice del primo tiro
+     * @param pTo L'indice successivo a quello dell'ultimo tiro
+     */
+    void simulate(BatchSimulator.Shot[] pShots, BatchSimulator.Outcome[] pOutcomes, int pFrom, int pTo) {
+        int count = pTo - pFrom;
+        for (int t = 0; t < TABLES; t++) {
+            this.outcomes[t] = t < count ? pOutcomes[pFrom + t] : null;
+            for (int b = 0; b < this.balls; b++) {
+                int i = b * TABLES + t;
+                if (t < count) {
+                    BallState shot = pShots[pFrom + t].getState();
+                    this.state.x[i] = shot.x[b];
+                    this.state.y[i] = shot.y[b];
+                    this.state.status[i] = shot.status[b];
+                    if (shot.status[b] == BallState.IN_PLAY) {
+                        this.state.vx[i] = shot.vx[b];
+                        this.state.vy[i] = shot.vy[b];
+                    } else {
+                        this.state.stop(i);
+                    }
+                } else {
+                    this.state.x[i] = 0;
+                    this.state.y[i] = 0;
+                    this.state.stop(i);
+                    this.state.status[i] = BallState.POCKETED;
+                }
+            }
+            if (t < count && this.state.status[t] == BallState.IN_PLAY) {
+                this.state.setSpeed(t, pShots[pFrom + t].getStrength(), pShots[pFrom + t].getAngle());
+            }
+        }
+
+        while (this.step()) {
+            // Tutti i tavoli avanzano insieme finché l'ultimo non si è fermato
+        }
+
+        for (int t = 0; t < count; t++) {
+            BatchSimulator.Outcome outcome = this.outcomes[t];
+            for (int b = 0; b < this.balls; b++) {
+                int i = b * TABLES + t;
+                outcome.state.x[b] = this.state.x[i];
+                outcome.state.y[b] = this.state.y[i];
+                outcome.state.vx[b] = this.state.vx[i];
+                outcome.state.vy[b] = this.state.vy[i];
+                outcome.state.status[b] = this.state.status[i];
+            }
+            // TableEngine.simulate() conta sempre almeno uno step
+            outcome.duration = Math.max(1, outcome.duration);
+            this.outcomes[t] = null;
+        }
+    }
+
+    /**
+     * Simula uno step di tutti i tavoli. Come in <code>TableEngine.step</code>, le palle vengono elaborate in
+     * ordine di numero: la palla viene spostata, se non cade in buca vengono gestiti i suoi urti con le
+     * altre palle in ordine di numero e poi quelli con le sponde. Una palla urtata da una palla con numero
+     * minore si muove quindi già nello stesso step.
+     * @return <code>true</code> se almeno un tavolo aveva palle in movimento;<br>
+     *         <code>false</code> altrimenti.
+     */
+    private boolean step() {
+        long running = 0;
+        for (int b = 0; b < this.balls; b++) {
+            int from = b * TABLES;
+            long moving = this.kernel.moving(this.state, from, from + TABLES);
+            if (moving == 0) {
+                continue;
+            }
+            running |= moving;
+            this.kernel.move(this.state, PoolTable.FRICTION, 1, from, from + TABLES);
+            for (long m = moving & this.outside(b); m != 0; m &= m - 1) {
+                int t = Long.numberOfTrailingZeros(m);
+                if (this.checkPocketEntering(b, t)) {
+                    moving &= ~(1L << t);
+                }
+            }
+            for (int j = 0; j < this.balls && moving != 0; j++) {
+                if (j != b) {
+                    long touching = moving & this.kernel.touching(this.state, from, j * TABLES, TABLES);
+                    for (long m = touching; m != 0; m &= m - 1) {
+                        this.checkBallsCollision(b, j, Long.numberOfTrailingZeros(m));
+                    }
+                }
+            }
+            for (long m = moving & this.outside(b); m != 0; m &= m - 1) {
+                this.checkEdgesCollisions(b, Long.numberOfTrailingZeros(m));
+            }
+        }
+        for (long m = running; m != 0; m &= m - 1) {
+            this.outcomes[Long.numberOfTrailingZeros(m)].duration++;
+        }
+        return running != 0;
+    }
+
+    /**
+     * Restituisce la maschera dei tavoli nei quali la palla <code>pBall</code> si trova al di fuori
+     * dell'area libera.
+     */
+    private long outside(int pBall) {
+        return this.kernel.outside(this.state, this.geometry.clearMinX, this.geometry.clearMinY,
+                this.geometry.clearMaxX, this.geometry.clearMaxY, pBall * TABLES, (pBall + 1) * TABLES);
+    }
+
+    /**
+     * Gestisce l'urto tra la palla <code>pBall</code> del tavolo <code>pTable</code>, che si sta muovendo,
+     * e la palla <code>pSecondBall</code> che la tocca, se questa è in gioco.
+     */
+    private void checkBallsCollision(int pBall, int pSecondBall, int pTable) {
+        int i = pBall * TABLES + pTable;
+        int j = pSecondBall * TABLES + pTable;
+        if (this.state.status[j] != BallState.IN_PLAY) {
+            return;
+        }
+        BatchSimulator.Outcome outcome = this.outcomes[pTable];
+        if (pBall == 0 && outcome.firstTouchedBall == 0) {
+            outcome.firstTouchedBall = pSecondBall;
+        }
+        this.state.collide(i, j);
+        outcome.collisions++;
+    }
+
+    /**
+     * Gestisce l'urto tra la palla <code>pBall</code> del tavolo <code>pTable</code> e le sponde, come
+     * <code>TableEngine.checkEdgesCollisions</code>.
+     */
+    private void checkEdgesCollisions(int pBall, int pTable) {
+        int i = pBall * TABLES + pTable;
+        Wall[] walls = this.geometry.walls;
+        double x = this.state.x[i];
+        double y = this.state.y[i];
+        for (int j = 0; j < walls.length; j++) {
+            if (walls[j].isTouching(x, y)) {
+                Wall closestWall = walls[j];
+                for (int k = j + 1; k < walls.length; k++) {
+                    Wall secondWall = walls[k];
+                    if (secondWall.getPenetration(x, y) > closestWall.getPenetration(x, y)) {
+                        closestWall = secondWall;
+                    }
+                }
+                this.state.collide(i, closestWall);
+                for (int e = 0; e < walls.length; e++) {
+                    walls[e].moveAway(this.state, i);
+                }
+                this.outcomes[pTable].cushionHits++;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Verifica se la palla <code>pBall</code> del tavolo <code>pTable</code> è caduta in buca, come
+     * <code>TableEngine.checkPocketEntering</code>, e in tal caso la ferma e la segna come caduta.
+     */
+    private boolean checkPocketEntering(int pBall, int pTable) {
+        int i = pBall * TABLES + pTable;
+        int x = (int) this.state.x[i];
+        int y = (int) this.state.y[i];
+        for (int p = 0; p < this.geometry.pocketX.length; p++) {
+            double dx = this.geometry.pocketX[p] - x;
+            double dy = this.geometry.pocketY[p] - y;
+            if (dx * dx + dy * dy <= (Sphere2D.BALL_SIZE / 2) * (Sphere2D.BALL_SIZE / 2)) {
+                this.state.stop(i);
+                this.state.status[i] = BallState.POCKETED;
+                BatchSimulator.Outcome outcome = this.outcomes[pTable];
+                outcome.pocket[pBall] = p;
+                outcome.pocketed++;
+                return true;
+            }
+        }
+        return false;
+    }
+}
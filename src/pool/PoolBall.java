@@ -4,8 +4,9 @@ import media.support.*;
 import phisic.*;
 
 /**
- * La classe <code>PoolBall</code> modella una palla da biliardo gestendone comportamenti fisici e rappresentazione
- * visiva e sonora.
+ * La classe <code>PoolBall</code> modella la rappresentazione visiva e sonora di una palla da biliardo.
+ * Il comportamento fisico della palla durante una partita è gestito da <code>TableEngine</code>:
+ * <code>PoolBall</code> ne riflette la posizione.
  * @author Oneiros
  */
 public class PoolBall extends Sphere2D {
@@ -46,8 +47,8 @@ public class PoolBall extends Sphere2D {
     }
 
     @Override
-    public void move(double pFriction) {
-        super.move(pFriction);
+    public void move(double pFriction, double pStep) {
+        super.move(pFriction, pStep);
         this.setPanelLocation();
     }
 
@@ -70,23 +71,16 @@ public class PoolBall extends Sphere2D {
     }
 
     /**
-     * Gestisce l'urto tra la sfera d'istanza e la sfera <code>pBall</code>. Le nuove velocità e le nuove
-     * direzioni vengono determinate scambiando le proiezioni dei vettori velocità sulla retta tangente
-     * alle due sfere. Il metodo si occupa anche di distanziare opportunamente le due sfere per evitare casi di
-     * autocompenetrazione.
-     * Durante la collisione viene generato un suono d'impatto dipendente dall'entità dello stesso.
-     * @param pBall La sfera con la quale è avvenuta la collisione
+     * Genera il suono d'impatto tra la palla da biliardo ed un'altra palla. Il suono dipende dall'entità
+     * dell'urto.
+     * @param pStrenght L'entità dell'urto
      */
-    @Override
-    public void collideWith(Sphere2D pBall) {
-        double hitStrenght = pBall.speed.getMagnitude();
-        super.collideWith(pBall);
-        hitStrenght = Math.abs(hitStrenght - this.speed.getMagnitude());
+    public void hitSound(double pStrenght) {
         if (!this.hardHitSound.isRunning() && !this.mediumHitSound.isRunning() && !this.weakHitSound.isRunning()) {
-            if (hitStrenght >= 0 && hitStrenght <= 1) {
-                this.weakHitSound.setVolume(50 + 25 * (float) hitStrenght);
+            if (pStrenght >= 0 && pStrenght <= 1) {
+                this.weakHitSound.setVolume(50 + 25 * (float) pStrenght);
                 this.weakHitSound.run();
-            } else if (hitStrenght > 1 && hitStrenght <= 4) {
+            } else if (pStrenght > 1 && pStrenght <= 4) {
                 this.mediumHitSound.run();
             } else {
                 this.hardHitSound.run();
@@ -95,15 +89,12 @@ public class PoolBall extends Sphere2D {
     }
 
     /**
-     * Gestisce l'urto tra la sfera ed un muro calcolando la nuova direzione di spostamento e genrando un
-     * suono d'impatto.
-     * @param pWall Il muro sul quale la sfera è entrata in collisione
+     * Genera il suono d'impatto tra la palla da biliardo ed una sponda.
+     * @param pSpeed Il modulo della velocità della palla dopo l'urto
      */
-    @Override
-    public void collideWith(Wall pWall) {
-        super.collideWith(pWall);
+    public void cushionSound(double pSpeed) {
         Sound edgeImpact = new Sound("cushion.wav");
-        edgeImpact.setVolume(60 + 15 * (float) (this.speed.getMagnitude()) / 10);
+        edgeImpact.setVolume(60 + 15 * (float) pSpeed / 10);
         edgeImpact.run();
     }
 
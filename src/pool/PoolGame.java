@@ -14,6 +14,10 @@ public class PoolGame extends Image {
     protected static final java.awt.Color GOLD = new java.awt.Color(255, 204, 0);
     private static final Sound MENU_SOUND = new Sound("stick.wav");
     private static final Sound MUSIC = new Sound("syncopations.wav", 70);
+    /** Il nome proposto per il secondo giocatore quando viene affidato al computer */
+    private static final String COMPUTER_NAME = "Computer";
+    /** Le impostazioni del motore fisico dei tavoli creati dal gioco */
+    private final TableSettings settings = new TableSettings();
     private Image tablePanel;
     private PoolFrame frame;
 
@@ -114,25 +118,7 @@ public class PoolGame extends Image {
                     } else {
                         mouseLocation.y = -mouseLocation.y;
                     }
-                    final double power = cue.getDistanceFromBall() / 10 - 2;
-                    final double angle = mouseLocation.getAngularCoord();
-                    new Thread("Striking") {
-
-                        @Override
-                        public void run() {
-                            while (cue.getDistanceFromBall() > Sphere2D.BALL_SIZE / 2) {
-                                cue.setDistanceFromBall(cue.getDistanceFromBall() - (int) power);
-                                cue.repaint();
-                                try {
-                                    sleep(10);
-                                } catch (InterruptedException ex) {
-                                }
-                            }
-                            cue.setVisible(false);
-                            cue.hitSound();
-                            poolTable.strike(power, angle);
-                        }
-                    }.start();
+                    strike(cue.getDistanceFromBall() / 10 - 2, mouseLocation.getAngularCoord());
                 }
             }
 
@@ -192,7 +178,7 @@ public class PoolGame extends Image {
          * Definisce ed inizializza i componenti comuni a tutte le modalità di gioco.
          */
         public PoolManager() {
-            this.poolTable = new PoolTable(this, tablePanel);
+            this.poolTable = new PoolTable(this, tablePanel, settings);
             this.chamber = new Chamber();
             this.chamber.setLocation(tablePanel.getX() + (PoolTable.TABLE_SIZE.width - this.chamber.background.getImageSize().width) / 2,
                     getHeight() - this.chamber.background.getImageSize().height);
@@ -286,7 +272,7 @@ public class PoolGame extends Image {
             } else if (position.y > PoolTable.Cushion.S_A.y1 - ray) {
                 position.y = PoolTable.Cushion.S_A.y1 - ray;
             }
-            this.poolTable.balls[0].setLocation(position);
+            this.poolTable.setWhiteBallLocation(position);
         }
 
         /**
@@ -314,6 +300,31 @@ public class PoolGame extends Image {
             return ballLocation;
         }
 
+        /**
+         * Anima il colpo di stecca e, quando la stecca raggiunge la palla bianca, esegue il tiro.
+         * @param pPower La forza con la quale colpire la palla bianca
+         * @param pAngle L'angolazione con la quale colpire la palla bianca
+         */
+        protected void strike(final double pPower, final double pAngle) {
+            new Thread("Striking") {
+
+                @Override
+                public void run() {
+                    while (cue.getDistanceFromBall() > Sphere2D.BALL_SIZE / 2) {
+                        cue.setDistanceFromBall(cue.getDistanceFromBall() - (int) pPower);
+                        cue.repaint();
+                        try {
+                            sleep(10);
+                        } catch (InterruptedException ex) {
+                        }
+                    }
+                    cue.setVisible(false);
+                    cue.hitSound();
+                    poolTable.strike(pPower, pAngle);
+                }
+            }.start();
+        }
+
         /**
          * Prepara il prossimo turno di gioco.
          */
@@ -399,6 +410,12 @@ public class PoolGame extends Image {
 
         /** Le regole di gioco della Palla 8. */
         protected GameManager gameManager;
+        /** L'avversario controllato dal computer, oppure <code>null</code> se giocano due persone. */
+        protected ComputerPlayer computerPlayer;
+        /** Il giocatore controllato dal computer, oppure <code>null</code> se giocano due persone. */
+        protected GameManager.Shooter computerShooter;
+        /** Il tempo di riflessione del computer per ogni tiro, in millisecondi. */
+        protected long computerBudget;
         
         /** <code>Listener</code> che si occupa di eseguire il colpo di stecca al click del mouse. */
         protected final MouseAdapter choosePocketListener = new MouseAdapter() {
@@ -645,6 +662,71 @@ public class PoolGame extends Image {
             tablePanel.add(this.circle);
         }
 
+        /**
+         * Crea ed inizializza un <code>EightBallPoolManager</code> nel quale il secondo giocatore di
+         * <code>pGameManager</code> è controllato dal computer.
+         * @param pGameManager <code>GameManager</code> contenente le regole di gioco.
+         * @param pComputerPlayer L'avversario controllato dal computer
+         * @param pBudget Il tempo di riflessione del computer per ogni tiro, in millisecondi (ad esempio
+         *                {@link ComputerPlayer#DEFAULT_BUDGET})
+         */
+        protected EightBallPoolManager(GameManager pGameManager, ComputerPlayer pComputerPlayer, long pBudget) {
+            this(pGameManager);
+            this.computerPlayer = pComputerPlayer;
+            this.computerShooter = pGameManager.shooter2;
+            this.computerBudget = pBudget;
+            java.io.File book = new java.io.File(BreakBook.DEFAULT_FILE);
+            if (book.isFile()) {
+                try {
+                    this.computerPlayer.setBreakBook(BreakBook.open(book));
+                } catch (java.io.IOException ex) {
+                    System.out.println(ex);
+                }
+            }
+            java.io.File tablebase = new java.io.File(Tablebase.DEFAULT_FILE);
+            if (tablebase.isFile()) {
+                try {
+                    this.computerPlayer.setTablebase(Tablebase.open(tablebase));
+                } catch (java.io.IOException ex) {
+                    System.out.println(ex);
+                }
+            }
+            if (this.gameManager.currentShooter == this.computerShooter) {
+                removeMouseListener(this.strikingCueListener);
+                removeMouseMotionListener(this.rotatingCueListener);
+                this.computerTurn();
+            }
+        }
+
+        /**
+         * Lascia giocare il computer: la ricerca del tiro avviene in un thread separato, in modo da non
+         * bloccare l'interfaccia, e il tiro scelto viene poi eseguito con la stessa animazione dei
+         * giocatori umani.
+         */
+        protected void computerTurn() {
+            this.showDefaultCursor();
+            this.cue.prepare();
+            this.cue.setVisible(true);
+            new Thread("Computer Player") {
+
+                @Override
+                public void run() {
+                    ComputerPlayer.Shot shot = computerPlayer.think(poolTable.engine, gameManager, computerBudget);
+                    cue.rotate(Math.PI - shot.getAngle());
+                    int distance = Math.min((int) ((shot.getStrength() + 2) * 10), Cue.MAX_DISTANCE_FROM_BALL);
+                    while (cue.getDistanceFromBall() < distance) {
+                        cue.setDistanceFromBall(cue.getDistanceFromBall() + 1);
+                        cue.repaint();
+                        try {
+                            sleep(10);
+                        } catch (InterruptedException ex) {
+                        }
+                    }
+                    strike(shot.getStrength(), shot.getAngle());
+                }
+            }.start();
+        }
+
         @Override
         protected void pocket(int pBall, int pWith, int pPocket) {
             this.gameManager.pocket(pBall, pWith, pPocket);
@@ -667,7 +749,15 @@ public class PoolGame extends Image {
                 case WHITE_IN_POCKET:
                     this.gameManager.whiteBallRepositionated();
                     this.stats.indicate(this.gameManager.waitingShooter);
-                    super.whiteBallInPocket();
+                    if (this.gameManager.waitingShooter == this.computerShooter) {
+                        ComputerPlayer.placeCueBall(this.poolTable.engine);
+                        this.poolTable.balls[0].image.setVisible(true);
+                        this.poolTable.setWhiteBallLocation(new Point(this.poolTable.engine.getX(0),
+                                this.poolTable.engine.getY(0)));
+                        this.setNextTurn();
+                    } else {
+                        super.whiteBallInPocket();
+                    }
                     break;
                 default:
                     this.gameManager.turnOver();
@@ -678,7 +768,13 @@ public class PoolGame extends Image {
 
         @Override
         protected void turnEnded() {
-            if (gameManager.playerHaveToChoosePocket()) {
+            if (gameManager.playerHaveToChoosePocket() && gameManager.currentShooter == this.computerShooter) {
+                int pocket = ComputerPlayer.choosePocket(this.poolTable.engine);
+                gameManager.setDesignatedPocket(pocket);
+                this.circle.setLocation(PoolTable.Pocket.values()[pocket]);
+                this.circle.setVisible(true);
+                this.turnEnded();
+            } else if (gameManager.playerHaveToChoosePocket()) {
                 this.showDefaultCursor();
                 new Thread("chooseAPocket!") {
 
@@ -698,10 +794,15 @@ public class PoolGame extends Image {
                     }
                 }.start();
             } else {
-                this.showCrossCursor();
                 this.gameManager.setNewTurn();
                 this.cue.setColor(this.gameManager.currentShooter.getCueColor());
-                super.turnEnded();
+                if (this.gameManager.currentShooter == this.computerShooter) {
+                    this.computerTurn();
+                } else {
+                    this.circle.setVisible(false);
+                    this.showCrossCursor();
+                    super.turnEnded();
+                }
             }
         }
     }
@@ -727,6 +828,7 @@ public class PoolGame extends Image {
         shooter2TextField = new javax.swing.JTextField();
         breaker1RadioButton = new javax.swing.JRadioButton();
         javax.swing.JRadioButton breaker2RadioButton = new javax.swing.JRadioButton();
+        computerCheckBox = new javax.swing.JCheckBox();
         javax.swing.JButton startMultiplayerButton = new javax.swing.JButton();
         comboBox1 = new javax.swing.JComboBox();
         comboBox2 = new javax.swing.JComboBox();
@@ -993,11 +1095,27 @@ public class PoolGame extends Image {
         gridBagConstraints = new java.awt.GridBagConstraints();
         gridBagConstraints.gridx = 2;
         gridBagConstraints.gridy = 3;
-        gridBagConstraints.gridwidth = 2;
         gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
         gridBagConstraints.insets = new java.awt.Insets(5, 5, 5, 5);
         nameChooserPanel.add(breaker2RadioButton, gridBagConstraints);
 
+        computerCheckBox.setFont(new java.awt.Font("Trebuchet MS", 0, 14));
+        computerCheckBox.setText("Computer");
+        computerCheckBox.setToolTipText("The second shooter is played by the computer");
+        computerCheckBox.setName("computerCheckBox"); // NOI18N
+        computerCheckBox.setOpaque(false);
+        computerCheckBox.addActionListener(new java.awt.event.ActionListener() {
+            public void actionPerformed(java.awt.event.ActionEvent evt) {
+                computerCheckBoxActionPerformed(evt);
+            }
+        });
+        gridBagConstraints = new java.awt.GridBagConstraints();
+        gridBagConstraints.gridx = 3;
+        gridBagConstraints.gridy = 3;
+        gridBagConstraints.anchor = java.awt.GridBagConstraints.WEST;
+        gridBagConstraints.insets = new java.awt.Insets(5, 10, 5, 0);
+        nameChooserPanel.add(computerCheckBox, gridBagConstraints);
+
         startMultiplayerButton.setFont(new java.awt.Font("Trebuchet MS", 0, 14));
         startMultiplayerButton.setText("Start!");
         startMultiplayerButton.setName("startMultiplayerButton"); // NOI18N
@@ -1458,7 +1576,12 @@ public class PoolGame extends Image {
             Cue.Color color1 = Cue.Color.values()[this.comboBox1.getSelectedIndex()];
             Cue.Color color2 = Cue.Color.values()[this.comboBox2.getSelectedIndex()];
             GameManager gm = new GameManager(this.shooter1TextField.getText(), this.shooter2TextField.getText(), breaker, color1, color2);
-            new EightBallPoolManager(gm);
+            if (this.computerCheckBox.isSelected()) {
+                new EightBallPoolManager(gm, new ComputerPlayer(TableGeometry.STANDARD, this.settings),
+                        ComputerPlayer.DEFAULT_BUDGET);
+            } else {
+                new EightBallPoolManager(gm);
+            }
         }
 }//GEN-LAST:event_startMultiplayerButtonActionPerformed
 
@@ -1476,6 +1599,12 @@ public class PoolGame extends Image {
         }
     }
 
+    private void computerCheckBoxActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_computerCheckBoxActionPerformed
+        if (this.computerCheckBox.isSelected() && this.shooter2TextField.getText().isEmpty()) {
+            this.shooter2TextField.setText(COMPUTER_NAME);
+        }
+}//GEN-LAST:event_computerCheckBoxActionPerformed
+
     private void comboBox1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_comboBox1ActionPerformed
         this.updateCuePreview(1);
     }//GEN-LAST:event_comboBox1ActionPerformed
@@ -1537,6 +1666,7 @@ public class PoolGame extends Image {
     private javax.swing.JLabel arrowLabel;
     private javax.swing.JRadioButton breaker1RadioButton;
     private javax.swing.JLabel cProjectsURL;
+    private javax.swing.JCheckBox computerCheckBox;
     private javax.swing.JComboBox comboBox1;
     private javax.swing.JComboBox comboBox2;
     private javax.swing.JLabel cuePreview1;
@@ -5,8 +5,8 @@ import media.support.Image;
 
 /**
  * La classe <code>PoolTable</code> modella un tavolo da biliardo. <br>
- * La classe si occupa di posizionare le palle da biliardo sul tavolo, di coordinare i loro movimenti e
- * di monitorare le collisioni tra di esse e con i bordi.
+ * La classe si occupa di visualizzare le palle da biliardo sul tavolo e di scandire nel tempo reale la
+ * simulazione eseguita da <code>TableEngine</code>, osservandone collisioni ed entrate in buca.
  * @author Oneiros
  */
 public class PoolTable {
@@ -15,84 +15,117 @@ public class PoolTable {
     public static final double FRICTION = 0.007;
     /** Le dimensioni del tavolo */
     public static final java.awt.Dimension TABLE_SIZE = new java.awt.Dimension(800, 440);
+    /** La durata in nanosecondi di uno "step" della simulazione (frequenza predefinita: 100 step al secondo) */
+    public static final long STEP_DURATION = 10000000L;
+    /** Il massimo ritardo in nanosecondi che la simulazione può accumulare prima di rallentare */
+    public static final long MAX_LAG = 25 * STEP_DURATION;
     /** Le 16 palle da biliardo */
     protected PoolBall[] balls;
     /** L'immagine del tavolo */
     protected Image image;
+    /** Il modello fisico del tavolo */
+    protected final TableEngine engine;
+    /** Le impostazioni del motore fisico con le quali è stato creato il tavolo */
+    private final TableSettings settings;
     private PoolGame.PoolManager poolManager;
+    private final TableEngine.Listener engineListener = new TableEngine.Listener() {
+
+        @Override
+        public void ballMoved(int pBall) {
+            balls[pBall].setLocation(engine.getX(pBall), engine.getY(pBall));
+        }
+
+        @Override
+        public void ballsCollided(int pBall, int pSecondBall, double pStrength) {
+            balls[pBall].hitSound(pStrength);
+        }
+
+        @Override
+        public void cushionHit(int pBall, double pSpeed) {
+            balls[pBall].cushionSound(pSpeed);
+        }
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+            PoolBall ball = balls[pBall];
+            ball.image.setVisible(false);
+            poolManager.pocket(pBall, pWith, pPocket);
+            if (poolManager.chamber.add(ball)) {
+                image.remove(ball.image);
+            }
+        }
+    };
     private final Thread ballsMovesThread = new Thread("BallsMovesThread") {
 
-        private int firstTouchedBall;
+        /** Il tempo trascorso dall'inizio dell'ultimo salto delle traiettorie, espresso in "step" */
+        private double flightTime;
 
+        /**
+         * Esegue la simulazione a passo fisso: il tempo reale trascorso viene accumulato tramite
+         * <code>System.nanoTime()</code> e consumato in step di durata <code>STEP_DURATION</code>.
+         * L'esito della simulazione dipende quindi solo dal numero di step eseguiti e non dalla
+         * precisione di <code>sleep</code> o dal carico della macchina.
+         */
         @Override
         public void run() {
             boolean ballsAreMoving = true;
-            this.firstTouchedBall = 0;
+            long accumulator = 0;
+            long lastTime = System.nanoTime();
+            this.flightTime = 0;
             while (ballsAreMoving) {
-                ballsAreMoving = false;
-                for (PoolBall ball : balls) {
-                    if (ball.hasSpeed()) {
-                        ballsAreMoving = true;
-                        if (!poolManager.chamber.contains(ball)) {
-                            ball.move(PoolTable.FRICTION);
-                            if (!checkPocketEntering(ball)) {
-                                checkBallsCollisions(ball);
-                                checkEdgesCollisions(ball);
-                            }
-                        }
-                    }
+                long now = System.nanoTime();
+                accumulator = Math.min(accumulator + now - lastTime, MAX_LAG);
+                lastTime = now;
+                while (ballsAreMoving && accumulator >= STEP_DURATION) {
+                    ballsAreMoving = this.step();
+                    accumulator -= STEP_DURATION;
                 }
                 try {
-                    sleep(10);
+                    sleep((STEP_DURATION - accumulator) / 1000000L);
                 } catch (InterruptedException ex) {
                 }
             }
             poolManager.setNextTurn();
         }
 
-        private void checkBallsCollisions(PoolBall pBall) {
-            for (PoolBall secondBall : balls) {
-                if (pBall != secondBall && pBall.isTouching(secondBall) && !poolManager.chamber.contains(secondBall)) {
-                    if (pBall.getNumber() == 0 && this.firstTouchedBall == 0) {
-                        this.firstTouchedBall = secondBall.getNumber();
+        /**
+         * Esegue uno step della simulazione suddividendolo nei sotto-step delle impostazioni del tavolo, a
+         * loro volta suddivisi se sono attivi i sotto-step adattivi (vedi
+         * {@link TableSettings#setMaxDisplacement(double)}). Se il motore ha saltato le traiettorie delle palle
+         * (vedi {@link TableEngine#setFastForward(boolean)}), le palle vengono invece spostate di uno step lungo
+         * le traiettorie saltate.
+         * @return <code>true</code> se al termine dello step ci sono ancora palle in movimento, comprese
+         *         quelle in buca che stanno rotolando all'interno del tavolo;<br>
+         *         <code>false</code> altrimenti.
+         */
+        private boolean step() {
+            boolean ballsAreMoving = false;
+            double flight = engine.getFlightDuration();
+            if (this.flightTime < flight) {
+                this.flightTime = Math.min(flight, this.flightTime + 1);
+                for (int i = 0; i < balls.length; i++) {
+                    if (engine.isFlying(i)) {
+                        balls[i].setLocation(engine.getFlightX(i, this.flightTime), engine.getFlightY(i, this.flightTime));
                     }
-                    pBall.collideWith(secondBall);
                 }
-            }
-        }
-
-        private void checkEdgesCollisions(PoolBall pBall) {
-            for (int j = 0; j < Cushion.values().length; j++) {
-                if (Cushion.values()[j].getWall().isTouching(pBall)) {
-                    Wall closestWall = Cushion.values()[j].getWall();
-                    for (int k = j + 1; k < Cushion.values().length; k++) {
-                        Wall secondWall = Cushion.values()[k].getWall();
-                        if (secondWall.getPenetration(pBall) > closestWall.getPenetration(pBall)) {
-                            closestWall = secondWall;
-                        }
+                ballsAreMoving = this.flightTime < flight;
+            } else {
+                int substeps = settings.getSubsteps();
+                for (int i = 0; i < substeps; i++) {
+                    ballsAreMoving = engine.advance(1.0 / substeps);
+                    if (!ballsAreMoving) {
+                        // I sotto-step successivi annullerebbero un eventuale salto prima che venga mostrato
+                        break;
                     }
-                    pBall.collideWith(closestWall);
-                    for (int e = 0; e < Cushion.values().length; e++) {
-                        Cushion.values()[e].getWall().moveAway(pBall);
-                    }
-                    break;
                 }
+                ballsAreMoving = ballsAreMoving || this.flightTime < engine.getFlightDuration();
             }
-        }
-
-        private boolean checkPocketEntering(PoolBall pBall) {
-            for (Pocket p : Pocket.values()) {
-                if (pBall.getLocation().distance(p.getLocation()) <= Sphere2D.BALL_SIZE / 2) {
-                    pBall.image.setVisible(false);
-                    pBall.stop();
-                    poolManager.pocket(pBall.getNumber(), this.firstTouchedBall, p.ordinal());
-                    if (poolManager.chamber.add(pBall)) {
-                        image.remove(pBall.image);
-                    }
+            for (int i = engine.nextPocketed(0); i >= 0; i = engine.nextPocketed(i + 1)) {
+                if (balls[i].hasSpeed()) {
                     return true;
                 }
             }
-            return false;
+            return ballsAreMoving;
         }
     };
 
@@ -145,20 +178,23 @@ public class PoolTable {
         protected int x2;
         /** Le coordinata <code>y</code> del secondo punto estremale. */
         protected int y2;
+        private final Wall wall;
 
         private Cushion(int pX1, int pY1, int pX2, int pY2) {
             this.x1 = pX1;
             this.y1 = pY1;
             this.x2 = pX2;
             this.y2 = pY2;
+            this.wall = new Wall(new Point(x1, y1), new Point(x2, y2));
         }
 
         /**
-         * Restituisce il <code>Wall</code> corrispondente al <code>Cushion</code>.
+         * Restituisce il <code>Wall</code> corrispondente al <code>Cushion</code>. Il muro viene creato una
+         * sola volta ed è condiviso: non deve essere modificato.
          * @return Il <code>Wall</code> corrispondente al <code>Cushion</code>
          */
         protected Wall getWall() {
-            return new Wall(new Point(x1, y1), new Point(x2, y2));
+            return this.wall;
         }
     }
 
@@ -189,6 +225,22 @@ public class PoolTable {
         protected Point getLocation() {
             return new Point(this.x, this.y);
         }
+
+        /**
+         * Restituisce la coordinata <code>x</code> del centro della buca.
+         * @return La coordinata <code>x</code> del centro della buca
+         */
+        protected int getX() {
+            return this.x;
+        }
+
+        /**
+         * Restituisce la coordinata <code>y</code> del centro della buca.
+         * @return La coordinata <code>y</code> del centro della buca
+         */
+        protected int getY() {
+            return this.y;
+        }
     }
 
     /**
@@ -249,23 +301,52 @@ public class PoolTable {
     }
 
     /**
-     * Crea ed inizializza un tavolo da biliardo.
+     * Crea ed inizializza un tavolo da biliardo con le impostazioni predefinite del motore fisico.
      * @param pPoolManager Un <code>PoolManager</code> che gestisce le regole di gioco
      * @param pImage Un'immagine da utilizzare per il tavolo
      */
     public PoolTable(PoolGame.PoolManager pPoolManager, Image pImage) {
+        this(pPoolManager, pImage, new TableSettings());
+    }
+
+    /**
+     * Crea ed inizializza un tavolo da biliardo.
+     * @param pPoolManager Un <code>PoolManager</code> che gestisce le regole di gioco
+     * @param pImage Un'immagine da utilizzare per il tavolo
+     * @param pSettings Le impostazioni del motore fisico, che vengono copiate
+     */
+    public PoolTable(PoolGame.PoolManager pPoolManager, Image pImage, TableSettings pSettings) {
         this.image = pImage;
-        this.balls = new PoolBall[16];
-        this.balls[0] = new PoolBall(TABLE_SIZE.height / 2, TABLE_SIZE.height / 2, 0);
-        this.image.add(this.balls[0].image);
-        for (int i = 1; i < this.balls.length; i++) {
-            this.balls[i] = new PoolBall(new Point(Triangle.values()[i - 1].getLocation()), i);
+        this.settings = new TableSettings(pSettings);
+        this.engine = new TableEngine();
+        this.settings.configure(this.engine);
+        this.balls = new PoolBall[TableEngine.BALLS];
+        for (int i = 0; i < this.balls.length; i++) {
+            this.balls[i] = new PoolBall(this.engine.getX(i), this.engine.getY(i), i);
             this.image.add(this.balls[i].image);
         }
         for (PoolBall j : this.balls) {
             j.image.repaint();
         }
         this.poolManager = pPoolManager;
+        this.engine.addListener(this.engineListener);
+    }
+
+    /**
+     * Restituisce una copia delle impostazioni del motore fisico con le quali è stato creato il tavolo.
+     * @return Le impostazioni del motore fisico
+     */
+    public TableSettings getSettings() {
+        return new TableSettings(this.settings);
+    }
+
+    /**
+     * Riposiziona la palla bianca in <code>pLocation</code>, rimettendola in gioco se era in buca.
+     * @param pLocation La nuova posizione del centro della palla bianca
+     */
+    public void setWhiteBallLocation(Point pLocation) {
+        this.engine.setBallLocation(0, pLocation.x, pLocation.y);
+        this.balls[0].setLocation(pLocation);
     }
 
     /**
@@ -275,7 +356,25 @@ public class PoolTable {
      * @param pAngle L'angolazione con la quale è stata colpita la palla bianca
      */
     public void strike(double pStrenght, double pAngle) {
-        this.balls[0].speed.setPolarChoords(pStrenght, pAngle);
+        this.engine.strike(pStrenght, pAngle);
+        this.ballsMovesThread.run();
+    }
+
+    /**
+     * Definisce velocità, angolazione e rotazione della palla bianca dando avvio al movimento della palla
+     * e di tutte quelle che verranno colpite. Se il modello della rotazione non è attivo (vedi
+     * {@link TableSettings#setSpinEnabled(boolean)}) la rotazione viene ignorata.
+     * @param pStrenght La forza con la quale è stata colpita la palla bianca
+     * @param pAngle L'angolazione con la quale è stata colpita la palla bianca
+     * @param pFollow La distanza verticale dal centro del punto colpito, tra <code>-1</code> e <code>1</code>
+     * @param pEnglish La distanza orizzontale dal centro del punto colpito, tra <code>-1</code> e <code>1</code>
+     */
+    public void strike(double pStrenght, double pAngle, double pFollow, double pEnglish) {
+        if (this.engine.isSpinEnabled()) {
+            this.engine.strike(pStrenght, pAngle, pFollow, pEnglish);
+        } else {
+            this.engine.strike(pStrenght, pAngle);
+        }
         this.ballsMovesThread.run();
     }
 }
@@ -0,0 +1,391 @@
+package pool;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * La classe <code>SafetyEvaluator</code> valuta un insieme di tiri candidati tenendo conto della risposta
+ * dell'avversario: ogni candidato viene simulato e il turno viene concluso con le regole di
+ * <code>GameManager</code>; se il turno passa all'avversario, viene cercata la sua miglior risposta tra un
+ * insieme ridotto di tiri. Il punteggio di un candidato è quindi la probabilità di vittoria stimata del
+ * giocatore di turno dopo il proprio tiro e la miglior risposta avversaria, per cui un tiro che non imbuca
+ * ma lascia all'avversario una situazione difficile ("safety") può valere più di un tiro rischioso.
+ * <br><br>
+ * I tiri vengono simulati attraverso una <code>ShotCache</code>, e la miglior risposta di ogni situazione
+ * viene memorizzata in una tabella di trasposizione: situazioni raggiunte da candidati diversi vengono
+ * valutate una sola volta. I candidati e le risposte vengono suddivisi tra i thread di un
+ * <code>ForkJoinPool</code>.
+ * @author Oneiros
+ */
+public class SafetyEvaluator implements CacheMetrics {
+
+    /** Il numero di angolazioni delle risposte dell'avversario */
+    public static final int REPLY_ANGLES = 36;
+    /** Le forze delle risposte dell'avversario */
+    protected static final double[] REPLY_STRENGTHS = {5, 10, 15};
+    /** Il numero di tiri al di sotto del quale un gruppo non viene ulteriormente suddiviso */
+    public static final int THRESHOLD = 4;
+    private final TableGeometry geometry;
+    private final TableEngine.Mode mode;
+    private final ShotCache cache;
+    private final ForkJoinPool pool;
+    private final java.util.LinkedHashMap<Long, Double> responses;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    /**
+     * La valutazione di un tiro candidato.
+     */
+    public static class Evaluation {
+
+        private final double strength;
+        private final double angle;
+        private double score;
+        private double reply = Double.NaN;
+
+        private Evaluation(double pStrength, double pAngle) {
+            this.strength = pStrength;
+            this.angle = pAngle;
+        }
+
+        /**
+         * Restituisce la forza del tiro.
+         * @return La forza del tiro
+         */
+        public double getStrength() {
+            return this.strength;
+        }
+
+        /**
+         * Restituisce l'angolazione del tiro.
+         * @return L'angolazione del tiro in radianti
+         */
+        public double getAngle() {
+            return this.angle;
+        }
+
+        /**
+         * Restituisce il punteggio del tiro: la probabilità di vittoria stimata del giocatore che tira,
+         * dopo la miglior risposta dell'avversario.
+         * @return Il punteggio, tra <code>0</code> e <code>1</code>
+         */
+        public double getScore() {
+            return this.score;
+        }
+
+        /**
+         * Restituisce il valore della miglior risposta dell'avversario, dal suo punto di vista.
+         * @return Il valore della risposta, oppure <code>NaN</code> se il turno non passa all'avversario
+         */
+        public double getReply() {
+            return this.reply;
+        }
+    }
+
+    /**
+     * Il tavolo e la partita riutilizzati da un singolo thread.
+     */
+    private class Worker extends TableEngine.ListenerAdapter {
+
+        private TableEngine engine;
+        private final GameManager game = new GameManager("A", "B", 1);
+
+        /**
+         * Ripristina la situazione <code>pData</code>, esegue il tiro e conclude il turno.
+         * @return Il risultato del turno
+         */
+        private GameManager.Result play(double[] pData, double pStrength, double pAngle) {
+            int split = pData.length - GameManager.SNAPSHOT_LENGTH;
+            int balls = (split - 1) / 5;
+            if (this.engine == null || this.engine.getState().size() != balls) {
+                this.engine = new TableEngine(geometry, balls);
+                this.engine.setMode(mode);
+                this.engine.addListener(this);
+            }
+            this.engine.restore(pData, 0);
+            this.game.restore(pData, split);
+            cache.simulate(this.engine, pStrength, pAngle);
+            return ComputerPlayer.endTurn(this.engine, this.game);
+        }
+
+        /**
+         * Restituisce il valore della situazione raggiunta dall'ultimo tiro per il giocatore che lo ha
+         * eseguito.
+         */
+        private double getValue(GameManager.Result pResult, GameManager.Shooter pShooter) {
+            if (pResult == GameManager.Result.WON) {
+                return 1;
+            } else if (pResult == GameManager.Result.LOST) {
+                return 0;
+            }
+            return ComputerPlayer.evaluate(this.game, pShooter);
+        }
+
+        private GameManager.Shooter getShooter(double[] pData) {
+            return pData[pData.length - GameManager.SNAPSHOT_LENGTH] == 1 ? this.game.shooter1 : this.game.shooter2;
+        }
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+            this.game.pocket(pBall, pWith, pPocket);
+        }
+    }
+
+    /**
+     * Valuta i candidati di un intervallo, suddividendolo se è troppo grande.
+     */
+    private class CandidateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final double[] data;
+        private final Evaluation[] evaluations;
+        private final int from, to;
+
+        private CandidateTask(double[] pData, Evaluation[] pEvaluations, int pFrom, int pTo) {
+            this.data = pData;
+            this.evaluations = pEvaluations;
+            this.from = pFrom;
+            this.to = pTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                for (int i = this.from; i < this.to; i++) {
+                    this.evaluate(this.evaluations[i]);
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new CandidateTask(this.data, this.evaluations, this.from, middle),
+                        new CandidateTask(this.data, this.evaluations, middle, this.to));
+            }
+        }
+
+        private void evaluate(Evaluation pEvaluation) {
+            Worker worker = workers.get();
+            GameManager.Shooter shooter = worker.getShooter(this.data);
+            GameManager.Result result = worker.play(this.data, pEvaluation.strength, pEvaluation.angle);
+            pEvaluation.score = worker.getValue(result, shooter);
+            if (result == GameManager.Result.WON || result == GameManager.Result.LOST
+                    || worker.game.currentShooter == shooter) {
+                return;
+            }
+            double[] next = new double[this.data.length];
+            worker.engine.snapshot(next, 0);
+            worker.game.snapshot(next, next.length - GameManager.SNAPSHOT_LENGTH);
+            pEvaluation.reply = getResponse(next);
+            pEvaluation.score = 1 - pEvaluation.reply;
+        }
+    }
+
+    /**
+     * Cerca la miglior risposta in un intervallo dei tiri di risposta, suddividendolo se è troppo grande.
+     */
+    private class ReplyTask extends RecursiveTask<Double> {
+
+        private static final long serialVersionUID = 1L;
+        private final double[] data;
+        private final int from, to;
+
+        private ReplyTask(double[] pData, int pFrom, int pTo) {
+            this.data = pData;
+            this.from = pFrom;
+            this.to = pTo;
+        }
+
+        @Override
+        protected Double compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                Worker worker = workers.get();
+                double best = 0;
+                for (int i = this.from; i < this.to; i++) {
+                    GameManager.Shooter shooter = worker.getShooter(this.data);
+                    double strength = REPLY_STRENGTHS[i % REPLY_STRENGTHS.length];
+                    double angle = 2 * Math.PI * (i / REPLY_STRENGTHS.length) / REPLY_ANGLES;
+                    GameManager.Result result = worker.play(this.data, strength, angle);
+                    best = Math.max(best, worker.getValue(result, shooter));
+                }
+                return best;
+            }
+            int middle = (this.from + this.to) >>> 1;
+            ReplyTask left = new ReplyTask(this.data, this.from, middle);
+            left.fork();
+            double right = new ReplyTask(this.data, middle, this.to).compute();
+            return Math.max(left.join(), right);
+        }
+    }
+
+    /**
+     * Crea ed inizializza un valutatore che utilizza tutti i processori disponibili.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione
+     * @param pCache La cache degli esiti dei tiri, eventualmente condivisa
+     * @param pCapacity Il numero massimo di risposte memorizzate nella tabella di trasposizione
+     */
+    public SafetyEvaluator(TableGeometry pGeometry, TableEngine.Mode pMode, ShotCache pCache, int pCapacity) {
+        this(pGeometry, pMode, pCache, pCapacity, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea ed inizializza un valutatore che utilizza <code>pParallelism</code> thread.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione
+     * @param pCache La cache degli esiti dei tiri, eventualmente condivisa
+     * @param pCapacity Il numero massimo di risposte memorizzate nella tabella di trasposizione
+     * @param pParallelism Il numero di thread
+     */
+    public SafetyEvaluator(TableGeometry pGeometry, TableEngine.Mode pMode, ShotCache pCache,
+            final int pCapacity, int pParallelism) {
+        this.geometry = pGeometry;
+        this.mode = pMode;
+        this.cache = pCache;
+        this.pool = new ForkJoinPool(pParallelism);
+        this.responses = new java.util.LinkedHashMap<Long, Double>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<Long, Double> pEldest) {
+                if (this.size() > pCapacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Valuta i tiri candidati <code>(pStrengths[i], pAngles[i])</code> per il giocatore di turno. Né il
+     * tavolo né la partita vengono modificati.
+     * @param pEngine Il tavolo, fermo
+     * @param pGame La partita, con il turno già iniziato
+     * @param pStrengths Le forze dei candidati
+     * @param pAngles Le angolazioni dei candidati
+     * @return Le valutazioni dei candidati, nello stesso ordine
+     */
+    public Evaluation[] evaluate(TableEngine pEngine, GameManager pGame, double[] pStrengths, double[] pAngles) {
+        if (pStrengths.length != pAngles.length) {
+            throw new IllegalArgumentException("Strengths and angles must have the same length");
+        }
+        TableSnapshot snapshot = new TableSnapshot(pEngine, pGame);
+        snapshot.save();
+        Evaluation[] evaluations = new Evaluation[pStrengths.length];
+        for (int i = 0; i < evaluations.length; i++) {
+            evaluations[i] = new Evaluation(pStrengths[i], pAngles[i]);
+        }
+        this.pool.invoke(new CandidateTask(snapshot.getData(), evaluations, 0, evaluations.length));
+        return evaluations;
+    }
+
+    /**
+     * Restituisce la valutazione con il punteggio più alto.
+     * @param pEvaluations Le valutazioni
+     * @return La valutazione migliore
+     */
+    public static Evaluation getBest(Evaluation[] pEvaluations) {
+        Evaluation best = null;
+        for (Evaluation e : pEvaluations) {
+            if (best == null || e.score > best.score) {
+                best = e;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Restituisce il valore della miglior risposta nella situazione <code>pData</code>, dal punto di vista
+     * del giocatore di turno, cercandolo prima nella tabella di trasposizione.
+     */
+    private double getResponse(double[] pData) {
+        Long key = getKey(pData);
+        Double value = this.get(key);
+        if (value == null) {
+            value = new ReplyTask(pData, 0, REPLY_ANGLES * REPLY_STRENGTHS.length).compute();
+            this.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * Calcola la chiave di una situazione di gioco: l'hash della disposizione delle palle (con lo stesso
+     * passo di <code>TableEngine.getHash()</code>) combinato con lo stato della partita.
+     */
+    private static long getKey(double[] pData) {
+        int split = pData.length - GameManager.SNAPSHOT_LENGTH;
+        int balls = (split - 1) / 5;
+        long key = 0;
+        for (int i = 0; i < balls; i++) {
+            key ^= phisic.BallHash.getKey(i, pData[i], pData[balls + i], pData[4 * balls + i] != 0,
+                    TableEngine.HASH_QUANTUM);
+        }
+        for (int i = split; i < pData.length; i++) {
+            key = phisic.BallHash.mix(key + (long) pData[i]);
+        }
+        return key;
+    }
+
+    /**
+     * Svuota la tabella di trasposizione e ne azzera le statistiche. La cache dei tiri non viene svuotata.
+     */
+    public synchronized void clear() {
+        this.responses.clear();
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    /**
+     * Termina i thread del valutatore, che non potrà più essere utilizzato.
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    private synchronized Double get(Long pKey) {
+        Double value = this.responses.get(pKey);
+        if (value != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+        return value;
+    }
+
+    private synchronized void put(Long pKey, Double pValue) {
+        this.responses.put(pKey, pValue);
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return this.responses.size();
+    }
+
+    @Override
+    public synchronized double getHitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+}
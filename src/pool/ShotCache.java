@@ -0,0 +1,211 @@
+package pool;
+
+/**
+ * La classe <code>ShotCache</code> memorizza l'esito dei tiri già simulati, in modo che le richieste
+ * ripetute con la stessa disposizione del tavolo e gli stessi parametri di tiro non debbano passare dal
+ * motore fisico. Ogni esito è identificato dall'hash del tavolo (vedi <code>TableEngine.getHash()</code>)
+ * e dai parametri del tiro quantizzati con passo {@link #STRENGTH_QUANTUM} e {@link #ANGLE_QUANTUM}: tiri
+ * che cadono nella stessa cella condividono l'esito del primo tiro simulato.
+ * <br><br>
+ * La cache contiene al massimo un numero prefissato di esiti; quando è piena viene rimosso quello
+ * utilizzato meno di recente. Può essere condivisa tra più thread ed è significativa solo per tavoli con
+ * la stessa geometria e lo stesso numero di palle.
+ * <br><br>
+ * Se viene fornito il gruppo di simmetria del tavolo, disposizioni e tiri vengono ricondotti alla loro
+ * forma canonica prima della ricerca: un unico esito memorizzato serve fino a quattro disposizioni
+ * speculari.
+ * @author Oneiros
+ */
+public class ShotCache implements CacheMetrics {
+
+    /** Il passo con il quale viene quantizzata la forza del tiro */
+    public static final double STRENGTH_QUANTUM = 0.01;
+    /** Il passo in radianti con il quale viene quantizzata l'angolazione del tiro */
+    public static final double ANGLE_QUANTUM = 0.0001;
+    private final java.util.LinkedHashMap<Long, Entry> entries;
+    private final TableSymmetry symmetry;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * L'esito di un tiro: l'istantanea del tavolo al termine del tiro e le palle cadute in buca, nell'ordine
+     * in cui sono cadute, come terne (palla, prima palla toccata, buca).
+     */
+    private static class Entry {
+
+        private final double[] snapshot;
+        private final int[] pockets;
+
+        private Entry(double[] pSnapshot, int[] pPockets) {
+            this.snapshot = pSnapshot;
+            this.pockets = pPockets;
+        }
+    }
+
+    /**
+     * Registra le entrate in buca avvenute durante la simulazione di un tiro.
+     */
+    private static class Recorder extends TableEngine.ListenerAdapter {
+
+        private int[] pockets = new int[0];
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+            this.pockets = java.util.Arrays.copyOf(this.pockets, this.pockets.length + 3);
+            this.pockets[this.pockets.length - 3] = pBall;
+            this.pockets[this.pockets.length - 2] = pWith;
+            this.pockets[this.pockets.length - 1] = pPocket;
+        }
+    }
+
+    /**
+     * Crea ed inizializza una cache vuota che non sfrutta le simmetrie del tavolo.
+     * @param pCapacity Il numero massimo di esiti memorizzati
+     */
+    public ShotCache(int pCapacity) {
+        this(pCapacity, null);
+    }
+
+    /**
+     * Crea ed inizializza una cache vuota.
+     * @param pCapacity Il numero massimo di esiti memorizzati
+     * @param pSymmetry Il gruppo di simmetria del tavolo, oppure <code>null</code>
+     */
+    public ShotCache(final int pCapacity, TableSymmetry pSymmetry) {
+        this.symmetry = pSymmetry;
+        this.entries = new java.util.LinkedHashMap<Long, Entry>(16, 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<Long, Entry> pEldest) {
+                if (this.size() > pCapacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Esegue il tiro sul tavolo <code>pEngine</code>, che deve essere fermo, portandolo nella situazione
+     * finale. Se l'esito del tiro è già presente nella cache il tavolo viene ripristinato direttamente
+     * nello stato finale e agli osservatori vengono notificate soltanto le entrate in buca; altrimenti il
+     * tiro viene simulato e il suo esito memorizzato.
+     * @param pEngine Il tavolo sul quale eseguire il tiro
+     * @param pStrength La forza con la quale viene colpita la palla bianca
+     * @param pAngle L'angolazione con la quale viene colpita la palla bianca
+     * @return <code>true</code> se l'esito è stato trovato nella cache;<br>
+     *         <code>false</code> se il tiro è stato simulato.
+     */
+    public boolean simulate(TableEngine pEngine, double pStrength, double pAngle) {
+        TableSymmetry.Transform transform = TableSymmetry.Transform.IDENTITY;
+        long hash = pEngine.getHash();
+        if (this.symmetry != null) {
+            transform = this.symmetry.getCanonical(pEngine.getState());
+            hash = this.symmetry.getHash(pEngine.getState(), transform);
+        }
+        Long key = getKey(hash, pStrength, transform.transformAngle(pAngle));
+        Entry entry = this.get(key);
+        if (entry != null) {
+            pEngine.restore(entry.snapshot, 0);
+            if (transform != TableSymmetry.Transform.IDENTITY) {
+                this.symmetry.transform(pEngine.getState(), transform);
+                pEngine.stateChanged();
+            }
+            for (int i = 0; i < entry.pockets.length; i += 3) {
+                int pocket = entry.pockets[i + 2];
+                if (transform != TableSymmetry.Transform.IDENTITY) {
+                    pocket = this.symmetry.transformPocket(pocket, transform);
+                }
+                pEngine.fireBallPocketed(entry.pockets[i], entry.pockets[i + 1], pocket);
+            }
+            return true;
+        }
+        Recorder recorder = new Recorder();
+        pEngine.addListener(recorder);
+        try {
+            pEngine.strike(pStrength, pAngle);
+            pEngine.simulate();
+        } finally {
+            pEngine.removeListener(recorder);
+        }
+        double[] snapshot = new double[pEngine.getSnapshotLength()];
+        pEngine.snapshot(snapshot, 0);
+        if (transform != TableSymmetry.Transform.IDENTITY) {
+            this.symmetry.transform(snapshot, 0, pEngine.getState().size(), transform);
+            for (int i = 0; i < recorder.pockets.length; i += 3) {
+                recorder.pockets[i + 2] = this.symmetry.transformPocket(recorder.pockets[i + 2], transform);
+            }
+        }
+        this.put(key, new Entry(snapshot, recorder.pockets));
+        return false;
+    }
+
+    /**
+     * Calcola la chiave con la quale viene memorizzato l'esito di un tiro.
+     * @param pHash L'hash del tavolo prima del tiro
+     * @param pStrength La forza del tiro
+     * @param pAngle L'angolazione del tiro
+     * @return La chiave dell'esito
+     */
+    public static long getKey(long pHash, double pStrength, double pAngle) {
+        double angle = pAngle % (2 * Math.PI);
+        if (angle < 0) {
+            angle += 2 * Math.PI;
+        }
+        long strength = Math.round(pStrength / STRENGTH_QUANTUM);
+        long direction = Math.round(angle / ANGLE_QUANTUM);
+        return phisic.BallHash.mix(phisic.BallHash.mix(pHash ^ strength) + direction);
+    }
+
+    /**
+     * Svuota la cache e ne azzera le statistiche.
+     */
+    public synchronized void clear() {
+        this.entries.clear();
+        this.hits = 0;
+        this.misses = 0;
+        this.evictions = 0;
+    }
+
+    private synchronized Entry get(Long pKey) {
+        Entry entry = this.entries.get(pKey);
+        if (entry != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+        return entry;
+    }
+
+    private synchronized void put(Long pKey, Entry pEntry) {
+        this.entries.put(pKey, pEntry);
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return this.hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return this.misses;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return this.evictions;
+    }
+
+    @Override
+    public synchronized int getSize() {
+        return this.entries.size();
+    }
+
+    @Override
+    public synchronized double getHitRate() {
+        long requests = this.hits + this.misses;
+        return requests == 0 ? 0 : (double) this.hits / requests;
+    }
+}
@@ -0,0 +1,284 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>ShotGenerator</code> costruisce analiticamente i tiri "diretti" possibili in una
+ * situazione di gioco, senza simularli. Per ogni palla bersaglio ed ogni buca viene calcolata la posizione
+ * della "palla fantasma" (il punto in cui deve trovarsi la palla bianca al momento dell'urto perché la
+ * palla bersaglio parta verso la buca) e l'angolo di taglio; la coppia viene scartata se la palla bianca o
+ * la palla bersaglio, lungo il proprio percorso, urterebbero un'altra palla o una sponda.
+ * <br><br>
+ * I percorsi vengono verificati come segmenti "spessi" quanto una palla. Per le palle viene utilizzata una
+ * <code>BallGrid</code>, per cui ogni verifica esamina soltanto le celle vicine al percorso. I tiri
+ * rimasti vengono ordinati per difficoltà crescente, in modo che la ricerca e l'assistenza alla mira possano
+ * simulare soltanto i tiri plausibili. Un'istanza non può essere utilizzata da più thread
+ * contemporaneamente.
+ * @author Oneiros
+ */
+public class ShotGenerator {
+
+    /** L'angolo di taglio massimo, in radianti, oltre il quale un tiro viene scartato */
+    public static final double MAX_CUT_ANGLE = Math.toRadians(80);
+    /** Il fattore con il quale viene moltiplicata la velocità minima necessaria a raggiungere la buca */
+    public static final double SPEED_MARGIN = 1.5;
+    private static final double RADIUS = Sphere2D.BALL_SIZE / 2;
+    private static final double MIN_COS = Math.cos(MAX_CUT_ANGLE);
+    private final TableGeometry geometry;
+    private final BallGrid grid;
+    private final int[] found;
+
+    /**
+     * Un tiro diretto: la palla bersaglio, la buca ed i parametri con i quali colpire la palla bianca.
+     */
+    public static class Candidate implements Comparable<Candidate> {
+
+        private final int ball;
+        private final int pocket;
+        private final double strength;
+        private final double angle;
+        private final double cutAngle;
+        private final double difficulty;
+
+        private Candidate(int pBall, int pPocket, double pStrength, double pAngle, double pCutAngle,
+                double pDifficulty) {
+            this.ball = pBall;
+            this.pocket = pPocket;
+            this.strength = pStrength;
+            this.angle = pAngle;
+            this.cutAngle = pCutAngle;
+            this.difficulty = pDifficulty;
+        }
+
+        /**
+         * Restituisce il numero identificativo della palla bersaglio.
+         * @return La palla bersaglio
+         */
+        public int getBall() {
+            return this.ball;
+        }
+
+        /**
+         * Restituisce l'indice della buca nella quale mandare la palla bersaglio.
+         * @return L'indice della buca
+         */
+        public int getPocket() {
+            return this.pocket;
+        }
+
+        /**
+         * Restituisce la forza con la quale colpire la palla bianca.
+         * @return La forza del tiro
+         */
+        public double getStrength() {
+            return this.strength;
+        }
+
+        /**
+         * Restituisce l'angolazione con la quale colpire la palla bianca, come in
+         * <code>TableEngine.strike</code>.
+         * @return L'angolazione del tiro in radianti
+         */
+        public double getAngle() {
+            return this.angle;
+        }
+
+        /**
+         * Restituisce l'angolo di taglio: l'angolo tra la direzione della palla bianca e quella che prende
+         * la palla bersaglio dopo l'urto.
+         * @return L'angolo di taglio in radianti
+         */
+        public double getCutAngle() {
+            return this.cutAngle;
+        }
+
+        /**
+         * Restituisce la difficoltà del tiro: la lunghezza complessiva dei due percorsi, misurata in
+         * diametri di palla, divisa per il coseno dell'angolo di taglio.
+         * @return La difficoltà del tiro
+         */
+        public double getDifficulty() {
+            return this.difficulty;
+        }
+
+        @Override
+        public int compareTo(Candidate pOther) {
+            return Double.compare(this.difficulty, pOther.difficulty);
+        }
+    }
+
+    /**
+     * Crea ed inizializza un generatore per un tavolo con <code>pBalls</code> palle.
+     * @param pGeometry La geometria del tavolo
+     * @param pBalls Il numero di palle
+     */
+    public ShotGenerator(TableGeometry pGeometry, int pBalls) {
+        this.geometry = pGeometry;
+        this.grid = new BallGrid(pGeometry.width, pGeometry.height, Sphere2D.BALL_SIZE, pBalls);
+        this.found = new int[pBalls];
+    }
+
+    /**
+     * Genera i tiri diretti del giocatore di turno di <code>pGame</code>: verso le sue palle, verso
+     * qualsiasi palla tranne la 8 se i tipi non sono ancora stati assegnati, oppure verso la palla 8 e la
+     * buca dichiarata se ha già imbucato tutte le sue palle.
+     * @param pEngine Il tavolo, fermo
+     * @param pGame La partita
+     * @return I tiri possibili, in ordine di difficoltà crescente
+     */
+    public java.util.List<Candidate> generate(TableEngine pEngine, GameManager pGame) {
+        GameManager.Shooter shooter = pGame.currentShooter;
+        java.util.BitSet targets = new java.util.BitSet();
+        int pocket = -1;
+        if (shooter.getPoints() == 7) {
+            targets.set(8);
+            pocket = pGame.getDesignatedPocket();
+        } else {
+            for (int i = 1; i < pEngine.getState().size(); i++) {
+                if (i != 8 && (shooter.getType() == GameManager.BallType.NONE || shooter.own(i))) {
+                    targets.set(i);
+                }
+            }
+        }
+        return this.generate(pEngine.getState(), targets, pocket);
+    }
+
+    /**
+     * Genera i tiri diretti verso le palle <code>pTargets</code>.
+     * @param pState Lo stato delle palle
+     * @param pTargets Le palle bersaglio; quelle già in buca vengono ignorate
+     * @param pPocket L'unica buca da considerare, oppure <code>-1</code> per considerarle tutte
+     * @return I tiri possibili, in ordine di difficoltà crescente
+     */
+    public java.util.List<Candidate> generate(BallState pState, java.util.BitSet pTargets, int pPocket) {
+        java.util.List<Candidate> candidates = new java.util.ArrayList<Candidate>();
+        if (pState.status[0] == BallState.POCKETED) {
+            return candidates;
+        }
+        this.grid.rebuild(pState);
+        TableGeometry g = this.geometry;
+        double cueX = pState.x[0];
+        double cueY = pState.y[0];
+        for (int b = pTargets.nextSetBit(0); b >= 0; b = pTargets.nextSetBit(b + 1)) {
+            if (b >= pState.size() || pState.status[b] == BallState.POCKETED) {
+                continue;
+            }
+            for (int p = 0; p < g.getPocketCount(); p++) {
+                if (pPocket >= 0 && p != pPocket) {
+                    continue;
+                }
+                // La direzione della palla bersaglio verso la buca
+                double toPocketX = g.pocketX[p] - pState.x[b];
+                double toPocketY = g.pocketY[p] - pState.y[b];
+                double d2 = Math.sqrt(toPocketX * toPocketX + toPocketY * toPocketY);
+                if (d2 <= RADIUS) {
+                    continue;
+                }
+                double ux = toPocketX / d2;
+                double uy = toPocketY / d2;
+                // La palla fantasma e la direzione della palla bianca
+                double ghostX = pState.x[b] - ux * Sphere2D.BALL_SIZE;
+                double ghostY = pState.y[b] - uy * Sphere2D.BALL_SIZE;
+                double aimX = ghostX - cueX;
+                double aimY = ghostY - cueY;
+                double d1 = Math.sqrt(aimX * aimX + aimY * aimY);
+                if (d1 == 0) {
+                    continue;
+                }
+                double cos = (aimX * ux + aimY * uy) / d1;
+                if (cos < MIN_COS) {
+                    continue;
+                }
+                // La palla bersaglio entra in buca quando il suo centro dista RADIUS dal centro della buca
+                double entryX = g.pocketX[p] - ux * RADIUS;
+                double entryY = g.pocketY[p] - uy * RADIUS;
+                if (!this.isClear(pState, cueX, cueY, ghostX, ghostY, 0, b)
+                        || !this.isClear(pState, pState.x[b], pState.y[b], entryX, entryY, 0, b)) {
+                    continue;
+                }
+                // L'attrito riduce la velocità di una frazione costante ad ogni step: per percorrere una
+                // distanza d una palla deve partire almeno con velocità d * FRICTION più la velocità minima
+                double objectSpeed = SPEED_MARGIN * ((d2 - RADIUS) * PoolTable.FRICTION + PoolTable.FRICTION * 10);
+                double strength = objectSpeed / cos + d1 * PoolTable.FRICTION;
+                if (strength > ComputerPlayer.MAX_STRENGTH) {
+                    continue;
+                }
+                strength = Math.max(ComputerPlayer.MIN_STRENGTH, strength);
+                double angle = Math.atan2(-aimY, aimX);
+                double difficulty = (d1 + d2) / Sphere2D.BALL_SIZE / cos;
+                candidates.add(new Candidate(b, p, strength, angle, Math.acos(Math.min(1, cos)), difficulty));
+            }
+        }
+        java.util.Collections.sort(candidates);
+        return candidates;
+    }
+
+    /**
+     * Determina se una palla può percorrere il segmento <code>(pX1,pY1) - (pX2,pY2)</code> senza urtare le
+     * sponde o le palle in gioco diverse da <code>pIgnore1</code> e <code>pIgnore2</code>.
+     */
+    private boolean isClear(BallState pState, double pX1, double pY1, double pX2, double pY2, int pIgnore1,
+            int pIgnore2) {
+        int count = this.grid.getAlong(pX1, pY1, pX2, pY2, Sphere2D.BALL_SIZE, this.found);
+        for (int k = 0; k < count; k++) {
+            int j = this.found[k];
+            if (j != pIgnore1 && j != pIgnore2
+                    && getSquaredDistance(pState.x[j], pState.y[j], pX1, pY1, pX2, pY2)
+                    < Sphere2D.BALL_SIZE * Sphere2D.BALL_SIZE) {
+                return false;
+            }
+        }
+        TableGeometry g = this.geometry;
+        for (int w = 0; w < g.getWallCount(); w++) {
+            if (Math.max(g.wallX1[w], g.wallX2[w]) < Math.min(pX1, pX2) - RADIUS
+                    || Math.min(g.wallX1[w], g.wallX2[w]) > Math.max(pX1, pX2) + RADIUS
+                    || Math.max(g.wallY1[w], g.wallY2[w]) < Math.min(pY1, pY2) - RADIUS
+                    || Math.min(g.wallY1[w], g.wallY2[w]) > Math.max(pY1, pY2) + RADIUS) {
+                continue;
+            }
+            if (getSquaredDistance(pX1, pY1, pX2, pY2, g.wallX1[w], g.wallY1[w], g.wallX2[w], g.wallY2[w])
+                    < RADIUS * RADIUS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce il quadrato della distanza tra il punto <code>(pX,pY)</code> ed il segmento
+     * <code>(pX1,pY1) - (pX2,pY2)</code>.
+     */
+    private static double getSquaredDistance(double pX, double pY, double pX1, double pY1, double pX2, double pY2) {
+        double dx = pX2 - pX1;
+        double dy = pY2 - pY1;
+        double length = dx * dx + dy * dy;
+        double t = length == 0 ? 0 : Math.max(0, Math.min(1, ((pX - pX1) * dx + (pY - pY1) * dy) / length));
+        double ex = pX1 + t * dx - pX;
+        double ey = pY1 + t * dy - pY;
+        return ex * ex + ey * ey;
+    }
+
+    /**
+     * Restituisce il quadrato della distanza tra i segmenti <code>(pAX1,pAY1) - (pAX2,pAY2)</code> e
+     * <code>(pBX1,pBY1) - (pBX2,pBY2)</code>: zero se si intersecano, altrimenti la minore delle distanze
+     * tra un estremo e l'altro segmento.
+     */
+    private static double getSquaredDistance(double pAX1, double pAY1, double pAX2, double pAY2,
+            double pBX1, double pBY1, double pBX2, double pBY2) {
+        double d1 = cross(pBX2 - pBX1, pBY2 - pBY1, pAX1 - pBX1, pAY1 - pBY1);
+        double d2 = cross(pBX2 - pBX1, pBY2 - pBY1, pAX2 - pBX1, pAY2 - pBY1);
+        double d3 = cross(pAX2 - pAX1, pAY2 - pAY1, pBX1 - pAX1, pBY1 - pAY1);
+        double d4 = cross(pAX2 - pAX1, pAY2 - pAY1, pBX2 - pAX1, pBY2 - pAY1);
+        if (((d1 > 0 && d2 < 0) || (d1 < 0 && d2 > 0)) && ((d3 > 0 && d4 < 0) || (d3 < 0 && d4 > 0))) {
+            return 0;
+        }
+        return Math.min(Math.min(getSquaredDistance(pAX1, pAY1, pBX1, pBY1, pBX2, pBY2),
+                getSquaredDistance(pAX2, pAY2, pBX1, pBY1, pBX2, pBY2)),
+                Math.min(getSquaredDistance(pBX1, pBY1, pAX1, pAY1, pAX2, pAY2),
+                getSquaredDistance(pBX2, pBY2, pAX1, pAY1, pAX2, pAY2)));
+    }
+
+    private static double cross(double pX1, double pY1, double pX2, double pY2) {
+        return pX1 * pY2 - pY1 * pX2;
+    }
+}
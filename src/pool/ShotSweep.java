@@ -0,0 +1,381 @@
+package pool;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * La classe <code>ShotSweep</code> valuta in parallelo una griglia fitta di tiri (angolazione, forza) a
+ * partire da una stessa situazione di gioco, classificando l'esito di ogni tiro con le regole di
+ * <code>GameManager</code>. Il risultato è una mappa che per ogni cella della griglia riporta la frequenza
+ * di ciascun esito; con più campioni per cella i parametri del tiro vengono perturbati con un rumore
+ * gaussiano, in modo da simulare l'imprecisione del giocatore.
+ * <br><br>
+ * Le celle vengono suddivise ricorsivamente tra i thread di un <code>ForkJoinPool</code>; ogni thread
+ * riutilizza sempre lo stesso tavolo e la stessa partita. Ogni gruppo di celle completato viene notificato
+ * all'eventuale {@link Listener}, per cui la mappa può essere mostrata mentre viene calcolata. Il rumore
+ * dipende solo dalla cella e dal campione, per cui il risultato non dipende dal numero di thread.
+ * <br><br>
+ * Con il motore <code>EVENT_DRIVEN</code>, una griglia di 360 angolazioni per 50 forze a partire dalla
+ * posizione di apertura richiede circa 1,4 secondi su un solo processore (misura di
+ * <code>benchmark.SweepBenchmark</code> con i parametri predefiniti).
+ * @author Oneiros
+ */
+public class ShotSweep {
+
+    /** Il numero di celle al di sotto del quale un gruppo non viene ulteriormente suddiviso */
+    public static final int THRESHOLD = 16;
+    private static final Result[] RESULTS = Result.values();
+    private final TableGeometry geometry;
+    private final TableEngine.Mode mode;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>() {
+
+        @Override
+        protected Worker initialValue() {
+            return new Worker();
+        }
+    };
+
+    /**
+     * L'enum <code>Result</code> elenca le classi nelle quali viene suddiviso l'esito di un tiro, dal
+     * punto di vista del giocatore di turno.
+     * <br><br>
+     * <code>NOTHING</code> - Nessuna palla è caduta in buca: il turno passa all'avversario;<br>
+     * <code>POTTED</code> - È stata imbucata una palla del giocatore: il giocatore tira di nuovo;<br>
+     * <code>FOUL</code> - È stata imbucata una palla, ma il turno passa all'avversario;<br>
+     * <code>SCRATCH</code> - La palla bianca è caduta in buca;<br>
+     * <code>LOST</code> - La palla 8 è caduta in buca irregolarmente: la partita è persa;<br>
+     * <code>WON</code> - La palla 8 è caduta in buca regolarmente: la partita è vinta.
+     */
+    public enum Result {
+
+        /** Nessuna palla è caduta in buca. */
+        NOTHING,
+        /** È stata imbucata una palla del giocatore. */
+        POTTED,
+        /** È stata imbucata una palla, ma il turno passa all'avversario. */
+        FOUL,
+        /** La palla bianca è caduta in buca. */
+        SCRATCH,
+        /** La palla 8 è caduta in buca irregolarmente. */
+        LOST,
+        /** La palla 8 è caduta in buca regolarmente. */
+        WON
+    }
+
+    /**
+     * L'interfaccia <code>Listener</code> permette di ricevere i risultati parziali di una scansione.
+     */
+    public interface Listener {
+
+        /**
+         * Notifica il completamento delle celle da <code>pFrom</code> (incluso) a <code>pTo</code> (escluso),
+         * numerate come in {@link Heatmap#getCell(int, int)}. Il metodo viene chiamato dai thread della
+         * scansione, anche contemporaneamente.
+         * @param pMap La mappa in corso di calcolo
+         * @param pFrom La prima cella completata
+         * @param pTo La cella successiva all'ultima completata
+         */
+        void cellsCompleted(Heatmap pMap, int pFrom, int pTo);
+    }
+
+    /**
+     * La mappa degli esiti: per ogni cella (angolazione, forza) il numero di campioni che hanno prodotto
+     * ciascuna classe di esito.
+     */
+    public static class Heatmap {
+
+        private final int angles;
+        private final int strengths;
+        private final double minStrength;
+        private final double maxStrength;
+        private final int samples;
+        private final int[] counts;
+
+        private Heatmap(int pAngles, int pStrengths, double pMinStrength, double pMaxStrength, int pSamples) {
+            this.angles = pAngles;
+            this.strengths = pStrengths;
+            this.minStrength = pMinStrength;
+            this.maxStrength = pMaxStrength;
+            this.samples = pSamples;
+            this.counts = new int[pAngles * pStrengths * RESULTS.length];
+        }
+
+        /**
+         * Restituisce il numero di angolazioni della griglia, distribuite uniformemente sull'angolo giro.
+         * @return Il numero di angolazioni
+         */
+        public int getAngles() {
+            return this.angles;
+        }
+
+        /**
+         * Restituisce il numero di forze della griglia.
+         * @return Il numero di forze
+         */
+        public int getStrengths() {
+            return this.strengths;
+        }
+
+        /**
+         * Restituisce il numero di campioni simulati per ogni cella.
+         * @return Il numero di campioni
+         */
+        public int getSamples() {
+            return this.samples;
+        }
+
+        /**
+         * Restituisce l'angolazione della riga <code>pAngle</code> della griglia.
+         * @param pAngle L'indice dell'angolazione
+         * @return L'angolazione in radianti
+         */
+        public double getAngle(int pAngle) {
+            return 2 * Math.PI * pAngle / this.angles;
+        }
+
+        /**
+         * Restituisce la forza della colonna <code>pStrength</code> della griglia.
+         * @param pStrength L'indice della forza
+         * @return La forza del tiro
+         */
+        public double getStrength(int pStrength) {
+            if (this.strengths == 1) {
+                return this.maxStrength;
+            }
+            return this.minStrength + (this.maxStrength - this.minStrength) * pStrength / (this.strengths - 1);
+        }
+
+        /**
+         * Restituisce l'indice della cella (angolazione, forza).
+         * @param pAngle L'indice dell'angolazione
+         * @param pStrength L'indice della forza
+         * @return L'indice della cella
+         */
+        public int getCell(int pAngle, int pStrength) {
+            return pAngle * this.strengths + pStrength;
+        }
+
+        /**
+         * Restituisce la frazione dei campioni della cella che hanno prodotto l'esito <code>pResult</code>.
+         * @param pAngle L'indice dell'angolazione
+         * @param pStrength L'indice della forza
+         * @param pResult La classe di esito
+         * @return La probabilità dell'esito, tra <code>0</code> e <code>1</code>
+         */
+        public double getProbability(int pAngle, int pStrength, Result pResult) {
+            return (double) this.counts[this.getCell(pAngle, pStrength) * RESULTS.length + pResult.ordinal()]
+                    / this.samples;
+        }
+
+        /**
+         * Restituisce l'esito più frequente della cella.
+         * @param pAngle L'indice dell'angolazione
+         * @param pStrength L'indice della forza
+         * @return La classe di esito più frequente
+         */
+        public Result getResult(int pAngle, int pStrength) {
+            int offset = this.getCell(pAngle, pStrength) * RESULTS.length;
+            int best = 0;
+            for (int r = 1; r < RESULTS.length; r++) {
+                if (this.counts[offset + r] > this.counts[offset + best]) {
+                    best = r;
+                }
+            }
+            return RESULTS[best];
+        }
+
+        private void add(int pCell, Result pResult) {
+            this.counts[pCell * RESULTS.length + pResult.ordinal()]++;
+        }
+    }
+
+    /**
+     * Il tavolo e la partita riutilizzati da un singolo thread.
+     */
+    private class Worker extends TableEngine.ListenerAdapter {
+
+        private TableEngine engine;
+        private int pocketed;
+        private final GameManager game = new GameManager("A", "B", 1);
+
+        private Result simulate(double[] pData, double pStrength, double pAngle) {
+            int split = pData.length - GameManager.SNAPSHOT_LENGTH;
+            int balls = (split - 1) / 5;
+            if (this.engine == null || this.engine.getState().size() != balls) {
+                this.engine = new TableEngine(geometry, balls);
+                this.engine.setMode(mode);
+                this.engine.addListener(this);
+            }
+            this.engine.restore(pData, 0);
+            this.game.restore(pData, split);
+            this.pocketed = 0;
+            this.engine.strike(pStrength, pAngle);
+            this.engine.simulate();
+            switch (this.game.getTurnResult()) {
+                case WON:
+                    return Result.WON;
+                case LOST:
+                    return Result.LOST;
+                case WHITE_IN_POCKET:
+                    return Result.SCRATCH;
+                case NEW_STRIKE:
+                    return this.pocketed == 0 ? Result.NOTHING : Result.POTTED;
+                default:
+                    return Result.FOUL;
+            }
+        }
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+            this.game.pocket(pBall, pWith, pPocket);
+            this.pocketed++;
+        }
+    }
+
+    /**
+     * Valuta le celle di un intervallo della griglia, suddividendolo se è troppo grande.
+     */
+    private class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final double[] data;
+        private final Heatmap map;
+        private final double angleNoise, strengthNoise;
+        private final long seed;
+        private final Listener listener;
+        private final int from, to;
+
+        private Task(double[] pData, Heatmap pMap, double pAngleNoise, double pStrengthNoise, long pSeed,
+                Listener pListener, int pFrom, int pTo) {
+            this.data = pData;
+            this.map = pMap;
+            this.angleNoise = pAngleNoise;
+            this.strengthNoise = pStrengthNoise;
+            this.seed = pSeed;
+            this.listener = pListener;
+            this.from = pFrom;
+            this.to = pTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                Worker worker = workers.get();
+                for (int cell = this.from; cell < this.to; cell++) {
+                    double angle = this.map.getAngle(cell / this.map.strengths);
+                    double strength = this.map.getStrength(cell % this.map.strengths);
+                    for (int k = 0; k < this.map.samples; k++) {
+                        double a = angle, s = strength;
+                        if (k > 0) {
+                            long key = this.seed + (long) cell * this.map.samples + k;
+                            a += this.angleNoise * gaussian(2 * key);
+                            s = Math.max(0, s + this.strengthNoise * gaussian(2 * key + 1));
+                        }
+                        this.map.add(cell, worker.simulate(this.data, s, a));
+                    }
+                }
+                if (this.listener != null) {
+                    this.listener.cellsCompleted(this.map, this.from, this.to);
+                }
+            } else {
+                int middle = (this.from + this.to) >>> 1;
+                invokeAll(new Task(this.data, this.map, this.angleNoise, this.strengthNoise, this.seed,
+                        this.listener, this.from, middle),
+                        new Task(this.data, this.map, this.angleNoise, this.strengthNoise, this.seed,
+                        this.listener, middle, this.to));
+            }
+        }
+    }
+
+    /**
+     * Crea ed inizializza una scansione che utilizza tutti i processori disponibili.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione
+     */
+    public ShotSweep(TableGeometry pGeometry, TableEngine.Mode pMode) {
+        this(pGeometry, pMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Crea ed inizializza una scansione che utilizza <code>pParallelism</code> thread.
+     * @param pGeometry La geometria del tavolo
+     * @param pMode Il motore di simulazione
+     * @param pParallelism Il numero di thread
+     */
+    public ShotSweep(TableGeometry pGeometry, TableEngine.Mode pMode, int pParallelism) {
+        this.geometry = pGeometry;
+        this.mode = pMode;
+        this.pool = new ForkJoinPool(pParallelism);
+    }
+
+    /**
+     * Valuta un tiro per ogni cella della griglia, senza rumore.
+     * @param pEngine Il tavolo, fermo; non viene modificato
+     * @param pGame La partita, con il turno già iniziato; non viene modificata
+     * @param pAngles Il numero di angolazioni
+     * @param pStrengths Il numero di forze, distribuite tra <code>ComputerPlayer.MIN_STRENGTH</code> e
+     *                   <code>ComputerPlayer.MAX_STRENGTH</code>
+     * @param pListener L'osservatore dei risultati parziali, oppure <code>null</code>
+     * @return La mappa degli esiti
+     */
+    public Heatmap sweep(TableEngine pEngine, GameManager pGame, int pAngles, int pStrengths, Listener pListener) {
+        return this.sweep(pEngine, pGame, pAngles, pStrengths, 1, 0, 0, 0, pListener);
+    }
+
+    /**
+     * Valuta <code>pSamples</code> tiri per ogni cella della griglia: il primo con i parametri esatti
+     * della cella, gli altri perturbati con un rumore gaussiano.
+     * @param pEngine Il tavolo, fermo; non viene modificato
+     * @param pGame La partita, con il turno già iniziato; non viene modificata
+     * @param pAngles Il numero di angolazioni
+     * @param pStrengths Il numero di forze, distribuite tra <code>ComputerPlayer.MIN_STRENGTH</code> e
+     *                   <code>ComputerPlayer.MAX_STRENGTH</code>
+     * @param pSamples Il numero di campioni per cella
+     * @param pAngleNoise La deviazione standard del rumore sull'angolazione, in radianti
+     * @param pStrengthNoise La deviazione standard del rumore sulla forza
+     * @param pSeed Il seme del rumore
+     * @param pListener L'osservatore dei risultati parziali, oppure <code>null</code>
+     * @return La mappa degli esiti
+     */
+    public Heatmap sweep(TableEngine pEngine, GameManager pGame, int pAngles, int pStrengths, int pSamples,
+            double pAngleNoise, double pStrengthNoise, long pSeed, Listener pListener) {
+        if (pAngles <= 0 || pStrengths <= 0 || pSamples <= 0) {
+            throw new IllegalArgumentException("Grid size and samples must be positive");
+        }
+        TableSnapshot snapshot = new TableSnapshot(pEngine, pGame);
+        snapshot.save();
+        Heatmap map = new Heatmap(pAngles, pStrengths, ComputerPlayer.MIN_STRENGTH, ComputerPlayer.MAX_STRENGTH,
+                pSamples);
+        this.pool.invoke(new Task(snapshot.getData(), map, pAngleNoise, pStrengthNoise, pSeed, pListener, 0,
+                pAngles * pStrengths));
+        return map;
+    }
+
+    /**
+     * Restituisce il numero di thread utilizzati dalla scansione.
+     * @return Il numero di thread
+     */
+    public int getParallelism() {
+        return this.pool.getParallelism();
+    }
+
+    /**
+     * Termina i thread della scansione, che non potrà più essere utilizzata.
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Restituisce un campione gaussiano standard che dipende solo da <code>pKey</code> (metodo di
+     * Box-Muller).
+     */
+    static double gaussian(long pKey) {
+        long bits1 = phisic.BallHash.mix(pKey);
+        long bits2 = phisic.BallHash.mix(bits1);
+        double u1 = ((bits1 >>> 11) + 1) / 9007199254740993.0;
+        double u2 = (bits2 >>> 11) / 9007199254740992.0;
+        return Math.sqrt(-2 * Math.log(u1)) * Math.cos(2 * Math.PI * u2);
+    }
+}
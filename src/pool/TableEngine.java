@@ -0,0 +1,921 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>TableEngine</code> modella il tavolo da biliardo come puro modello fisico: palle, sponde
+ * e buche, senza alcuna dipendenza da <code>Swing</code> o dal sistema audio. Può quindi essere utilizzata
+ * per simulare tiri su macchine prive di display e di linee audio.
+ * <br><br>
+ * L'interfaccia grafica osserva il modello registrando un {@link Listener}, che viene notificato ad ogni
+ * spostamento, collisione ed entrata in buca.
+ * @author Oneiros
+ */
+public class TableEngine {
+
+    /** Il numero di palle da biliardo presenti sul tavolo nella Palla 8 */
+    public static final int BALLS = 16;
+    /** Il lato delle celle nelle quali vengono quantizzate le posizioni per il calcolo dell'hash */
+    public static final double HASH_QUANTUM = 1;
+    /** Il massimo spostamento di una palla in un sotto-step adattivo consigliato: un quarto di palla */
+    public static final double DEFAULT_MAX_DISPLACEMENT = Sphere2D.BALL_SIZE / 4;
+    /** Il più piccolo sotto-step adattivo, espresso in "step" */
+    public static final double MIN_SUBSTEP = 1.0 / 16;
+    /** Il più grande sotto-step adattivo utilizzato da {@link #simulate()}, espresso in "step" */
+    public static final double MAX_SUBSTEP = 4;
+    /** Lo stato delle palle da biliardo, indicizzato dal numero della palla */
+    protected final BallState state;
+    /** La geometria compilata del tavolo: sponde, buche e posizioni di partenza */
+    protected final TableGeometry geometry;
+    private Listener[] listeners;
+    private int firstTouchedBall;
+    private Mode mode;
+    private SpinState spin;
+    private ContactSolver contacts;
+    private FastForward fastForward;
+    private double maxDisplacement;
+    private final EventSolver events;
+    private final BallGrid grid;
+    private final int[] neighbours;
+    private final BallHash hash;
+    private final java.util.BitSet moving;
+    private final java.util.BitSet pocketed;
+    private boolean gridValid;
+    private boolean hashValid;
+
+    /**
+     * L'enum <code>Mode</code> elenca i possibili motori di simulazione.
+     * <br><br>
+     * <code>STEPPING</code> - Le palle vengono spostate ad ogni "step" e le collisioni vengono corrette dopo
+     * essere avvenute;<br>
+     * <code>EVENT_DRIVEN</code> - La simulazione salta direttamente da un evento (urto, entrata in buca,
+     * arresto di una palla) al successivo calcolandone l'istante esatto. Non supporta la rotazione delle
+     * palle: se è attivo il modello della rotazione (vedi {@link TableEngine#setSpinEnabled(boolean)}) la
+     * simulazione procede comunque a "step".
+     */
+    public enum Mode {
+
+        /** Simulazione a "step" discreti. */
+        STEPPING,
+        /** Simulazione guidata dagli eventi. */
+        EVENT_DRIVEN
+    }
+
+    /**
+     * L'interfaccia <code>Listener</code> permette di osservare gli eventi generati dalla simulazione.
+     */
+    public interface Listener {
+
+        /**
+         * Notifica lo spostamento di una palla.
+         * @param pBall Il numero identificativo della palla spostata
+         */
+        void ballMoved(int pBall);
+
+        /**
+         * Notifica la collisione tra due palle.
+         * @param pBall Il numero identificativo della palla in movimento
+         * @param pSecondBall Il numero identificativo della palla urtata
+         * @param pStrength L'entità dell'urto
+         */
+        void ballsCollided(int pBall, int pSecondBall, double pStrength);
+
+        /**
+         * Notifica l'urto di una palla contro una sponda.
+         * @param pBall Il numero identificativo della palla
+         * @param pSpeed Il modulo della velocità della palla dopo l'urto
+         */
+        void cushionHit(int pBall, double pSpeed);
+
+        /**
+         * Notifica la caduta in buca di una palla.
+         * @param pBall Il numero identificativo della palla caduta in buca
+         * @param pWith Il numero identificativo della prima palla toccata dalla palla bianca
+         * @param pPocket L'indice della buca nella geometria del tavolo (nel tavolo standard
+         *                <code>PoolTable.Pocket.ordinal()</code>)
+         */
+        void ballPocketed(int pBall, int pWith, int pPocket);
+    }
+
+    /**
+     * La classe <code>ListenerAdapter</code> implementa <code>Listener</code> con metodi che non fanno nulla,
+     * come <code>java.awt.event.MouseAdapter</code>: chi osserva solo alcuni eventi ridefinisce solo i metodi
+     * corrispondenti.
+     */
+    public abstract static class ListenerAdapter implements Listener {
+
+        @Override
+        public void ballMoved(int pBall) {
+        }
+
+        @Override
+        public void ballsCollided(int pBall, int pSecondBall, double pStrength) {
+        }
+
+        @Override
+        public void cushionHit(int pBall, double pSpeed) {
+        }
+
+        @Override
+        public void ballPocketed(int pBall, int pWith, int pPocket) {
+        }
+    }
+
+    /**
+     * Crea ed inizializza un tavolo standard con le 16 palle disposte nella posizione di inizio partita.
+     */
+    public TableEngine() {
+        this(TableGeometry.STANDARD, BALLS);
+    }
+
+    /**
+     * Crea ed inizializza un tavolo standard con <code>pBalls</code> palle.
+     * @param pBalls Il numero di palle da biliardo
+     * @see #TableEngine(TableGeometry, int)
+     */
+    public TableEngine(int pBalls) {
+        this(TableGeometry.STANDARD, pBalls);
+    }
+
+    /**
+     * Crea ed inizializza un tavolo con geometria <code>pGeometry</code> e <code>pBalls</code> palle. Le prime
+     * 16 vengono disposte nella posizione di inizio partita, le altre restano fuori dal gioco fino a quando
+     * non vengono posizionate con {@link #setBallLocation(int, double, double)}.
+     * @param pGeometry La geometria del tavolo
+     * @param pBalls Il numero di palle da biliardo
+     */
+    public TableEngine(TableGeometry pGeometry, int pBalls) {
+        this.geometry = pGeometry;
+        this.state = new BallState(pBalls);
+        this.listeners = new Listener[0];
+        this.mode = Mode.STEPPING;
+        this.events = new EventSolver(this);
+        this.grid = new BallGrid(pGeometry.width, pGeometry.height, Sphere2D.BALL_SIZE, pBalls);
+        this.neighbours = new int[pBalls];
+        this.hash = new BallHash(pBalls, HASH_QUANTUM);
+        this.moving = new java.util.BitSet(pBalls);
+        this.pocketed = new java.util.BitSet(pBalls);
+        this.rack();
+    }
+
+    /**
+     * Dispone le palle nella posizione di inizio partita: la palla bianca a sinistra e le altre nel triangolo.
+     * Le palle oltre la sedicesima vengono tolte dal gioco.
+     */
+    public final void rack() {
+        for (int i = 0; i < Math.min(BALLS, this.state.size()); i++) {
+            this.setBallLocation(i, this.geometry.rackX[i], this.geometry.rackY[i]);
+        }
+        for (int i = BALLS; i < this.state.size(); i++) {
+            this.state.status[i] = BallState.POCKETED;
+        }
+        for (int i = 0; i < this.state.size(); i++) {
+            this.state.stop(i);
+        }
+        this.firstTouchedBall = 0;
+        this.stateChanged();
+    }
+
+    /**
+     * Imposta il motore di simulazione da utilizzare.
+     * @param pMode Il motore di simulazione
+     */
+    public void setMode(Mode pMode) {
+        this.mode = pMode;
+        this.events.invalidate();
+    }
+
+    /**
+     * Attiva o disattiva il modello della rotazione delle palle (vedi <code>SpinState</code>): strisciamento
+     * e rotolamento, colpi a seguire e a ritornare, effetto laterale. Quando il modello è attivo la
+     * simulazione procede sempre a "step", anche con il motore <code>EVENT_DRIVEN</code>. All'attivazione
+     * le palle in movimento vengono considerate in rotolamento naturale.
+     * @param pEnabled <code>true</code> per attivare il modello della rotazione
+     */
+    public void setSpinEnabled(boolean pEnabled) {
+        if (pEnabled && this.spin == null) {
+            this.spin = new SpinState(this.state.size());
+            this.spin.roll(this.state);
+        } else if (!pEnabled) {
+            this.spin = null;
+        }
+        this.events.invalidate();
+    }
+
+    /**
+     * Determina se il modello della rotazione delle palle è attivo.
+     * @return <code>true</code> se il modello della rotazione è attivo;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isSpinEnabled() {
+        return this.spin != null;
+    }
+
+    /**
+     * Restituisce la rotazione delle palle, se il modello della rotazione è attivo.
+     * @return La rotazione delle palle, oppure <code>null</code>
+     */
+    public SpinState getSpin() {
+        return this.spin;
+    }
+
+    /**
+     * Attiva o disattiva la risoluzione simultanea degli urti tra palle (vedi <code>ContactSolver</code>):
+     * al termine di ogni "step" tutti i contatti vengono raccolti e risolti insieme, anziché una coppia alla
+     * volta nell'ordine di numerazione delle palle. Si applica solo alla simulazione a "step". Il risultato
+     * non dipende più dalla numerazione delle palle, ma ogni step costa di più: sui tiri di apertura di
+     * <code>benchmark.ContactBenchmark</code> circa il 10-30% in più.
+     * @param pEnabled <code>true</code> per risolvere gli urti simultaneamente
+     */
+    public void setSimultaneousContacts(boolean pEnabled) {
+        if (pEnabled && this.contacts == null) {
+            this.contacts = new ContactSolver(this.state.size());
+        } else if (!pEnabled) {
+            this.contacts = null;
+        }
+    }
+
+    /**
+     * Restituisce il risolutore degli urti simultanei, se attivo.
+     * @return Il risolutore, oppure <code>null</code> se gli urti vengono risolti una coppia alla volta
+     */
+    public ContactSolver getContactSolver() {
+        return this.contacts;
+    }
+
+    /**
+     * Attiva o disattiva il salto delle traiettorie (vedi <code>FastForward</code>): quando nessuna palla in
+     * movimento può più urtare palle, sponde o buche, tutte vengono portate direttamente nel punto di
+     * arresto calcolato in forma chiusa, ed il tiro termina in un solo "step". Le traiettorie saltate si
+     * possono mostrare con {@link #getFlightX(int, double)} e {@link #getFlightY(int, double)}. Si applica
+     * solo alla simulazione a "step".
+     * @param pEnabled <code>true</code> per attivare il salto delle traiettorie
+     */
+    public void setFastForward(boolean pEnabled) {
+        if (pEnabled && this.fastForward == null) {
+            this.fastForward = new FastForward(this);
+        } else if (!pEnabled) {
+            this.fastForward = null;
+        }
+    }
+
+    /**
+     * Determina se il salto delle traiettorie è attivo.
+     * @return <code>true</code> se il salto delle traiettorie è attivo;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isFastForward() {
+        return this.fastForward != null;
+    }
+
+    /**
+     * Restituisce la durata dell'ultimo salto delle traiettorie avvenuto durante il tiro in corso, cioè il
+     * tempo che la simulazione a "step" avrebbe impiegato a fermare le palle saltate.
+     * @return La durata espressa in "step", <code>0</code> se nel tiro in corso non è avvenuto alcun salto
+     */
+    public double getFlightDuration() {
+        return this.fastForward == null ? 0 : this.fastForward.getDuration();
+    }
+
+    /**
+     * Determina se la palla <code>pBall</code> è stata portata in quiete dall'ultimo salto delle traiettorie.
+     * @param pBall Il numero identificativo della palla
+     * @return <code>true</code> se la palla ha una traiettoria saltata da mostrare;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isFlying(int pBall) {
+        return this.fastForward != null && this.fastForward.isFlying(pBall);
+    }
+
+    /**
+     * Restituisce la coordinata <code>x</code> del centro della palla <code>pBall</code> lungo la traiettoria
+     * saltata, dopo un tempo <code>pTime</code> dall'inizio del salto.
+     * @param pBall Il numero identificativo della palla, portata in quiete dall'ultimo salto
+     * @param pTime Il tempo trascorso dall'inizio del salto, espresso in "step"
+     * @return La coordinata <code>x</code> del centro della palla
+     * @see #isFlying(int)
+     */
+    public double getFlightX(int pBall, double pTime) {
+        return this.fastForward.getX(pBall, pTime);
+    }
+
+    /**
+     * Restituisce la coordinata <code>y</code> del centro della palla <code>pBall</code> lungo la traiettoria
+     * saltata, dopo un tempo <code>pTime</code> dall'inizio del salto.
+     * @param pBall Il numero identificativo della palla, portata in quiete dall'ultimo salto
+     * @param pTime Il tempo trascorso dall'inizio del salto, espresso in "step"
+     * @return La coordinata <code>y</code> del centro della palla
+     * @see #isFlying(int)
+     */
+    public double getFlightY(int pBall, double pTime) {
+        return this.fastForward.getY(pBall, pTime);
+    }
+
+    /**
+     * Attiva o disattiva i sotto-step adattivi: {@link #advance(double)} e {@link #simulate()} suddividono il
+     * tempo in sotto-step tali che nessuna palla si sposti più di <code>pMaxDisplacement</code> in un
+     * sotto-step, compresi tra {@link #MIN_SUBSTEP} e {@link #MAX_SUBSTEP}. I tiri veloci vengono così
+     * simulati con sotto-step più fitti, riducendo le compenetrazioni e l'attraversamento dei corti segmenti
+     * delle buche, mentre i movimenti lenti richiedono meno "step". Si applica solo alla simulazione a
+     * "step".
+     * @param pMaxDisplacement Il massimo spostamento per sotto-step (ad esempio
+     *                         {@link #DEFAULT_MAX_DISPLACEMENT}), oppure <code>0</code> per utilizzare
+     *                         sotto-step fissi
+     */
+    public void setMaxDisplacement(double pMaxDisplacement) {
+        this.maxDisplacement = Math.max(0, pMaxDisplacement);
+    }
+
+    /**
+     * Restituisce il massimo spostamento per sotto-step dei sotto-step adattivi.
+     * @return Il massimo spostamento, <code>0</code> se i sotto-step adattivi non sono attivi
+     * @see #setMaxDisplacement(double)
+     */
+    public double getMaxDisplacement() {
+        return this.maxDisplacement;
+    }
+
+    /**
+     * Restituisce il motore di simulazione in uso.
+     * @return Il motore di simulazione
+     */
+    public Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Registra un osservatore della simulazione.
+     * @param pListener L'osservatore da registrare
+     */
+    public void addListener(Listener pListener) {
+        this.listeners = java.util.Arrays.copyOf(this.listeners, this.listeners.length + 1);
+        this.listeners[this.listeners.length - 1] = pListener;
+    }
+
+    /**
+     * Rimuove un osservatore della simulazione.
+     * @param pListener L'osservatore da rimuovere
+     */
+    public void removeListener(Listener pListener) {
+        java.util.List<Listener> list = new java.util.ArrayList<Listener>(java.util.Arrays.asList(this.listeners));
+        list.remove(pListener);
+        this.listeners = list.toArray(new Listener[list.size()]);
+    }
+
+    /**
+     * Posiziona la palla <code>pBall</code> in <code>(pX,pY)</code>, rimettendola in gioco se era in buca.
+     * @param pBall Il numero identificativo della palla
+     * @param pX La coordinata <code>x</code> del nuovo centro della palla
+     * @param pY La coordinata <code>y</code> del nuovo centro della palla
+     */
+    public final void setBallLocation(int pBall, double pX, double pY) {
+        this.state.x[pBall] = pX;
+        this.state.y[pBall] = pY;
+        this.state.status[pBall] = BallState.IN_PLAY;
+        this.pocketed.clear(pBall);
+        this.updateMotion(pBall);
+        this.updateHash(pBall);
+        if (this.contacts != null) {
+            this.contacts.reset();
+        }
+        if (this.fastForward != null) {
+            this.fastForward.clear();
+        }
+        this.gridValid = false;
+        this.events.invalidate();
+    }
+
+    /**
+     * Restituisce la coordinata <code>x</code> del centro della palla <code>pBall</code>.
+     * @param pBall Il numero identificativo della palla
+     * @return La coordinata <code>x</code> del centro della palla
+     */
+    public double getX(int pBall) {
+        return this.state.x[pBall];
+    }
+
+    /**
+     * Restituisce la coordinata <code>y</code> del centro della palla <code>pBall</code>.
+     * @param pBall Il numero identificativo della palla
+     * @return La coordinata <code>y</code> del centro della palla
+     */
+    public double getY(int pBall) {
+        return this.state.y[pBall];
+    }
+
+    /**
+     * Stabilisce se la palla <code>pBall</code> è caduta in buca.
+     * @param pBall Il numero identificativo della palla
+     * @return <code>true</code> se la palla è in buca;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isPocketed(int pBall) {
+        return this.state.status[pBall] == BallState.POCKETED;
+    }
+
+    /**
+     * Restituisce il numero identificativo della prima palla toccata dalla palla bianca durante l'ultimo tiro.
+     * @return Il numero della prima palla toccata, <code>0</code> se la palla bianca non ha toccato nulla
+     */
+    public int getFirstTouchedBall() {
+        return this.firstTouchedBall;
+    }
+
+    /**
+     * Definisce velocità e angolazione della palla bianca preparando il tavolo per un nuovo tiro.
+     * @param pStrenght La forza con la quale è stata colpita la palla bianca
+     * @param pAngle L'angolazione con la quale è stata colpita la palla bianca
+     */
+    public void strike(double pStrenght, double pAngle) {
+        this.firstTouchedBall = 0;
+        if (this.spin != null) {
+            this.spin.strike(this.state, 0, pStrenght, pAngle, 0, 0);
+        } else {
+            this.state.setSpeed(0, pStrenght, pAngle);
+        }
+        this.updateMotion(0);
+        if (this.contacts != null) {
+            this.contacts.reset();
+        }
+        if (this.fastForward != null) {
+            this.fastForward.clear();
+        }
+        this.events.invalidate();
+    }
+
+    /**
+     * Definisce velocità, angolazione e rotazione della palla bianca preparando il tavolo per un nuovo
+     * tiro. Richiede che il modello della rotazione sia attivo.
+     * @param pStrenght La forza con la quale è stata colpita la palla bianca
+     * @param pAngle L'angolazione con la quale è stata colpita la palla bianca
+     * @param pFollow La distanza verticale dal centro del punto colpito, tra <code>-1</code> (colpo a
+     *                ritornare) e <code>1</code> (colpo a seguire)
+     * @param pEnglish La distanza orizzontale dal centro del punto colpito, tra <code>-1</code> (sinistra) e
+     *                 <code>1</code> (destra)
+     * @see SpinState#strike(BallState, int, double, double, double, double)
+     */
+    public void strike(double pStrenght, double pAngle, double pFollow, double pEnglish) {
+        if (this.spin == null) {
+            throw new IllegalStateException("Spin model is not enabled");
+        }
+        this.firstTouchedBall = 0;
+        this.spin.strike(this.state, 0, pStrenght, pAngle, pFollow, pEnglish);
+        this.updateMotion(0);
+        if (this.contacts != null) {
+            this.contacts.reset();
+        }
+        if (this.fastForward != null) {
+            this.fastForward.clear();
+        }
+        this.events.invalidate();
+    }
+
+    /**
+     * Restituisce lo stato compatto delle palle da biliardo. Dopo aver modificato lo stato restituito è
+     * necessario invocare {@link #stateChanged()}.
+     * @return Lo stato delle palle da biliardo
+     */
+    public BallState getState() {
+        return this.state;
+    }
+
+    /**
+     * Restituisce la geometria del tavolo.
+     * @return La geometria del tavolo
+     */
+    public TableGeometry getGeometry() {
+        return this.geometry;
+    }
+
+    /**
+     * Segnala che lo stato delle palle è stato modificato dall'esterno tramite {@link #getState()}:
+     * l'insieme delle palle in movimento e di quelle in buca viene ricalcolato. Se il modello della rotazione
+     * è attivo, le palle in movimento vengono considerate in rotolamento naturale.
+     */
+    public final void stateChanged() {
+        this.moving.clear();
+        this.pocketed.clear();
+        for (int i = 0; i < this.state.size(); i++) {
+            if (this.state.status[i] == BallState.POCKETED) {
+                this.pocketed.set(i);
+            } else if (this.state.hasSpeed(i)) {
+                this.moving.set(i);
+            }
+        }
+        if (this.spin != null) {
+            this.spin.roll(this.state);
+        }
+        if (this.contacts != null) {
+            this.contacts.reset();
+        }
+        if (this.fastForward != null) {
+            this.fastForward.clear();
+        }
+        this.hashValid = false;
+        this.gridValid = false;
+        this.events.invalidate();
+    }
+
+    /**
+     * Restituisce l'hash a 64 bit della disposizione delle palle sul tavolo, calcolato sulle posizioni
+     * quantizzate con passo {@link #HASH_QUANTUM} e sull'insieme delle palle in buca. L'hash viene
+     * aggiornato in modo incrementale ad ogni spostamento ed entrata in buca, per cui questo metodo ha
+     * costo costante; dopo {@link #stateChanged()} (e quindi dopo {@link #restore(double[], int)}) viene
+     * invece ricalcolato alla prima chiamata, in modo che il ripristino di un'istantanea non ne paghi il
+     * costo se l'hash non serve. Le velocità non vengono considerate: l'hash è significativo a tavolo fermo.
+     * @return L'hash della disposizione delle palle
+     */
+    public long getHash() {
+        if (!this.hashValid) {
+            this.hash.rebuild(this.state);
+            this.hashValid = true;
+        }
+        return this.hash.getHash();
+    }
+
+    /**
+     * Restituisce il numero di <code>double</code> occupati da un'istantanea del tavolo.
+     * @return La lunghezza dell'istantanea
+     * @see #snapshot(double[], int)
+     */
+    public int getSnapshotLength() {
+        return 5 * this.state.size() + 1;
+    }
+
+    /**
+     * Salva un'istantanea del tavolo in <code>pData</code> a partire dalla posizione <code>pOffset</code>:
+     * posizioni, velocità e stato di ogni palla e la prima palla toccata dalla palla bianca. L'istantanea
+     * occupa {@link #getSnapshotLength()} elementi e non richiede alcuna allocazione.
+     * @param pData L'array nel quale salvare l'istantanea
+     * @param pOffset La posizione del primo elemento dell'istantanea
+     */
+    public void snapshot(double[] pData, int pOffset) {
+        int n = this.state.size();
+        System.arraycopy(this.state.x, 0, pData, pOffset, n);
+        System.arraycopy(this.state.y, 0, pData, pOffset + n, n);
+        System.arraycopy(this.state.vx, 0, pData, pOffset + 2 * n, n);
+        System.arraycopy(this.state.vy, 0, pData, pOffset + 3 * n, n);
+        for (int i = 0; i < n; i++) {
+            pData[pOffset + 4 * n + i] = this.state.status[i];
+        }
+        pData[pOffset + 5 * n] = this.firstTouchedBall;
+    }
+
+    /**
+     * Ripristina un'istantanea salvata con {@link #snapshot(double[], int)} da un tavolo con lo stesso
+     * numero di palle. Non richiede alcuna allocazione.
+     * @param pData L'array contenente l'istantanea
+     * @param pOffset La posizione del primo elemento dell'istantanea
+     */
+    public void restore(double[] pData, int pOffset) {
+        int n = this.state.size();
+        System.arraycopy(pData, pOffset, this.state.x, 0, n);
+        System.arraycopy(pData, pOffset + n, this.state.y, 0, n);
+        System.arraycopy(pData, pOffset + 2 * n, this.state.vx, 0, n);
+        System.arraycopy(pData, pOffset + 3 * n, this.state.vy, 0, n);
+        for (int i = 0; i < n; i++) {
+            this.state.status[i] = (byte) pData[pOffset + 4 * n + i];
+        }
+        this.firstTouchedBall = (int) pData[pOffset + 5 * n];
+        this.stateChanged();
+    }
+
+    /**
+     * Restituisce il numero di palle in movimento.
+     * @return Il numero di palle in gioco dotate di velocità
+     */
+    public int getMovingCount() {
+        return this.moving.cardinality();
+    }
+
+    /**
+     * Restituisce la prima palla in movimento con numero maggiore o uguale a <code>pFrom</code>.
+     * Le palle in movimento si possono quindi scorrere con<br>
+     * <code>for (int i = engine.nextMoving(0); i >= 0; i = engine.nextMoving(i + 1))</code>
+     * @param pFrom Il numero dal quale iniziare la ricerca
+     * @return Il numero della palla, <code>-1</code> se non ci sono altre palle in movimento
+     */
+    public int nextMoving(int pFrom) {
+        return this.moving.nextSetBit(pFrom);
+    }
+
+    /**
+     * Restituisce la prima palla in buca con numero maggiore o uguale a <code>pFrom</code>.
+     * @param pFrom Il numero dal quale iniziare la ricerca
+     * @return Il numero della palla, <code>-1</code> se non ci sono altre palle in buca
+     * @see #nextMoving(int)
+     */
+    public int nextPocketed(int pFrom) {
+        return this.pocketed.nextSetBit(pFrom);
+    }
+
+    /**
+     * Determina se sul tavolo ci sono palle in movimento.
+     * @return <code>true</code> se almeno una palla in gioco è in movimento;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isMoving() {
+        return !this.moving.isEmpty();
+    }
+
+    /**
+     * Simula una frazione <code>pStep</code> di "step", muovendo tutte le palle in gioco e gestendo
+     * le collisioni e le entrate in buca. Vengono esaminate solo le palle in movimento: le palle ferme
+     * non costano nulla finché non vengono urtate.
+     * @param pStep La frazione di "step" da simulare
+     * @return <code>true</code> se al termine del sotto-step ci sono ancora palle in movimento;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean step(double pStep) {
+        if (this.mode == Mode.EVENT_DRIVEN && this.spin == null) {
+            this.gridValid = false;
+            return this.events.advance(pStep);
+        }
+        if (this.fastForward != null && this.fastForward.tryJump(pStep)) {
+            for (int i = this.fastForward.nextFlying(0); i >= 0; i = this.fastForward.nextFlying(i + 1)) {
+                this.updateMotion(i);
+                this.moved(i);
+            }
+            return this.isMoving();
+        }
+        if (!this.gridValid) {
+            this.grid.rebuild(this.state);
+            this.gridValid = true;
+        }
+        for (int i = this.moving.nextSetBit(0); i >= 0; i = this.moving.nextSetBit(i + 1)) {
+            if (this.spin != null) {
+                this.spin.move(this.state, i, PoolTable.FRICTION, pStep);
+            } else {
+                this.state.move(i, PoolTable.FRICTION, pStep);
+            }
+            this.updateMotion(i);
+            this.moved(i);
+            this.fireBallMoved(i);
+            if (!this.checkPocketEntering(i)) {
+                if (this.contacts == null) {
+                    this.checkBallsCollisions(i);
+                }
+                this.checkEdgesCollisions(i);
+            }
+        }
+        if (this.contacts != null) {
+            this.resolveContacts();
+        }
+        return this.isMoving();
+    }
+
+    /**
+     * Simula <code>pDuration</code> "step". Se i sotto-step adattivi sono attivi (vedi
+     * {@link #setMaxDisplacement(double)}) la durata viene suddivisa in sotto-step scelti in base alla
+     * velocità della palla più veloce, altrimenti equivale a {@link #step(double)}.
+     * @param pDuration La durata da simulare, espressa in "step"
+     * @return <code>true</code> se al termine ci sono ancora palle in movimento;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean advance(double pDuration) {
+        if (this.maxDisplacement == 0 || (this.mode == Mode.EVENT_DRIVEN && this.spin == null)) {
+            return this.step(pDuration);
+        }
+        double remaining = pDuration;
+        boolean moving = true;
+        while (moving && remaining > 0) {
+            double substep = this.getSubstep(remaining);
+            // L'ultimo sotto-step assorbe gli errori di arrotondamento sulla durata residua
+            if (remaining - substep < MIN_SUBSTEP * 1e-6) {
+                substep = remaining;
+            }
+            moving = this.step(substep);
+            remaining -= substep;
+        }
+        return moving;
+    }
+
+    /**
+     * Simula il tiro in corso fino a quando tutte le palle si sono fermate, senza alcuna attesa. Se i
+     * sotto-step adattivi sono attivi, i sotto-step possono raggiungere {@link #MAX_SUBSTEP}.
+     * @return Il numero di step simulati, compresi quelli saltati (vedi {@link #setFastForward(boolean)}); con
+     *         il motore <code>EVENT_DRIVEN</code> o con i sotto-step adattivi, la durata del tiro espressa in
+     *         step ed arrotondata per eccesso
+     */
+    public int simulate() {
+        if (this.mode == Mode.EVENT_DRIVEN && this.spin == null) {
+            return (int) Math.ceil(this.events.simulate());
+        }
+        if (this.maxDisplacement > 0) {
+            double time = 0;
+            boolean moving = true;
+            while (moving) {
+                double substep = this.getSubstep(MAX_SUBSTEP);
+                moving = this.step(substep);
+                time += substep;
+            }
+            return (int) Math.ceil(time + this.getFlightDuration());
+        }
+        int steps = 1;
+        while (this.step(1)) {
+            steps++;
+        }
+        return steps + (int) this.getFlightDuration();
+    }
+
+    /**
+     * Restituisce il sotto-step adattivo, compreso tra {@link #MIN_SUBSTEP} e <code>pMax</code>, nel quale
+     * nessuna palla in movimento si sposta più del massimo spostamento (vedi
+     * {@link #setMaxDisplacement(double)}).
+     * @param pMax Il massimo sotto-step, espresso in "step"
+     * @return Il sotto-step, espresso in "step"
+     */
+    public double getSubstep(double pMax) {
+        double squaredSpeed = 0;
+        for (int i = this.moving.nextSetBit(0); i >= 0; i = this.moving.nextSetBit(i + 1)) {
+            squaredSpeed = Math.max(squaredSpeed, this.state.vx[i] * this.state.vx[i] + this.state.vy[i] * this.state.vy[i]);
+        }
+        double substep = squaredSpeed == 0 ? pMax : this.maxDisplacement / Math.sqrt(squaredSpeed);
+        return Math.min(pMax, Math.max(MIN_SUBSTEP, substep));
+    }
+
+    /**
+     * Gestisce gli urti tra la palla <code>pBall</code> e le altre palle in gioco. Vengono esaminate solo
+     * le palle che la griglia colloca nelle celle adiacenti, in ordine crescente di numero.
+     */
+    private void checkBallsCollisions(int pBall) {
+        int count = this.grid.getNeighbours(pBall, this.neighbours);
+        for (int k = 0; k < count; k++) {
+            int j = this.neighbours[k];
+            if (this.state.isTouching(pBall, j)) {
+                if (pBall == 0) {
+                    this.touched(pBall, j);
+                }
+                double hitStrenght = this.state.getSpeed(j);
+                this.state.collide(pBall, j);
+                this.updateMotion(pBall);
+                this.updateMotion(j);
+                this.moved(pBall);
+                this.moved(j);
+                hitStrenght = Math.abs(hitStrenght - this.state.getSpeed(pBall));
+                this.fireBallsCollided(pBall, j, hitStrenght);
+            }
+        }
+    }
+
+    /**
+     * Risolve simultaneamente tutti i contatti tra le palle in movimento e le palle che toccano, dopo che
+     * tutte le palle sono state spostate. La separazione avviene dopo il controllo delle sponde, per cui
+     * le palle dei contatti vengono poi allontanate dalle sponde in cui sono state spinte, comprese quelle
+     * ferme che il controllo delle sponde non esamina.
+     */
+    private void resolveContacts() {
+        ContactSolver solver = this.contacts;
+        if (solver.gather(this.state, this.grid, this.moving) == 0) {
+            return;
+        }
+        solver.solve(this.state);
+        solver.separate(this.state);
+        for (int c = 0; c < solver.getCount(); c++) {
+            int i = solver.getFirst(c), j = solver.getSecond(c);
+            this.moveAwayFromEdges(i);
+            this.moveAwayFromEdges(j);
+            this.updateMotion(i);
+            this.updateMotion(j);
+            this.moved(i);
+            this.moved(j);
+            if (solver.getImpulse(c) > 0) {
+                this.touched(i, j);
+                this.fireBallsCollided(i, j, solver.getImpulse(c));
+            }
+        }
+    }
+
+    private void checkEdgesCollisions(int pBall) {
+        Wall[] walls = this.geometry.walls;
+        double x = this.state.x[pBall];
+        double y = this.state.y[pBall];
+        for (int j = 0; j < walls.length; j++) {
+            if (walls[j].isTouching(x, y)) {
+                Wall closestWall = walls[j];
+                for (int k = j + 1; k < walls.length; k++) {
+                    Wall secondWall = walls[k];
+                    if (secondWall.getPenetration(x, y) > closestWall.getPenetration(x, y)) {
+                        closestWall = secondWall;
+                    }
+                }
+                if (this.spin != null) {
+                    this.spin.collide(this.state, pBall, closestWall);
+                } else {
+                    this.state.collide(pBall, closestWall);
+                }
+                this.moveAwayFromEdges(pBall);
+                this.moved(pBall);
+                this.fireCushionHit(pBall);
+                break;
+            }
+        }
+    }
+
+    /**
+     * Allontana la palla <code>pBall</code> da tutte le sponde nelle quali è penetrata.
+     */
+    private void moveAwayFromEdges(int pBall) {
+        Wall[] walls = this.geometry.walls;
+        for (int e = 0; e < walls.length; e++) {
+            walls[e].moveAway(this.state, pBall);
+        }
+    }
+
+    private boolean checkPocketEntering(int pBall) {
+        int x = (int) this.state.x[pBall];
+        int y = (int) this.state.y[pBall];
+        for (int p = 0; p < this.geometry.pocketX.length; p++) {
+            double dx = this.geometry.pocketX[p] - x;
+            double dy = this.geometry.pocketY[p] - y;
+            if (dx * dx + dy * dy <= (Sphere2D.BALL_SIZE / 2) * (Sphere2D.BALL_SIZE / 2)) {
+                this.pocket(pBall, p);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Registra la collisione tra le palle <code>pBall</code> e <code>pSecondBall</code> ai fini della
+     * determinazione della prima palla toccata dalla palla bianca.
+     */
+    void touched(int pBall, int pSecondBall) {
+        if (this.firstTouchedBall == 0) {
+            if (pBall == 0) {
+                this.firstTouchedBall = pSecondBall;
+            } else if (pSecondBall == 0) {
+                this.firstTouchedBall = pBall;
+            }
+        }
+    }
+
+    /**
+     * Ferma la palla <code>pBall</code> e la segna come caduta nella buca <code>pPocket</code>.
+     */
+    void pocket(int pBall, int pPocket) {
+        this.state.stop(pBall);
+        if (this.spin != null) {
+            this.spin.stop(pBall);
+        }
+        this.state.status[pBall] = BallState.POCKETED;
+        this.moving.clear(pBall);
+        this.pocketed.set(pBall);
+        this.grid.remove(pBall);
+        this.updateHash(pBall);
+        this.fireBallPocketed(pBall, this.firstTouchedBall, pPocket);
+    }
+
+    /**
+     * Aggiorna la griglia e l'hash dopo uno spostamento della palla <code>pBall</code>.
+     */
+    private void moved(int pBall) {
+        this.grid.update(this.state, pBall);
+        this.updateHash(pBall);
+    }
+
+    /**
+     * Aggiorna l'hash dopo uno spostamento della palla <code>pBall</code>, anche avvenuto al di fuori della
+     * simulazione a "step". Se l'hash deve essere ricalcolato (vedi {@link #getHash()}) non fa nulla.
+     */
+    void updateHash(int pBall) {
+        if (this.hashValid) {
+            this.hash.update(this.state, pBall);
+        }
+    }
+
+    /**
+     * Aggiorna l'appartenenza della palla <code>pBall</code> all'insieme delle palle in movimento dopo
+     * una variazione della sua velocità.
+     */
+    void updateMotion(int pBall) {
+        this.moving.set(pBall, this.state.status[pBall] != BallState.POCKETED && (this.state.hasSpeed(pBall)
+                || (this.spin != null && this.spin.isSliding(this.state, pBall))));
+    }
+
+    void fireBallMoved(int pBall) {
+        for (Listener l : this.listeners) {
+            l.ballMoved(pBall);
+        }
+    }
+
+    void fireBallsCollided(int pBall, int pSecondBall, double pStrength) {
+        for (Listener l : this.listeners) {
+            l.ballsCollided(pBall, pSecondBall, pStrength);
+            l.ballMoved(pSecondBall);
+        }
+    }
+
+    void fireBallPocketed(int pBall, int pWith, int pPocket) {
+        for (Listener l : this.listeners) {
+            l.ballPocketed(pBall, pWith, pPocket);
+        }
+    }
+
+    void fireCushionHit(int pBall) {
+        for (Listener l : this.listeners) {
+            l.cushionHit(pBall, this.state.getSpeed(pBall));
+            l.ballMoved(pBall);
+        }
+    }
+}
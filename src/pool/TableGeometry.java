@@ -0,0 +1,348 @@
+package pool;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import phisic.*;
+
+/**
+ * La classe <code>TableGeometry</code> contiene la geometria di un tavolo da biliardo già "compilata":
+ * sponde e buche vengono elaborate una sola volta. Le sponde sono muri (<code>Wall</code>) che conservano
+ * inclinazione e coordinate ruotate già calcolate, per cui urti e compenetrazioni non ricalcolano angoli;
+ * i punti estremali delle sponde, i centri delle buche e le posizioni di partenza delle palle sono
+ * memorizzati in array contigui indicizzati dal numero della sponda, della buca o della palla. Viene
+ * calcolata anche l'area libera del tavolo (vedi {@link #clearMinX}), all'interno della quale una palla
+ * non può toccare alcuna sponda né cadere in buca.
+ * <br><br>
+ * La geometria del tavolo standard è {@link #STANDARD}, caricata dal file <code>standard.table</code> e
+ * confrontata con gli enum <code>PoolTable.Cushion</code> e <code>PoolTable.Pocket</code> utilizzati
+ * dall'interfaccia grafica. Tavoli alternativi possono essere descritti da un file di testo (vedi
+ * {@link #load(Reader)}) contenuto nella sottocartella {@link #tablesDirectory}.
+ * @author Oneiros
+ */
+public class TableGeometry {
+
+    /** La sottocartella interna ad <code>src</code> dove sono posizionati i file di definizione dei tavoli */
+    public static String tablesDirectory = "/media/tables/";
+    /** La geometria del tavolo standard */
+    public static final TableGeometry STANDARD = loadStandard();
+    /** La larghezza del tavolo */
+    public final int width;
+    /** L'altezza del tavolo */
+    public final int height;
+    /** I muri corrispondenti alle sponde */
+    public final Wall[] walls;
+    /** Le coordinate <code>x</code> dei primi punti estremali delle sponde. */
+    public final double[] wallX1;
+    /** Le coordinate <code>y</code> dei primi punti estremali delle sponde. */
+    public final double[] wallY1;
+    /** Le coordinate <code>x</code> dei secondi punti estremali delle sponde. */
+    public final double[] wallX2;
+    /** Le coordinate <code>y</code> dei secondi punti estremali delle sponde. */
+    public final double[] wallY2;
+    /** Le coordinate <code>x</code> dei centri delle buche. */
+    public final double[] pocketX;
+    /** Le coordinate <code>y</code> dei centri delle buche. */
+    public final double[] pocketY;
+    /** Le coordinate <code>x</code> delle posizioni di partenza delle palle. */
+    public final double[] rackX;
+    /** Le coordinate <code>y</code> delle posizioni di partenza delle palle. */
+    public final double[] rackY;
+    /**
+     * La coordinata <code>x</code> minima dell'area libera: il rettangolo, centrato il più possibile nel
+     * tavolo, all'interno del quale il centro di una palla si trova ad almeno {@link #CLEAR_MARGIN} dalle
+     * posizioni in cui toccherebbe una sponda o cadrebbe in buca. Per un tavolo privo di area libera il
+     * rettangolo è vuoto (<code>clearMinX &gt; clearMaxX</code>).
+     */
+    public final double clearMinX;
+    /** La coordinata <code>y</code> minima dell'area libera. */
+    public final double clearMinY;
+    /** La coordinata <code>x</code> massima dell'area libera. */
+    public final double clearMaxX;
+    /** La coordinata <code>y</code> massima dell'area libera. */
+    public final double clearMaxY;
+    /** La distanza minima tra l'area libera e le posizioni in cui una palla tocca una sponda o cade in buca */
+    public static final double CLEAR_MARGIN = 1;
+
+    /**
+     * Compila la geometria di un tavolo a partire dalle sue sponde e dalle sue buche.
+     * @param pWidth La larghezza del tavolo
+     * @param pHeight L'altezza del tavolo
+     * @param pWalls I muri corrispondenti alle sponde; non devono essere modificati in seguito
+     * @param pPocketX Le coordinate <code>x</code> dei centri delle buche
+     * @param pPocketY Le coordinate <code>y</code> dei centri delle buche
+     */
+    public TableGeometry(int pWidth, int pHeight, Wall[] pWalls, double[] pPocketX, double[] pPocketY) {
+        this.width = pWidth;
+        this.height = pHeight;
+        this.walls = pWalls.clone();
+        int n = pWalls.length;
+        this.wallX1 = new double[n];
+        this.wallY1 = new double[n];
+        this.wallX2 = new double[n];
+        this.wallY2 = new double[n];
+        for (int i = 0; i < n; i++) {
+            Wall w = pWalls[i];
+            this.wallX1[i] = w.x1;
+            this.wallY1[i] = w.y1;
+            this.wallX2[i] = w.x2;
+            this.wallY2[i] = w.y2;
+        }
+        this.pocketX = pPocketX.clone();
+        this.pocketY = pPocketY.clone();
+
+        // La palla bianca ed il triangolo vengono disposti come nel tavolo standard, traslati in modo che
+        // restino alla stessa distanza dai bordi corti e centrati rispetto a quelli lunghi
+        this.rackX = new double[TableEngine.BALLS];
+        this.rackY = new double[TableEngine.BALLS];
+        this.rackX[0] = pHeight / 2;
+        this.rackY[0] = pHeight / 2;
+        int shiftX = (pWidth - pHeight / 2) - (PoolTable.TABLE_SIZE.width - PoolTable.TABLE_SIZE.height / 2);
+        int shiftY = pHeight / 2 - PoolTable.TABLE_SIZE.height / 2;
+        for (PoolTable.Triangle t : PoolTable.Triangle.values()) {
+            java.awt.Point location = t.getLocation();
+            this.rackX[t.ordinal() + 1] = location.x + shiftX;
+            this.rackY[t.ordinal() + 1] = location.y + shiftY;
+        }
+
+        double[] clear = this.computeClearArea();
+        this.clearMinX = clear[0];
+        this.clearMinY = clear[1];
+        this.clearMaxX = clear[2];
+        this.clearMaxY = clear[3];
+    }
+
+    /**
+     * Restituisce il numero di sponde del tavolo.
+     * @return Il numero di sponde
+     */
+    public int getWallCount() {
+        return this.walls.length;
+    }
+
+    /**
+     * Restituisce il numero di buche del tavolo.
+     * @return Il numero di buche
+     */
+    public int getPocketCount() {
+        return this.pocketX.length;
+    }
+
+    /**
+     * Determina se la geometria <code>pOther</code> descrive lo stesso tavolo: stesse dimensioni, stesse
+     * sponde e stesse buche, nello stesso ordine.
+     * @param pOther La geometria da confrontare
+     * @return <code>true</code> se le due geometrie descrivono lo stesso tavolo;<br>
+     *         <code>false</code> altrimenti.
+     */
+    public boolean isSameTable(TableGeometry pOther) {
+        return this.width == pOther.width && this.height == pOther.height
+                && java.util.Arrays.equals(this.wallX1, pOther.wallX1)
+                && java.util.Arrays.equals(this.wallY1, pOther.wallY1)
+                && java.util.Arrays.equals(this.wallX2, pOther.wallX2)
+                && java.util.Arrays.equals(this.wallY2, pOther.wallY2)
+                && java.util.Arrays.equals(this.pocketX, pOther.pocketX)
+                && java.util.Arrays.equals(this.pocketY, pOther.pocketY);
+    }
+
+    /**
+     * Calcola l'area libera allargando un pixel alla volta, a partire dal centro del tavolo, ognuno dei
+     * quattro lati del rettangolo finché il rettangolo resta libero.
+     * @return Le coordinate minime e massime del rettangolo
+     */
+    private double[] computeClearArea() {
+        double[] box = {this.width / 2.0, this.height / 2.0, this.width / 2.0, this.height / 2.0};
+        if (!this.isClearArea(box)) {
+            return new double[]{1, 1, 0, 0};
+        }
+        boolean[] growing = {true, true, true, true};
+        boolean grown = true;
+        while (grown) {
+            grown = false;
+            for (int side = 0; side < 4; side++) {
+                if (growing[side]) {
+                    double previous = box[side];
+                    box[side] += side < 2 ? -1 : 1;
+                    if (this.isClearArea(box)) {
+                        grown = true;
+                    } else {
+                        box[side] = previous;
+                        growing[side] = false;
+                    }
+                }
+            }
+        }
+        return box;
+    }
+
+    /**
+     * Determina se nessuna palla con il centro nel rettangolo <code>pBox</code> può toccare una sponda o
+     * cadere in buca. Una palla tocca una sponda (vedi <code>Wall.isTouching</code>) se il suo centro dista
+     * meno di un raggio da uno dei punti estremali, oppure se si trova nella striscia, larga quanto la
+     * sponda e illimitata dal lato del muro, che inizia un raggio davanti alla sponda: il rettangolo deve
+     * quindi essere separato da questa striscia, verificato con il teorema degli assi separatori sugli assi
+     * del tavolo e su quelli della sponda. Cade in buca se il suo centro, troncato all'intero, dista al
+     * massimo un raggio dal centro della buca.
+     */
+    private boolean isClearArea(double[] pBox) {
+        double minX = pBox[0], minY = pBox[1], maxX = pBox[2], maxY = pBox[3];
+        double reach = Sphere2D.BALL_SIZE / 2 + CLEAR_MARGIN;
+        for (int p = 0; p < this.pocketX.length; p++) {
+            // Il troncamento all'intero sposta il centro di meno di un pixel per asse
+            if (boxDistance(pBox, this.pocketX[p], this.pocketY[p]) <= reach + Math.sqrt(2)) {
+                return false;
+            }
+        }
+        for (int w = 0; w < this.walls.length; w++) {
+            if (boxDistance(pBox, this.wallX1[w], this.wallY1[w]) <= reach
+                    || boxDistance(pBox, this.wallX2[w], this.wallY2[w]) <= reach) {
+                return false;
+            }
+            // Coordinate ruotate come in Wall: la sponda è orizzontale ed il muro si trova verso v crescenti
+            double angle = Math.atan2(this.wallY1[w] - this.wallY2[w], this.wallX2[w] - this.wallX1[w]);
+            double cos = Math.cos(angle), sin = Math.sin(angle);
+            double u1 = this.wallX1[w] * cos - this.wallY1[w] * sin - CLEAR_MARGIN;
+            double u2 = this.wallX2[w] * cos - this.wallY2[w] * sin + CLEAR_MARGIN;
+            double v1 = this.wallX1[w] * sin + this.wallY1[w] * cos - reach;
+            double boxMinU = Math.min(minX * cos, maxX * cos) + Math.min(-minY * sin, -maxY * sin);
+            double boxMaxU = Math.max(minX * cos, maxX * cos) + Math.max(-minY * sin, -maxY * sin);
+            double boxMaxV = Math.max(minX * sin, maxX * sin) + Math.max(minY * cos, maxY * cos);
+            if (boxMaxU < u1 || boxMinU > u2 || boxMaxV < v1) {
+                continue;
+            }
+            // Proiezioni della striscia sugli assi del tavolo: x = u cos + v sin, y = v cos - u sin
+            double stripMinX = Math.min(u1 * cos, u2 * cos) + (sin > 0 ? v1 * sin : sin < 0 ? Double.NEGATIVE_INFINITY : 0);
+            double stripMaxX = Math.max(u1 * cos, u2 * cos) + (sin < 0 ? v1 * sin : sin > 0 ? Double.POSITIVE_INFINITY : 0);
+            double stripMinY = Math.min(-u1 * sin, -u2 * sin) + (cos > 0 ? v1 * cos : cos < 0 ? Double.NEGATIVE_INFINITY : 0);
+            double stripMaxY = Math.max(-u1 * sin, -u2 * sin) + (cos < 0 ? v1 * cos : cos > 0 ? Double.POSITIVE_INFINITY : 0);
+            if (stripMaxX < minX || stripMinX > maxX || stripMaxY < minY || stripMinY > maxY) {
+                continue;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce la distanza tra il punto <code>(pX,pY)</code> ed il rettangolo <code>pBox</code>.
+     */
+    private static double boxDistance(double[] pBox, double pX, double pY) {
+        double dx = Math.max(0, Math.max(pBox[0] - pX, pX - pBox[2]));
+        double dy = Math.max(0, Math.max(pBox[1] - pY, pY - pBox[3]));
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Carica la geometria di un tavolo da un file di definizione contenuto nella sottocartella
+     * {@link #tablesDirectory}.
+     * @param pName Il nome del file (estensione compresa)
+     * @return La geometria del tavolo
+     * @throws IOException Se il file non esiste o non è un file di definizione valido
+     */
+    public static TableGeometry load(String pName) throws IOException {
+        InputStream in = TableGeometry.class.getResourceAsStream(tablesDirectory + pName);
+        if (in == null) {
+            throw new IOException("Table definition not found: " + tablesDirectory + pName);
+        }
+        try {
+            return load(new InputStreamReader(in, "UTF-8"));
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Carica la geometria di un tavolo da un file di definizione. Il file contiene una direttiva per riga;
+     * le righe vuote e quelle che iniziano con <code>#</code> vengono ignorate.
+     * <br><br>
+     * <code>size</code> <i>larghezza altezza</i> - Le dimensioni del tavolo (obbligatoria);<br>
+     * <code>cushion</code> <i>x1 y1 x2 y2</i> - Una sponda, con i punti estremali nell'ordine richiesto dal
+     * costruttore di <code>Wall</code>;<br>
+     * <code>pocket</code> <i>x y</i> - Il centro di una buca.
+     * <br><br>
+     * Sponde e buche vengono numerate nell'ordine in cui compaiono nel file.
+     * @param pReader Il file di definizione
+     * @return La geometria del tavolo
+     * @throws IOException Se il file non può essere letto o non è un file di definizione valido
+     */
+    public static TableGeometry load(Reader pReader) throws IOException {
+        BufferedReader reader = new BufferedReader(pReader);
+        int width = -1, height = -1;
+        java.util.List<Wall> walls = new java.util.ArrayList<Wall>();
+        java.util.List<double[]> pockets = new java.util.ArrayList<double[]>();
+        String line;
+        int number = 0;
+        while ((line = reader.readLine()) != null) {
+            number++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] tokens = line.split("\\s+");
+            try {
+                if (tokens[0].equals("size") && tokens.length == 3) {
+                    width = Integer.parseInt(tokens[1]);
+                    height = Integer.parseInt(tokens[2]);
+                } else if (tokens[0].equals("cushion") && tokens.length == 5) {
+                    Point a = new Point(Double.parseDouble(tokens[1]), Double.parseDouble(tokens[2]));
+                    Point b = new Point(Double.parseDouble(tokens[3]), Double.parseDouble(tokens[4]));
+                    if (a.equals(b)) {
+                        throw new IOException("Line " + number + ": degenerate cushion");
+                    }
+                    walls.add(new Wall(a, b));
+                } else if (tokens[0].equals("pocket") && tokens.length == 3) {
+                    pockets.add(new double[]{Double.parseDouble(tokens[1]), Double.parseDouble(tokens[2])});
+                } else {
+                    throw new IOException("Line " + number + ": unknown directive \"" + line + "\"");
+                }
+            } catch (NumberFormatException ex) {
+                throw new IOException("Line " + number + ": " + ex.getMessage());
+            }
+        }
+        if (width <= 0 || height <= 0) {
+            throw new IOException("Missing or invalid table size");
+        }
+        double[] pocketX = new double[pockets.size()];
+        double[] pocketY = new double[pockets.size()];
+        for (int i = 0; i < pocketX.length; i++) {
+            pocketX[i] = pockets.get(i)[0];
+            pocketY[i] = pockets.get(i)[1];
+        }
+        return new TableGeometry(width, height, walls.toArray(new Wall[walls.size()]), pocketX, pocketY);
+    }
+
+    /**
+     * Carica il tavolo standard dal file <code>standard.table</code>, verificando che coincida con gli enum
+     * <code>PoolTable.Cushion</code> e <code>PoolTable.Pocket</code>.
+     */
+    private static TableGeometry loadStandard() {
+        TableGeometry geometry;
+        try {
+            geometry = load("standard.table");
+        } catch (IOException ex) {
+            throw new IllegalStateException("Cannot load the standard table", ex);
+        }
+        if (!geometry.isSameTable(compileStandard())) {
+            throw new IllegalStateException("standard.table does not match PoolTable.Cushion and PoolTable.Pocket");
+        }
+        return geometry;
+    }
+
+    private static TableGeometry compileStandard() {
+        PoolTable.Cushion[] cushions = PoolTable.Cushion.values();
+        Wall[] walls = new Wall[cushions.length];
+        for (PoolTable.Cushion c : cushions) {
+            walls[c.ordinal()] = c.getWall();
+        }
+        PoolTable.Pocket[] pockets = PoolTable.Pocket.values();
+        double[] pocketX = new double[pockets.length];
+        double[] pocketY = new double[pockets.length];
+        for (PoolTable.Pocket p : pockets) {
+            pocketX[p.ordinal()] = p.getX();
+            pocketY[p.ordinal()] = p.getY();
+        }
+        return new TableGeometry(PoolTable.TABLE_SIZE.width, PoolTable.TABLE_SIZE.height, walls, pocketX, pocketY);
+    }
+}
@@ -0,0 +1,163 @@
+package pool;
+
+/**
+ * La classe <code>TableSettings</code> raccoglie le opzioni del motore fisico con le quali viene creato un
+ * <code>PoolTable</code>: il numero di sotto-step per step, il motore di simulazione ed i modelli
+ * facoltativi di <code>TableEngine</code>. I valori predefiniti riproducono la simulazione originale.
+ * <br><br>
+ * Il tavolo copia le impostazioni al momento della creazione, per cui modificarle in seguito non ha effetto
+ * sui tavoli già creati.
+ * @author Oneiros
+ */
+public class TableSettings {
+
+    private int substeps;
+    private TableEngine.Mode mode;
+    private boolean spinEnabled;
+    private boolean simultaneousContacts;
+    private boolean fastForward;
+    private double maxDisplacement;
+
+    /**
+     * Crea delle impostazioni con i valori predefiniti: un sotto-step per step, motore a step fissi e nessun
+     * modello facoltativo.
+     */
+    public TableSettings() {
+        this.substeps = 1;
+        this.mode = TableEngine.Mode.STEPPING;
+        this.spinEnabled = false;
+        this.simultaneousContacts = false;
+        this.fastForward = false;
+        this.maxDisplacement = 0;
+    }
+
+    /**
+     * Crea una copia delle impostazioni <code>pSettings</code>.
+     * @param pSettings Le impostazioni da copiare
+     */
+    public TableSettings(TableSettings pSettings) {
+        this.substeps = pSettings.substeps;
+        this.mode = pSettings.mode;
+        this.spinEnabled = pSettings.spinEnabled;
+        this.simultaneousContacts = pSettings.simultaneousContacts;
+        this.fastForward = pSettings.fastForward;
+        this.maxDisplacement = pSettings.maxDisplacement;
+    }
+
+    /**
+     * Imposta il numero di sotto-step fisici eseguiti per ogni step della simulazione.
+     * @param pSubsteps Il numero di sotto-step, almeno <code>1</code>
+     */
+    public void setSubsteps(int pSubsteps) {
+        if (pSubsteps < 1) {
+            throw new IllegalArgumentException("Substeps must be at least 1: " + pSubsteps);
+        }
+        this.substeps = pSubsteps;
+    }
+
+    /**
+     * Restituisce il numero di sotto-step fisici eseguiti per ogni step della simulazione.
+     * @return Il numero di sotto-step
+     */
+    public int getSubsteps() {
+        return this.substeps;
+    }
+
+    /**
+     * Imposta il motore di simulazione (vedi {@link TableEngine#setMode(TableEngine.Mode)}).
+     * @param pMode Il motore di simulazione
+     */
+    public void setMode(TableEngine.Mode pMode) {
+        this.mode = pMode;
+    }
+
+    /**
+     * Restituisce il motore di simulazione.
+     * @return Il motore di simulazione
+     */
+    public TableEngine.Mode getMode() {
+        return this.mode;
+    }
+
+    /**
+     * Attiva o disattiva la simulazione della rotazione delle palle (vedi
+     * {@link TableEngine#setSpinEnabled(boolean)}).
+     * @param pEnabled <code>true</code> per simulare la rotazione
+     */
+    public void setSpinEnabled(boolean pEnabled) {
+        this.spinEnabled = pEnabled;
+    }
+
+    /**
+     * Indica se viene simulata la rotazione delle palle.
+     * @return <code>true</code> se la rotazione viene simulata
+     */
+    public boolean isSpinEnabled() {
+        return this.spinEnabled;
+    }
+
+    /**
+     * Attiva o disattiva la risoluzione simultanea degli urti tra palle (vedi
+     * {@link TableEngine#setSimultaneousContacts(boolean)}).
+     * @param pEnabled <code>true</code> per risolvere simultaneamente gli urti
+     */
+    public void setSimultaneousContacts(boolean pEnabled) {
+        this.simultaneousContacts = pEnabled;
+    }
+
+    /**
+     * Indica se gli urti tra palle vengono risolti simultaneamente.
+     * @return <code>true</code> se gli urti vengono risolti simultaneamente
+     */
+    public boolean isSimultaneousContacts() {
+        return this.simultaneousContacts;
+    }
+
+    /**
+     * Attiva o disattiva il salto delle traiettorie che non possono più urtare nulla (vedi
+     * {@link TableEngine#setFastForward(boolean)}).
+     * @param pEnabled <code>true</code> per saltare le traiettorie
+     */
+    public void setFastForward(boolean pEnabled) {
+        this.fastForward = pEnabled;
+    }
+
+    /**
+     * Indica se vengono saltate le traiettorie che non possono più urtare nulla.
+     * @return <code>true</code> se le traiettorie vengono saltate
+     */
+    public boolean isFastForward() {
+        return this.fastForward;
+    }
+
+    /**
+     * Imposta il massimo spostamento di una palla in un sotto-step (vedi
+     * {@link TableEngine#setMaxDisplacement(double)}).
+     * @param pMaxDisplacement Il massimo spostamento, oppure <code>0</code> per utilizzare solo i sotto-step
+     *                         fissi
+     */
+    public void setMaxDisplacement(double pMaxDisplacement) {
+        this.maxDisplacement = pMaxDisplacement;
+    }
+
+    /**
+     * Restituisce il massimo spostamento di una palla in un sotto-step.
+     * @return Il massimo spostamento, oppure <code>0</code> se vengono utilizzati solo i sotto-step fissi
+     */
+    public double getMaxDisplacement() {
+        return this.maxDisplacement;
+    }
+
+    /**
+     * Applica le impostazioni del motore fisico a <code>pEngine</code>. Il numero di sotto-step non riguarda
+     * il motore ma chi lo fa avanzare, e non viene quindi applicato.
+     * @param pEngine Il motore da configurare
+     */
+    public void configure(TableEngine pEngine) {
+        pEngine.setMode(this.mode);
+        pEngine.setSpinEnabled(this.spinEnabled);
+        pEngine.setSimultaneousContacts(this.simultaneousContacts);
+        pEngine.setFastForward(this.fastForward);
+        pEngine.setMaxDisplacement(this.maxDisplacement);
+    }
+}
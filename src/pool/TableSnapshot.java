@@ -0,0 +1,70 @@
+package pool;
+
+/**
+ * La classe <code>TableSnapshot</code> memorizza in un unico array di <code>double</code> l'istantanea
+ * completa di una partita: lo stato del tavolo di un <code>TableEngine</code> e, se presente, lo stato del
+ * turno di un <code>GameManager</code>. Permette di provare un tiro ("what-if") e di tornare alla
+ * situazione precedente senza creare nuove palle né caricare immagini e suoni.
+ * <br><br>
+ * Esempio:<br>
+ * <code>
+ * TableSnapshot snapshot = new TableSnapshot(engine, gameManager);<br>
+ * snapshot.save();<br>
+ * engine.strike(16, 0.5);<br>
+ * engine.simulate();<br>
+ * snapshot.restore();</code>
+ * <br><br>
+ * Sia il salvataggio sia il ripristino copiano un numero costante di valori e non allocano memoria.
+ * @author Oneiros
+ */
+public class TableSnapshot {
+
+    private final TableEngine engine;
+    private final GameManager gameManager;
+    private final double[] data;
+
+    /**
+     * Crea un'istantanea vuota del tavolo <code>pEngine</code> e della partita <code>pGameManager</code>.
+     * @param pEngine Il tavolo
+     * @param pGameManager La partita, oppure <code>null</code> per salvare solo lo stato del tavolo
+     */
+    public TableSnapshot(TableEngine pEngine, GameManager pGameManager) {
+        this.engine = pEngine;
+        this.gameManager = pGameManager;
+        int length = pEngine.getSnapshotLength();
+        if (pGameManager != null) {
+            length += GameManager.SNAPSHOT_LENGTH;
+        }
+        this.data = new double[length];
+    }
+
+    /**
+     * Salva lo stato attuale del tavolo e della partita, sovrascrivendo quello salvato in precedenza.
+     */
+    public void save() {
+        this.engine.snapshot(this.data, 0);
+        if (this.gameManager != null) {
+            this.gameManager.snapshot(this.data, this.engine.getSnapshotLength());
+        }
+    }
+
+    /**
+     * Riporta il tavolo e la partita allo stato salvato con l'ultima chiamata a {@link #save()}.
+     */
+    public void restore() {
+        this.engine.restore(this.data, 0);
+        if (this.gameManager != null) {
+            this.gameManager.restore(this.data, this.engine.getSnapshotLength());
+        }
+    }
+
+    /**
+     * Restituisce l'array che contiene l'istantanea. Può essere copiato per conservare più istantanee
+     * dello stesso tavolo e ripristinato con <code>TableEngine.restore</code> e
+     * <code>GameManager.restore</code>.
+     * @return L'array che contiene l'istantanea
+     */
+    public double[] getData() {
+        return this.data;
+    }
+}
@@ -0,0 +1,222 @@
+package pool;
+
+import phisic.*;
+
+/**
+ * La classe <code>TableSymmetry</code> sfrutta le simmetrie di un tavolo da biliardo per ricondurre
+ * disposizioni equivalenti delle palle ad un'unica disposizione "canonica". Il tavolo standard è
+ * simmetrico rispetto ad entrambi gli assi mediani: un tiro speculare di un altro tiro produce un esito
+ * speculare, per cui ogni esito calcolato vale per un massimo di quattro disposizioni equivalenti.
+ * <br><br>
+ * Tra le trasformazioni che lasciano invariate sponde e buche del tavolo viene scelta come canonica quella
+ * che produce l'hash minore (vedi <code>TableEngine.getHash()</code>). A causa degli arrotondamenti, la
+ * simulazione di un tiro speculare coincide con quella del tiro originale solo a meno di errori
+ * numerici trascurabili.
+ * @author Oneiros
+ */
+public class TableSymmetry {
+
+    private final TableGeometry geometry;
+    private final Transform[] transforms;
+    private final int[][] pockets;
+
+    /**
+     * L'enum <code>Transform</code> elenca le trasformazioni del gruppo di simmetria del tavolo. Ogni
+     * trasformazione coincide con la propria inversa.
+     */
+    public enum Transform {
+
+        /** La trasformazione identica. */
+        IDENTITY(false, false),
+        /** La riflessione rispetto all'asse verticale del tavolo: <code>x → width - x</code>. */
+        MIRROR_X(true, false),
+        /** La riflessione rispetto all'asse orizzontale del tavolo: <code>y → height - y</code>. */
+        MIRROR_Y(false, true),
+        /** La rotazione di mezzo giro attorno al centro del tavolo. */
+        ROTATION(true, true);
+        private final boolean mirrorX;
+        private final boolean mirrorY;
+
+        private Transform(boolean pMirrorX, boolean pMirrorY) {
+            this.mirrorX = pMirrorX;
+            this.mirrorY = pMirrorY;
+        }
+
+        /**
+         * Trasforma un'angolazione di tiro, espressa come in <code>TableEngine.strike</code>.
+         * @param pAngle L'angolazione in radianti
+         * @return L'angolazione trasformata
+         */
+        public double transformAngle(double pAngle) {
+            double angle = this.mirrorY ? -pAngle : pAngle;
+            return this.mirrorX ? Math.PI - angle : angle;
+        }
+
+        private double transformX(double pX, double pWidth) {
+            return this.mirrorX ? pWidth - pX : pX;
+        }
+
+        private double transformY(double pY, double pHeight) {
+            return this.mirrorY ? pHeight - pY : pY;
+        }
+    }
+
+    /**
+     * Crea ed inizializza il gruppo di simmetria del tavolo <code>pGeometry</code>, composto dalle sole
+     * trasformazioni che portano ogni sponda ed ogni buca su una sponda ed una buca del tavolo stesso.
+     * @param pGeometry La geometria del tavolo
+     */
+    public TableSymmetry(TableGeometry pGeometry) {
+        this.geometry = pGeometry;
+        java.util.List<Transform> valid = new java.util.ArrayList<Transform>();
+        this.pockets = new int[Transform.values().length][];
+        for (Transform t : Transform.values()) {
+            int[] map = this.getPocketMap(t);
+            if (map != null && this.isInvariant(t)) {
+                valid.add(t);
+                this.pockets[t.ordinal()] = map;
+            }
+        }
+        this.transforms = valid.toArray(new Transform[valid.size()]);
+    }
+
+    /**
+     * Restituisce le trasformazioni che lasciano invariato il tavolo, compresa quella identica.
+     * @return Le trasformazioni del gruppo di simmetria
+     */
+    public Transform[] getTransforms() {
+        return this.transforms.clone();
+    }
+
+    /**
+     * Restituisce la trasformazione che porta lo stato <code>pState</code> nella sua forma canonica.
+     * @param pState Lo stato delle palle
+     * @return La trasformazione canonica
+     */
+    public Transform getCanonical(BallState pState) {
+        Transform canonical = Transform.IDENTITY;
+        long min = this.getHash(pState, canonical);
+        for (Transform t : this.transforms) {
+            long hash = this.getHash(pState, t);
+            if (hash < min) {
+                min = hash;
+                canonical = t;
+            }
+        }
+        return canonical;
+    }
+
+    /**
+     * Calcola l'hash dello stato <code>pState</code> trasformato con <code>pTransform</code>, senza
+     * modificarlo. Per la trasformazione identica il risultato coincide con <code>TableEngine.getHash()</code>.
+     * @param pState Lo stato delle palle
+     * @param pTransform La trasformazione
+     * @return L'hash dello stato trasformato
+     */
+    public long getHash(BallState pState, Transform pTransform) {
+        long hash = 0;
+        for (int i = 0; i < pState.size(); i++) {
+            hash ^= BallHash.getKey(i, pTransform.transformX(pState.x[i], this.geometry.width),
+                    pTransform.transformY(pState.y[i], this.geometry.height),
+                    pState.status[i] == BallState.POCKETED, TableEngine.HASH_QUANTUM);
+        }
+        return hash;
+    }
+
+    /**
+     * Trasforma lo stato <code>pState</code>: posizioni e velocità di tutte le palle.
+     * @param pState Lo stato delle palle
+     * @param pTransform La trasformazione
+     */
+    public void transform(BallState pState, Transform pTransform) {
+        for (int i = 0; i < pState.size(); i++) {
+            pState.x[i] = pTransform.transformX(pState.x[i], this.geometry.width);
+            pState.y[i] = pTransform.transformY(pState.y[i], this.geometry.height);
+            if (pTransform.mirrorX) {
+                pState.vx[i] = -pState.vx[i];
+            }
+            if (pTransform.mirrorY) {
+                pState.vy[i] = -pState.vy[i];
+            }
+        }
+    }
+
+    /**
+     * Trasforma un'istantanea salvata con <code>TableEngine.snapshot</code> da un tavolo con
+     * <code>pBalls</code> palle.
+     * @param pData L'array contenente l'istantanea
+     * @param pOffset La posizione del primo elemento dell'istantanea
+     * @param pBalls Il numero di palle
+     * @param pTransform La trasformazione
+     */
+    public void transform(double[] pData, int pOffset, int pBalls, Transform pTransform) {
+        for (int i = 0; i < pBalls; i++) {
+            int x = pOffset + i;
+            if (pTransform.mirrorX) {
+                pData[x] = this.geometry.width - pData[x];
+                pData[x + 2 * pBalls] = -pData[x + 2 * pBalls];
+            }
+            if (pTransform.mirrorY) {
+                pData[x + pBalls] = this.geometry.height - pData[x + pBalls];
+                pData[x + 3 * pBalls] = -pData[x + 3 * pBalls];
+            }
+        }
+    }
+
+    /**
+     * Restituisce l'indice della buca nella quale viene portata la buca <code>pPocket</code>.
+     * @param pPocket L'indice della buca
+     * @param pTransform Una trasformazione del gruppo di simmetria
+     * @return L'indice della buca trasformata
+     */
+    public int transformPocket(int pPocket, Transform pTransform) {
+        return this.pockets[pTransform.ordinal()][pPocket];
+    }
+
+    /**
+     * Restituisce la corrispondenza tra le buche e le loro trasformate, oppure <code>null</code> se
+     * qualche buca non viene portata su un'altra buca.
+     */
+    private int[] getPocketMap(Transform pTransform) {
+        TableGeometry g = this.geometry;
+        int[] map = new int[g.getPocketCount()];
+        for (int p = 0; p < map.length; p++) {
+            map[p] = -1;
+            double x = pTransform.transformX(g.pocketX[p], g.width);
+            double y = pTransform.transformY(g.pocketY[p], g.height);
+            for (int q = 0; q < map.length; q++) {
+                if (Math.abs(g.pocketX[q] - x) < 1e-9 && Math.abs(g.pocketY[q] - y) < 1e-9) {
+                    map[p] = q;
+                }
+            }
+            if (map[p] < 0) {
+                return null;
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Determina se ogni sponda viene portata su un'altra sponda. Una riflessione inverte il verso dei
+     * muri, per cui in quel caso i punti estremali vengono confrontati in ordine inverso.
+     */
+    private boolean isInvariant(Transform pTransform) {
+        TableGeometry g = this.geometry;
+        boolean reversed = pTransform.mirrorX != pTransform.mirrorY;
+        for (int w = 0; w < g.getWallCount(); w++) {
+            double x1 = pTransform.transformX(reversed ? g.wallX2[w] : g.wallX1[w], g.width);
+            double y1 = pTransform.transformY(reversed ? g.wallY2[w] : g.wallY1[w], g.height);
+            double x2 = pTransform.transformX(reversed ? g.wallX1[w] : g.wallX2[w], g.width);
+            double y2 = pTransform.transformY(reversed ? g.wallY1[w] : g.wallY2[w], g.height);
+            boolean found = false;
+            for (int v = 0; v < g.getWallCount() && !found; v++) {
+                found = Math.abs(g.wallX1[v] - x1) < 1e-9 && Math.abs(g.wallY1[v] - y1) < 1e-9
+                        && Math.abs(g.wallX2[v] - x2) < 1e-9 && Math.abs(g.wallY2[v] - y2) < 1e-9;
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
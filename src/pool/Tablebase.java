@@ -0,0 +1,300 @@
+package pool;
+
+import java.io.File;
+import java.io.IOException;
+import phisic.*;
+
+/**
+ * La classe <code>Tablebase</code> è una tabella dei finali di partita: per ogni disposizione discretizzata
+ * con la palla bianca, la palla 8 e al più {@link #getMaxOwn()} palle del giocatore di turno, contiene il
+ * valore calcolato da <code>TablebaseGenerator</code>, la probabilità di vittoria stimata del giocatore di
+ * turno. Le palle dell'avversario non vengono considerate. Il tiro non viene memorizzato: nelle situazioni
+ * reali le palle non si trovano al centro delle celle, per cui <code>EndgameSolver</code> lo cerca di nuovo.
+ * <br><br>
+ * Le posizioni delle palle vengono ricondotte al centro di una cella di una griglia uniforme che copre il
+ * piano di gioco. La tabella con <code>k</code> palle del giocatore contiene un record per ogni
+ * combinazione di celle (e, se <code>k = 0</code>, per ogni buca dichiarata per la palla 8), per cui
+ * l'indice di una disposizione si calcola direttamente e la consultazione richiede un tempo costante.
+ * Il file viene mappato in memoria.
+ * <br><br>
+ * Formato del file (big-endian): un'intestazione di {@link #HEADER} byte con {@link #MAGIC},
+ * {@link #VERSION}, numero massimo di palle del giocatore, colonne e righe della griglia, numero di buche,
+ * lato delle celle e coordinate del primo centro (<code>double</code>), seguita dalle tabelle per
+ * <code>k = 0, 1, ...</code>. Ogni record occupa {@link #RECORD} byte: valore (<code>float</code>) e
+ * stato del record (<code>byte</code>).
+ * @author Oneiros
+ */
+public class Tablebase {
+
+    /** Il numero che identifica i file della tabella dei finali ("8TBS") */
+    public static final int MAGIC = 0x38544253;
+    /** La versione del formato del file */
+    public static final int VERSION = 2;
+    /** La dimensione dell'intestazione in byte */
+    public static final int HEADER = 64;
+    /** La dimensione di un record in byte */
+    public static final int RECORD = 5;
+    /** Il file dal quale il gioco carica la tabella dei finali, se esiste */
+    public static String DEFAULT_FILE = "endgame.tb";
+    /** Lo stato di un record non ancora calcolato */
+    static final byte UNSOLVED = 0;
+    /** Lo stato di un record calcolato */
+    static final byte SOLVED = 1;
+    /** Lo stato di un record che non corrisponde ad una disposizione valida (due palle nella stessa cella) */
+    static final byte INVALID = 2;
+    private final java.nio.MappedByteBuffer buffer;
+    private final int maxOwn;
+    private final int columns;
+    private final int rows;
+    private final int pockets;
+    private final double cellSize;
+    private final double minX;
+    private final double minY;
+    private final long[] offsets;
+
+    private Tablebase(java.nio.MappedByteBuffer pBuffer) throws IOException {
+        this.buffer = pBuffer;
+        if (pBuffer.capacity() < HEADER || pBuffer.getInt(0) != MAGIC) {
+            throw new IOException("Not an endgame tablebase");
+        }
+        if (pBuffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported tablebase version " + pBuffer.getInt(4));
+        }
+        this.maxOwn = pBuffer.getInt(8);
+        this.columns = pBuffer.getInt(12);
+        this.rows = pBuffer.getInt(16);
+        this.pockets = pBuffer.getInt(20);
+        this.cellSize = pBuffer.getDouble(24);
+        this.minX = pBuffer.getDouble(32);
+        this.minY = pBuffer.getDouble(40);
+        this.offsets = getOffsets(this.maxOwn, this.columns * this.rows, this.pockets);
+        if (pBuffer.capacity() < this.offsets[this.maxOwn + 1]) {
+            throw new IOException("Truncated tablebase");
+        }
+    }
+
+    /**
+     * Apre in sola lettura la tabella dei finali contenuta nel file <code>pFile</code>.
+     * @param pFile Il file
+     * @return La tabella dei finali
+     * @throws IOException Se il file non può essere letto o non è una tabella valida
+     */
+    public static Tablebase open(File pFile) throws IOException {
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(pFile, "r");
+        try {
+            java.nio.channels.FileChannel channel = file.getChannel();
+            return new Tablebase(channel.map(java.nio.channels.FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Apre in scrittura la tabella dei finali contenuta nel file <code>pFile</code>, creandola vuota se il
+     * file non esiste. Se il file esiste i record già calcolati vengono conservati, purché i parametri
+     * coincidano.
+     * @param pFile Il file
+     * @param pGeometry La geometria del tavolo
+     * @param pCellSize Il lato delle celle, non inferiore al diametro delle palle
+     * @param pMaxOwn Il numero massimo di palle del giocatore di turno
+     * @return La tabella dei finali
+     * @throws IOException Se il file non può essere scritto o contiene una tabella con parametri diversi
+     */
+    static Tablebase openForWriting(File pFile, TableGeometry pGeometry, double pCellSize, int pMaxOwn)
+            throws IOException {
+        if (pCellSize < Sphere2D.BALL_SIZE) {
+            throw new IllegalArgumentException("Cells must be at least as large as a ball");
+        }
+        double left = getInner(pGeometry, true, false), right = getInner(pGeometry, true, true);
+        double top = getInner(pGeometry, false, false), bottom = getInner(pGeometry, false, true);
+        int columns = Math.max(1, (int) ((right - left) / pCellSize));
+        int rows = Math.max(1, (int) ((bottom - top) / pCellSize));
+        double firstX = left + (right - left - (columns - 1) * pCellSize) / 2;
+        double firstY = top + (bottom - top - (rows - 1) * pCellSize) / 2;
+        long size = getOffsets(pMaxOwn, columns * rows, pGeometry.getPocketCount())[pMaxOwn + 1];
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Tablebase too large (" + size + " bytes): use larger cells");
+        }
+        boolean exists = pFile.isFile() && pFile.length() > 0;
+        if (exists && pFile.length() != size) {
+            throw new IOException("Existing tablebase was built with different parameters");
+        }
+        java.io.RandomAccessFile file = new java.io.RandomAccessFile(pFile, "rw");
+        try {
+            file.setLength(size);
+            java.nio.channels.FileChannel channel = file.getChannel();
+            java.nio.MappedByteBuffer buffer = channel.map(java.nio.channels.FileChannel.MapMode.READ_WRITE, 0, size);
+            if (!exists) {
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putInt(8, pMaxOwn);
+                buffer.putInt(12, columns);
+                buffer.putInt(16, rows);
+                buffer.putInt(20, pGeometry.getPocketCount());
+                buffer.putDouble(24, pCellSize);
+                buffer.putDouble(32, firstX);
+                buffer.putDouble(40, firstY);
+            }
+            Tablebase tablebase = new Tablebase(buffer);
+            if (tablebase.maxOwn != pMaxOwn || tablebase.columns != columns || tablebase.rows != rows
+                    || tablebase.cellSize != pCellSize) {
+                throw new IOException("Existing tablebase was built with different parameters");
+            }
+            return tablebase;
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Restituisce il numero massimo di palle del giocatore di turno contenute nella tabella.
+     * @return Il numero massimo di palle del giocatore
+     */
+    public int getMaxOwn() {
+        return this.maxOwn;
+    }
+
+    /**
+     * Restituisce il numero di celle della griglia.
+     * @return Il numero di celle
+     */
+    public int getCells() {
+        return this.columns * this.rows;
+    }
+
+    /**
+     * Restituisce il numero di record della tabella con <code>pOwn</code> palle del giocatore.
+     * @param pOwn Il numero di palle del giocatore
+     * @return Il numero di record
+     */
+    public long getSize(int pOwn) {
+        return (this.offsets[pOwn + 1] - this.offsets[pOwn]) / RECORD;
+    }
+
+    /**
+     * Restituisce il valore della situazione di gioco per il giocatore di turno, se è contenuta nella
+     * tabella: palla bianca e palla 8 in gioco, e non più di {@link #getMaxOwn()} palle del giocatore.
+     * @param pState Lo stato delle palle
+     * @param pGame La partita; se il giocatore ha già imbucato tutte le sue palle deve aver dichiarato la buca
+     * @return La probabilità di vittoria stimata, oppure <code>NaN</code> se la situazione non è contenuta
+     *         nella tabella o il record non è stato ancora calcolato
+     */
+    public double getValue(BallState pState, GameManager pGame) {
+        int record = this.getRecord(pState, pGame);
+        if (record < 0 || this.buffer.get(record + 4) != SOLVED) {
+            return Double.NaN;
+        }
+        return this.buffer.getFloat(record);
+    }
+
+    /**
+     * Restituisce la posizione nel file del record corrispondente alla situazione di gioco, oppure
+     * <code>-1</code> se la situazione non è contenuta nella tabella.
+     */
+    int getRecord(BallState pState, GameManager pGame) {
+        if (pState.status[0] == BallState.POCKETED || pState.status[8] == BallState.POCKETED
+                || pGame.currentShooter.getType() == GameManager.BallType.NONE) {
+            return -1;
+        }
+        int own = 0;
+        long index = this.getCell(pState.x[0], pState.y[0]) * (long) this.getCells()
+                + this.getCell(pState.x[8], pState.y[8]);
+        for (int i = 1; i < pState.size(); i++) {
+            if (pState.status[i] == BallState.IN_PLAY && pGame.currentShooter.own(i)) {
+                if (++own > this.maxOwn) {
+                    return -1;
+                }
+                index = index * this.getCells() + this.getCell(pState.x[i], pState.y[i]);
+            }
+        }
+        if (own == 0) {
+            if (pGame.getDesignatedPocket() < 0) {
+                return -1;
+            }
+            index += pGame.getDesignatedPocket() * (long) this.getCells() * this.getCells();
+        }
+        return (int) (this.offsets[own] + index * RECORD);
+    }
+
+    /**
+     * Restituisce la posizione nel file del record <code>pIndex</code> della tabella con <code>pOwn</code>
+     * palle del giocatore.
+     */
+    int getRecord(int pOwn, long pIndex) {
+        return (int) (this.offsets[pOwn] + pIndex * RECORD);
+    }
+
+    /**
+     * Scompone l'indice <code>pIndex</code> della tabella con <code>pOwn</code> palle del giocatore nelle
+     * celle di palla bianca, palla 8 e palle del giocatore (in quest'ordine) e nella buca dichiarata, che
+     * viene restituita.
+     */
+    int decode(int pOwn, long pIndex, int[] pCells) {
+        long index = pIndex;
+        for (int i = pOwn + 1; i >= 0; i--) {
+            pCells[i] = (int) (index % this.getCells());
+            index /= this.getCells();
+        }
+        return pOwn == 0 ? (int) index : -1;
+    }
+
+    double getCellX(int pCell) {
+        return this.minX + (pCell % this.columns) * this.cellSize;
+    }
+
+    double getCellY(int pCell) {
+        return this.minY + (pCell / this.columns) * this.cellSize;
+    }
+
+    byte getStatus(int pRecord) {
+        return this.buffer.get(pRecord + 4);
+    }
+
+    void put(int pRecord, byte pStatus, double pValue) {
+        this.buffer.putFloat(pRecord, (float) pValue);
+        this.buffer.put(pRecord + 4, pStatus);
+    }
+
+    /**
+     * Scrive su disco i record modificati.
+     */
+    void force() {
+        this.buffer.force();
+    }
+
+    private int getCell(double pX, double pY) {
+        int column = (int) Math.round((pX - this.minX) / this.cellSize);
+        int row = (int) Math.round((pY - this.minY) / this.cellSize);
+        column = Math.max(0, Math.min(this.columns - 1, column));
+        row = Math.max(0, Math.min(this.rows - 1, row));
+        return row * this.columns + column;
+    }
+
+    private static long[] getOffsets(int pMaxOwn, int pCells, int pPockets) {
+        long[] offsets = new long[pMaxOwn + 2];
+        offsets[0] = HEADER;
+        long records = (long) pPockets * pCells * pCells;
+        for (int k = 0; k <= pMaxOwn; k++) {
+            offsets[k + 1] = offsets[k] + records * RECORD;
+            records = (k == 0 ? (long) pCells * pCells : records) * pCells;
+        }
+        return offsets;
+    }
+
+    /**
+     * Restituisce il limite interno del piano di gioco lungo un asse, ridotto del raggio di una palla: il
+     * più interno tra i bordi rettilinei paralleli all'altro asse.
+     */
+    private static double getInner(TableGeometry pGeometry, boolean pHorizontal, boolean pFar) {
+        double middle = pHorizontal ? pGeometry.width / 2 : pGeometry.height / 2;
+        double limit = pFar ? (pHorizontal ? pGeometry.width : pGeometry.height) : 0;
+        for (int w = 0; w < pGeometry.getWallCount(); w++) {
+            double a = pHorizontal ? pGeometry.wallX1[w] : pGeometry.wallY1[w];
+            double b = pHorizontal ? pGeometry.wallX2[w] : pGeometry.wallY2[w];
+            if (a == b) {
+                limit = pFar ? (a > middle ? Math.min(limit, a) : limit) : (a < middle ? Math.max(limit, a) : limit);
+            }
+        }
+        return pFar ? limit - Sphere2D.BALL_SIZE / 2 : limit + Sphere2D.BALL_SIZE / 2;
+    }
+}
@@ -0,0 +1,189 @@
+package pool;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import phisic.*;
+
+/**
+ * La classe <code>TablebaseGenerator</code> costruisce fuori linea la tabella dei finali (vedi
+ * <code>Tablebase</code>) per induzione all'indietro sul numero di palle del giocatore di turno: prima le
+ * disposizioni con la sola palla 8 (che si concludono con la vittoria o la sconfitta), poi quelle con una
+ * palla del giocatore, il cui valore dipende dalle disposizioni già calcolate, e così via. Ogni
+ * disposizione viene risolta da un <code>EndgameSolver</code>.
+ * <br><br>
+ * I record vengono calcolati a blocchi in parallelo e scritti su disco al termine di ogni blocco; i
+ * record già calcolati vengono saltati, per cui una costruzione interrotta può essere ripresa rilanciando
+ * il programma con gli stessi parametri.
+ * <br><br>
+ * Utilizzo: <code>java pool.TablebaseGenerator file [lato delle celle] [palle del giocatore]
+ * [STEPPING|EVENT_DRIVEN]</code>
+ * @author Oneiros
+ */
+public class TablebaseGenerator {
+
+    /** Il numero di record scritti su disco alla volta */
+    public static final int BLOCK = 4096;
+    /** Il numero di record al di sotto del quale un gruppo non viene ulteriormente suddiviso */
+    public static final int THRESHOLD = 32;
+    private final Tablebase tablebase;
+    private final ForkJoinPool pool;
+    private final ThreadLocal<Worker> workers;
+
+    /**
+     * Lo stato di un thread: un risolutore e gli array nei quali costruire le disposizioni.
+     */
+    private class Worker {
+
+        private final EndgameSolver solver;
+        private final double[] data;
+        private final int[] cells;
+
+        private Worker(TableGeometry pGeometry, TableSettings pSettings) {
+            this.solver = new EndgameSolver(pGeometry, pSettings, tablebase);
+            this.data = new double[5 * TableEngine.BALLS + 1 + GameManager.SNAPSHOT_LENGTH];
+            this.cells = new int[tablebase.getMaxOwn() + 2];
+        }
+
+        /**
+         * Calcola il record <code>pIndex</code> della tabella con <code>pOwn</code> palle del giocatore.
+         */
+        private void solve(int pOwn, long pIndex) {
+            int record = tablebase.getRecord(pOwn, pIndex);
+            if (tablebase.getStatus(record) != Tablebase.UNSOLVED) {
+                return;
+            }
+            int pocket = tablebase.decode(pOwn, pIndex, this.cells);
+            for (int i = 0; i < pOwn + 2; i++) {
+                for (int j = 0; j < i; j++) {
+                    if (this.cells[i] == this.cells[j]) {
+                        tablebase.put(record, Tablebase.INVALID, Double.NaN);
+                        return;
+                    }
+                }
+            }
+            int n = TableEngine.BALLS;
+            java.util.Arrays.fill(this.data, 0);
+            for (int i = 0; i < n; i++) {
+                this.data[4 * n + i] = BallState.POCKETED;
+            }
+            // Palla bianca, palla 8 e palle piene 1..k nelle rispettive celle
+            for (int i = 0; i < pOwn + 2; i++) {
+                int ball = i == 0 ? 0 : (i == 1 ? 8 : i - 1);
+                this.data[ball] = tablebase.getCellX(this.cells[i]);
+                this.data[n + ball] = tablebase.getCellY(this.cells[i]);
+                this.data[4 * n + ball] = BallState.IN_PLAY;
+            }
+            // Il primo giocatore, di turno, ha le palle piene; il secondo ha già imbucato tutte le sue
+            int split = 5 * n + 1;
+            this.data[split + GameManager.SNAPSHOT_CURRENT] = 1;
+            this.data[split + GameManager.SNAPSHOT_POINTS_1] = 7 - pOwn;
+            this.data[split + GameManager.SNAPSHOT_TYPE_1] = GameManager.BallType.SOLID.ordinal();
+            this.data[split + GameManager.SNAPSHOT_POINTS_2] = 7;
+            this.data[split + GameManager.SNAPSHOT_TYPE_2] = GameManager.BallType.STRIPED.ordinal();
+            this.data[split + GameManager.SNAPSHOT_IN_TURN] = 1;
+            this.data[split + GameManager.SNAPSHOT_RESULT] = GameManager.Result.NEW_STRIKE.ordinal();
+            this.data[split + GameManager.SNAPSHOT_DESIGNATED_POCKET] = pocket;
+            this.solver.solve(this.data);
+            tablebase.put(record, Tablebase.SOLVED, this.solver.getValue());
+        }
+    }
+
+    /**
+     * Calcola un intervallo di record, suddividendolo se è troppo grande.
+     */
+    private class Task extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+        private final int own;
+        private final long from, to;
+
+        private Task(int pOwn, long pFrom, long pTo) {
+            this.own = pOwn;
+            this.from = pFrom;
+            this.to = pTo;
+        }
+
+        @Override
+        protected void compute() {
+            if (this.to - this.from <= THRESHOLD) {
+                Worker worker = workers.get();
+                for (long i = this.from; i < this.to; i++) {
+                    worker.solve(this.own, i);
+                }
+            } else {
+                long middle = (this.from + this.to) >>> 1;
+                invokeAll(new Task(this.own, this.from, middle), new Task(this.own, middle, this.to));
+            }
+        }
+    }
+
+    /**
+     * Crea ed inizializza un generatore che utilizza tutti i processori disponibili.
+     * @param pTablebase La tabella da calcolare, aperta in scrittura
+     * @param pGeometry La geometria del tavolo
+     * @param pSettings Le impostazioni del motore fisico, che dovrebbero coincidere con quelle del tavolo reale
+     */
+    TablebaseGenerator(Tablebase pTablebase, final TableGeometry pGeometry, TableSettings pSettings) {
+        this.tablebase = pTablebase;
+        final TableSettings settings = new TableSettings(pSettings);
+        this.pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        this.workers = new ThreadLocal<Worker>() {
+
+            @Override
+            protected Worker initialValue() {
+                return new Worker(pGeometry, settings);
+            }
+        };
+    }
+
+    /**
+     * Calcola tutti i record della tabella con <code>pOwn</code> palle del giocatore; le tabelle con meno
+     * palle devono essere già state calcolate.
+     * @param pOwn Il numero di palle del giocatore
+     * @param pLog Il flusso sul quale stampare l'avanzamento, oppure <code>null</code>
+     */
+    public void generate(int pOwn, java.io.PrintStream pLog) {
+        long size = this.tablebase.getSize(pOwn);
+        long start = System.currentTimeMillis();
+        for (long from = 0; from < size; from += BLOCK) {
+            long to = Math.min(size, from + BLOCK);
+            this.pool.invoke(new Task(pOwn, from, to));
+            this.tablebase.force();
+            if (pLog != null) {
+                double elapsed = (System.currentTimeMillis() - start) / 1000.0;
+                pLog.printf("%d own ball(s): %d/%d records (%.1f%%), %.0f s%n", pOwn, to, size, 100.0 * to / size,
+                        elapsed);
+            }
+        }
+    }
+
+    /**
+     * Termina i thread del generatore.
+     */
+    public void shutdown() {
+        this.pool.shutdown();
+    }
+
+    /**
+     * Costruisce, o riprende la costruzione de, la tabella dei finali del tavolo standard.
+     * @param args Il file da scrivere (default: <code>Tablebase.DEFAULT_FILE</code>), il lato delle celle
+     *             (default: <code>60</code>), il numero massimo di palle del giocatore (default:
+     *             <code>1</code>) ed il motore di simulazione (default: <code>STEPPING</code>)
+     * @throws java.io.IOException Se il file non può essere scritto
+     */
+    public static void main(String[] args) throws java.io.IOException {
+        java.io.File file = new java.io.File(args.length > 0 ? args[0] : Tablebase.DEFAULT_FILE);
+        double cellSize = args.length > 1 ? Double.parseDouble(args[1]) : 60;
+        int maxOwn = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        TableEngine.Mode mode = args.length > 3 ? TableEngine.Mode.valueOf(args[3]) : TableEngine.Mode.STEPPING;
+
+        Tablebase tablebase = Tablebase.openForWriting(file, TableGeometry.STANDARD, cellSize, maxOwn);
+        System.out.printf("%d cells, %d bytes%n", tablebase.getCells(), file.length());
+        TablebaseGenerator generator = new TablebaseGenerator(tablebase, TableGeometry.STANDARD,
+                ComputerPlayer.getSettings(mode));
+        for (int k = 0; k <= maxOwn; k++) {
+            generator.generate(k, System.out);
+        }
+        generator.shutdown();
+    }
+}